@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import com.codename1.calendar.impl.CalendarNativeInterface;
+import com.codename1.calendar.impl.CompactCodec;
+
+/**
+ * CalendarNativeInterface answering with canned responses in the exact formats produced by the
+ * Android (AndroidCalendarImpl) and iOS (CalendarNativeInterfaceImpl.m) encoders, so benchmarks
+ * measure the Java decode path only.
+ */
+class CannedCalendar implements CalendarNativeInterface {
+   static final String ANDROID = "android";
+   static final String IOS     = "ios";
+
+   static final String XML     = "xml";
+   static final String COMPACT = "compact";
+
+   static final long START = 1400000000000L;
+   static final long HOUR  = 3600000L;
+
+   private final boolean  compact;
+   private final String   events;
+   private final String[] eventByID;
+   private final String[] eventByIDCompact;
+
+   /**
+    * @param platform  - ANDROID or IOS
+    * @param format    - XML to make the compact calls unsupported, COMPACT otherwise
+    * @param count     - Number of events in the getEvents response
+    * @param lookups   - Number of distinct getEventByID responses
+    */
+   CannedCalendar(String platform, String format, int count, int lookups) {
+      boolean android = ANDROID.equals(platform);
+
+      compact          = COMPACT.equals(format);
+      events           = compact ? eventsCompact(count) : android ? androidEventsXML(count) : iosEventsXML(count);
+      eventByID        = new String[lookups];
+      eventByIDCompact = new String[lookups];
+
+      for (int i = 0; i < lookups; i++) {
+         eventByID[i]        = android ? androidEventXML(i) : iosEventXML(i);
+         eventByIDCompact[i] = eventsCompact(i, 1);
+      }
+   }
+
+   //
+   // canned data
+   //
+
+   static String eventID(int i) {
+      return String.valueOf(1000 + i);
+   }
+
+   private static String title(int i) {
+      return "Event " + i;
+   }
+
+   private static String description(int i) {
+      return "Notes for event " + i + ", agenda and dial-in details";
+   }
+
+   private static String location(int i) {
+      return "Room " + (i % 20);
+   }
+
+   private static long start(int i) {
+      return START + i * HOUR;
+   }
+
+   private static long end(int i) {
+      return start(i) + HOUR / 2;
+   }
+
+   private static final int[] REMINDERS = { 600, 3600 };
+
+   //
+   // Android encoder output, see AndroidCalendarImpl.getEvents / encodeEvents
+   //
+
+   private static void appendAndroidEvent(StringBuilder sb, int i, String padding) {
+      sb.append(padding).append("<event>\n")
+        .append(padding).append("  <id>").            append(eventID(i)).    append("</id>\n")
+        .append(padding).append("  <title>").         append(title(i)).      append("</title>\n")
+        .append(padding).append("  <description>").   append(description(i)).append("</description>\n")
+        .append(padding).append("  <location>").      append(location(i)).   append("</location>\n")
+        .append(padding).append("  <startTimeStamp>").append(start(i)).      append("</startTimeStamp>\n")
+        .append(padding).append("  <endTimeStamp>").  append(end(i)).        append("</endTimeStamp>\n")
+        .append(padding).append("  <allDayEvent>").   append("false").       append("</allDayEvent>\n")
+        .append(padding).append("  <reminders>\n")
+        .append(padding);
+
+      for (int reminder : REMINDERS)
+         sb.append(padding).append("  <reminderOffset>").append(reminder).append("</reminderOffset>\n");
+
+      sb.append(padding).append("  </reminders>\n")
+        .append(padding).append("</event>\n");
+   }
+
+   static String androidEventsXML(int count) {
+      StringBuilder sb = new StringBuilder(count * 400 + 400);
+
+      sb.append("<?xml version=\"1.0\"?>\n")
+        .append("<calendarNativeAPIResponse>\n")
+        .append("  <response>\n")
+        .append("    <requestType>getEvents</requestType>\n")
+        .append("    <eventList>\n")
+        .append("      <searchStartTimeStamp>").append(START).append("</searchStartTimeStamp>\n")
+        .append("      <searchEndTimeStamp>").append(start(count)).append("</searchEndTimeStamp>\n");
+
+      for (int i = 0; i < count; i++)
+         appendAndroidEvent(sb, i, "      ");
+
+      return sb.append("    </eventList>\n")
+               .append("    <requestCompletedSuccessfully>true</requestCompletedSuccessfully>\n")
+               .append("  </response>\n")
+               .append("</calendarNativeAPIResponse>").toString();
+   }
+
+   static String androidEventXML(int i) {
+      StringBuilder sb = new StringBuilder(600);
+
+      sb.append("<?xml version=\"1.0\"?>\n")
+        .append("<calendarNativeAPIResponse>\n")
+        .append("  <response>\n")
+        .append("    <requestType>getEventByID</requestType>\n");
+
+      appendAndroidEvent(sb, i, "    ");
+
+      return sb.append("    <requestCompletedSuccessfully>true</requestCompletedSuccessfully>\n")
+               .append("  </response>\n")
+               .append("</calendarNativeAPIResponse>").toString();
+   }
+
+   //
+   // iOS encoder output, see eventToXML / getResponseHeaderXML / getResponseFooterXML
+   //
+
+   private static void appendIOSEvent(StringBuilder sb, int i) {
+      sb.append("<event>")
+        .append("<id>").append(eventID(i)).append("</id>")
+        .append("<title>").append(title(i)).append("</title>")
+        .append("<description>").append(description(i)).append("</description>")
+        .append("<location>").append(location(i)).append("</location>")
+        .append("<startTimeStamp>").append(start(i)).append("</startTimeStamp>")
+        .append("<endTimeStamp>").append(end(i)).append("</endTimeStamp>")
+        .append("<createdTimeStamp>").append(START - HOUR).append("</createdTimeStamp>")
+        .append("<lastModifiedTimeStamp>").append(START - HOUR).append("</lastModifiedTimeStamp>")
+        .append("<allDayEvent>false</allDayEvent>")
+        .append("<reminders>");
+
+      for (int reminder : REMINDERS)
+         sb.append("<reminderOffset>").append(-reminder).append("</reminderOffset>");
+
+      sb.append("</reminders>")
+        .append("</event>");
+   }
+
+   static String iosEventsXML(int count) {
+      StringBuilder sb = new StringBuilder(count * 400 + 300);
+
+      sb.append("<?xml version=\"1.0\"?><calendarNativeAPIResponse><response><requestType>getEvents</requestType>")
+        .append("<eventList>")
+        .append("<searchStartTimeStamp>").append(START).append("</searchStartTimeStamp>")
+        .append("<searchEndTimeStamp>").append(start(count)).append("</searchEndTimeStamp>");
+
+      for (int i = 0; i < count; i++)
+         appendIOSEvent(sb, i);
+
+      return sb.append("</eventList>")
+               .append("<requestCompletedSuccessfully>true</requestCompletedSuccessfully></response></calendarNativeAPIResponse>")
+               .toString();
+   }
+
+   static String iosEventXML(int i) {
+      StringBuilder sb = new StringBuilder(600);
+
+      sb.append("<?xml version=\"1.0\"?><calendarNativeAPIResponse><response><requestType>getEventByID</requestType>");
+      appendIOSEvent(sb, i);
+
+      return sb.append("<requestCompletedSuccessfully>true</requestCompletedSuccessfully></response></calendarNativeAPIResponse>")
+               .toString();
+   }
+
+   //
+   // compact responses, the same on both platforms
+   //
+
+   static String eventsCompact(int count) {
+      return eventsCompact(0, count);
+   }
+
+   static String eventsCompact(int from, int count) {
+      StringBuilder sb = new StringBuilder(count * 160 + 16);
+
+      CompactCodec.writeField(sb, true);
+      CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+
+      for (int i = from; i < from + count; i++) {
+         CompactCodec.writeField(sb, eventID(i));
+         CompactCodec.writeField(sb, title(i));
+         CompactCodec.writeField(sb, description(i));
+         CompactCodec.writeField(sb, location(i));
+         CompactCodec.writeField(sb, start(i));
+         CompactCodec.writeField(sb, end(i));
+         CompactCodec.writeField(sb, false);
+         CompactCodec.writeField(sb, REMINDERS[0] + "," + REMINDERS[1]);
+         CompactCodec.writeField(sb, START - HOUR);
+         CompactCodec.writeField(sb, START - HOUR);
+         CompactCodec.writeField(sb, (String) null);
+         CompactCodec.writeField(sb, "1");
+      }
+
+      return sb.toString();
+   }
+
+   //
+   // CalendarNativeInterface
+   //
+
+   public boolean hasPermissions() {
+      return true;
+   }
+
+   public int getCalendarCount() {
+      return 1;
+   }
+
+   public String getCalendarName(int offset) {
+      return offset == 0 ? "Benchmark" : null;
+   }
+
+   public String getCalendars() {
+      return null;
+   }
+
+   public String openCalendar(String calendarName, boolean createIfNotExists) {
+      return "1";
+   }
+
+   public String saveEvent(String calendarID, String eventID, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, boolean taskOnly, String notes, String location, String reminders) {
+      return eventID != null ? eventID : "1";
+   }
+
+   public String saveEvents(String calendarID, String events) {
+      return null;
+   }
+
+   public boolean removeEvent(String calendarID, String eventID) {
+      return true;
+   }
+
+   public String removeEvents(String calendarID, String eventIDs) {
+      return null;
+   }
+
+   public String removeEventsInRange(String calendarID, long startTimeStamp, long endTimeStamp) {
+      return null;
+   }
+
+   public String getEventByID(String calendarID, String eventID) {
+      return eventByID[Integer.parseInt(eventID) - 1000];
+   }
+
+   public String getEvents(String calendarID, long startTimeStamp, long endTimeStamp) {
+      return events;
+   }
+
+   public String getEventByIDCompact(String calendarID, String eventID, int flags) {
+      return compact ? eventByIDCompact[Integer.parseInt(eventID) - 1000] : null;
+   }
+
+   public String getEventsCompact(String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+      return compact ? events : null;
+   }
+
+   public boolean returnsOverlappingEvents() {
+      return false;
+   }
+
+   public String getEventsForCalendars(String calendarIDs, long startTimeStamp, long endTimeStamp, int flags) {
+      return null;
+   }
+
+   public String getEventsPage(String calendarID, long startTimeStamp, long endTimeStamp, String pageToken, int pageSize, int flags) {
+      return null;
+   }
+
+   public String getEventsModifiedSince(String calendarID, long sinceTimeStamp, int flags) {
+      return null;
+   }
+
+   public String getBusyTimes(String calendarIDs, long startTimeStamp, long endTimeStamp) {
+      return null;
+   }
+
+   public String getEventCounts(String calendarID, String boundaries, int flags) {
+      return null;
+   }
+
+   public void registerForEventNotifications() {
+   }
+
+   public void deregisterForEventNotifications() {
+   }
+
+   public boolean isSupported() {
+      return true;
+   }
+}
@@ -9,21 +9,34 @@
  */
 package com.codename1.calendar.impl;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 
 import android.annotation.TargetApi;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.provider.CalendarContract;
 import android.text.TextUtils;
 import android.text.format.Time;
 
+import com.codename1.calendar.DeviceCalendar;
+
 @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
 public class AndroidCalendarImpl {
 
@@ -32,6 +45,90 @@ public class AndroidCalendarImpl {
    private static final Uri CALENDAR_URI = CalendarContract.Calendars.CONTENT_URI;
    private static final Uri EVENT_URI    = CalendarContract.Events.   CONTENT_URI;
    private static final Uri REMINDER_URI = CalendarContract.Reminders.CONTENT_URI;
+   private static final Uri INSTANCE_URI = CalendarContract.Instances.CONTENT_URI;
+   
+   // stay well below SQLITE_MAX_VARIABLE_NUMBER (999) when building IN (...) selections
+   private static final int MAX_SELECTION_ARGS = 500;
+   
+   private static final String[] EVENT_PROJECTION = new String[] {
+                                                       CalendarContract.Events._ID,
+                                                       CalendarContract.Events.TITLE,
+                                                       CalendarContract.Events.DESCRIPTION,
+                                                       CalendarContract.Events.EVENT_LOCATION,
+                                                       CalendarContract.Events.DTSTART,
+                                                       CalendarContract.Events.DTEND,
+                                                       CalendarContract.Events.ALL_DAY,
+                                                       CalendarContract.Events.SYNC_DATA9,   // created, see buildEventCVs
+                                                       CalendarContract.Events.SYNC_DATA10,  // last modified
+                                                       CalendarContract.Events.RRULE,
+                                                       CalendarContract.Events.DURATION,     // instead of DTEND for recurring events
+                                                       CalendarContract.Events.CALENDAR_ID
+                                                    };
+
+   // occurrences within a range, same columns as EVENT_PROJECTION
+   private static final String[] INSTANCE_PROJECTION = new String[] {
+                                                       CalendarContract.Instances.EVENT_ID,
+                                                       CalendarContract.Instances.TITLE,
+                                                       CalendarContract.Instances.DESCRIPTION,
+                                                       CalendarContract.Instances.EVENT_LOCATION,
+                                                       CalendarContract.Instances.BEGIN,
+                                                       CalendarContract.Instances.END,
+                                                       CalendarContract.Instances.ALL_DAY,
+                                                       CalendarContract.Instances.SYNC_DATA9,
+                                                       CalendarContract.Instances.SYNC_DATA10,
+                                                       CalendarContract.Instances.RRULE,
+                                                       CalendarContract.Instances.DURATION,
+                                                       CalendarContract.Instances.CALENDAR_ID
+                                                    };
+
+   // EVENT_PROJECTION followed by the deleted flag
+   private static final String[] CHANGE_PROJECTION = new String[] {
+                                                       CalendarContract.Events._ID,
+                                                       CalendarContract.Events.TITLE,
+                                                       CalendarContract.Events.DESCRIPTION,
+                                                       CalendarContract.Events.EVENT_LOCATION,
+                                                       CalendarContract.Events.DTSTART,
+                                                       CalendarContract.Events.DTEND,
+                                                       CalendarContract.Events.ALL_DAY,
+                                                       CalendarContract.Events.SYNC_DATA9,
+                                                       CalendarContract.Events.SYNC_DATA10,
+                                                       CalendarContract.Events.RRULE,
+                                                       CalendarContract.Events.DURATION,
+                                                       CalendarContract.Events.CALENDAR_ID,
+                                                       CalendarContract.Events.DELETED
+                                                    };
+
+   /**
+    * Applies the FLAG_SKIP_* projection flags of a query to one of the projections above. Skipped columns are
+    * replaced by the ID column so the indices stay the same while the provider doesn't read or copy their values.
+    */
+   private static String[] project(String[] projection, int flags) {
+      int skip = flags & (CompactCodec.FLAG_SKIP_TITLE | CompactCodec.FLAG_SKIP_DESCRIPTION | CompactCodec.FLAG_SKIP_LOCATION | CompactCodec.FLAG_SKIP_TIMESTAMPS);
+      
+      if (skip == 0)
+         return projection;
+      
+      String[] result = projection.clone();
+      
+      if ((skip & CompactCodec.FLAG_SKIP_TITLE) != 0)
+         result[1] = projection[0];
+      
+      if ((skip & CompactCodec.FLAG_SKIP_DESCRIPTION) != 0)
+         result[2] = projection[0];
+      
+      if ((skip & CompactCodec.FLAG_SKIP_LOCATION) != 0)
+         result[3] = projection[0];
+      
+      if ((skip & CompactCodec.FLAG_SKIP_TIMESTAMPS) != 0) {
+         result[7] = projection[0];
+         result[8] = projection[0];
+      }
+      
+      return result;
+   }
+
+   // observes the whole calendar provider, i.e. calendars, events and reminders, while listeners are registered
+   private static ContentObserver observer;
 
    //
    // helpers
@@ -70,6 +167,48 @@ public class AndroidCalendarImpl {
         .build();
    }
 
+   /**
+    * @return URI of the occurrences of all events between the given times, the provider expands recurring events for this range only
+    */
+   private static Uri buildInstanceURI(long startTimeStamp, long endTimeStamp) {
+      Uri.Builder builder = INSTANCE_URI.buildUpon();
+      ContentUris.appendId(builder, startTimeStamp);
+      ContentUris.appendId(builder, endTimeStamp);
+      return builder.build();
+   }
+
+   /**
+    * Selection over the Instances table taking calendar ID, start and end as arguments.
+    * With FLAG_OVERLAPPING every occurrence overlapping [start, end) matches, otherwise only the ones within the range.
+    */
+   private static String buildRangeSelection(int flags) {
+      return buildRangeSelection(flags, 1);
+   }
+
+   /**
+    * Selection over the Instances table taking the given number of calendar IDs followed by start and end as arguments
+    */
+   private static String buildRangeSelection(int flags, int calendarCount) {
+      StringBuilder selection = new StringBuilder("(").append(CalendarContract.Instances.CALENDAR_ID);
+      
+      if (calendarCount == 1) {
+         selection.append(" = ?");
+      }
+      else {
+         selection.append(" IN (");
+         for (int i = 0; i < calendarCount; i++) 
+            selection.append(i == 0 ? "?" : ",?");
+         selection.append(')');
+      }
+      
+      if ((flags & CompactCodec.FLAG_OVERLAPPING) != 0) 
+         selection.append(" AND ").append(CalendarContract.Instances.END).append(" > ? AND ").append(CalendarContract.Instances.BEGIN).append(" < ?)");
+      else 
+         selection.append(" AND ").append(CalendarContract.Instances.BEGIN).append(" >= ? AND ").append(CalendarContract.Instances.END).append(" <= ?)");
+      
+      return selection.toString();
+   }
+
    //
    // talk to OS
    //   
@@ -98,6 +237,53 @@ public class AndroidCalendarImpl {
       }
    }
 
+   public static String getCalendars(Context ctx) {
+      ContentResolver cr = ctx.getContentResolver();
+      Cursor      cursor = cr.query(buildCalendarURI(ACCOUNT_NAME), 
+                                    new String[] { CalendarContract.Calendars._ID, 
+                                                   CalendarContract.Calendars.NAME, 
+                                                   CalendarContract.Calendars.CALENDAR_COLOR, 
+                                                   CalendarContract.Calendars.CALENDAR_ACCESS_LEVEL, 
+                                                   CalendarContract.Calendars.ACCOUNT_NAME }, 
+                                    null, 
+                                    null, 
+                                    CalendarContract.Calendars._ID);
+      
+      if (cursor == null)
+         return null;
+
+      try {
+         StringBuilder sb = new StringBuilder(cursor.getCount() * 48 + 8);
+
+         CompactCodec.writeField(sb, true);
+         CompactCodec.writeField(sb, CompactCodec.CALENDAR_FIELD_COUNT);
+         
+         while (cursor.moveToNext()) {
+            CompactCodec.writeField(sb, cursor.getString(0));
+            CompactCodec.writeField(sb, cursor.getString(1));
+            CompactCodec.writeField(sb, cursor.getInt(2) & 0xFFFFFF);
+            CompactCodec.writeField(sb, toAccessLevel(cursor.getInt(3)));
+            CompactCodec.writeField(sb, ACCOUNT_NAME.equals(cursor.getString(4)));
+         }
+         
+         return sb.toString();
+      }
+      finally {
+         cursor.close();
+      }
+   }
+
+   private static int toAccessLevel(int calAccessLevel) {
+      // values follow CalendarInfo.ACCESS_*
+      if (calAccessLevel < CalendarContract.Calendars.CAL_ACCESS_READ)
+         return 0;
+      if (calAccessLevel < CalendarContract.Calendars.CAL_ACCESS_CONTRIBUTOR)
+         return 1;
+      if (calAccessLevel < CalendarContract.Calendars.CAL_ACCESS_OWNER)
+         return 2;
+      return 3;
+   }
+
    public static String openCalendar(Context ctx, String calendarName, boolean createIfNotExists) {
       ContentResolver cr = ctx.getContentResolver();
       Uri         calURI = buildCalendarURI(ACCOUNT_NAME);
@@ -118,14 +304,169 @@ public class AndroidCalendarImpl {
       }      
    }
 
+   public static synchronized void registerForEventNotifications(Context ctx) {
+      if (observer != null)
+         return;
+      
+      observer = new ContentObserver(null) {
+         @Override
+         public void onChange(boolean selfChange) {
+            DeviceCalendar.nativeCalendarChanged();
+         }
+      };
+      ctx.getContentResolver().registerContentObserver(CalendarContract.CONTENT_URI, true, observer);
+   }
+
+   public static synchronized void deregisterForEventNotifications(Context ctx) {
+      if (observer == null)
+         return;
+      
+      ctx.getContentResolver().unregisterContentObserver(observer);
+      observer = null;
+   }
+
    public static String saveEvent(Context ctx, String calendarID, String eventID, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, boolean taskOnly, String notes, String location, String reminders) {
       ContentResolver cr = ctx.getContentResolver();
-      ContentValues   cv = new ContentValues();
+      boolean      isNew = eventID == null || eventID.trim().length() == 0;
+      List<String>   ids = new ArrayList<String>(1);
+      
+      if (!isNew)
+         ids.add(eventID);
+      
+      // the legacy save path has no rule, the recurrence of an existing series is kept
+      ContentValues   cv = buildEventCVs(calendarID, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, null, 
+                                         queryRecurringIDs(cr, ids).contains(eventID));
+      
+      if (isNew) { // create new event
+         cv.put(CalendarContract.Events.SYNC_DATA9, cv.getAsString(CalendarContract.Events.SYNC_DATA10));
+         eventID = cr.insert(buildEventURI(ACCOUNT_NAME), cv).getLastPathSegment();   
+      }
+      else 
+         cr.update(buildEventURI(ACCOUNT_NAME), cv, "(" + CalendarContract.Events._ID + " = ?)", new String[] { eventID });
+      
+      ArrayList<ContentProviderOperation> ops     = new ArrayList<ContentProviderOperation>();
+      List<Integer>                       minutes = parseReminderMinutes(reminders);
+      
+      if (isNew) {
+         for (int m : minutes) 
+            ops.add(newReminderInsert(m).withValue(CalendarContract.Reminders.EVENT_ID, eventID).build());
+      }
+      else {
+         diffReminders(eventID, minutes, queryReminderRows(cr, ids).get(eventID), ops);
+      }
+      
+      if (!ops.isEmpty()) {
+         try {
+            cr.applyBatch(CalendarContract.AUTHORITY, ops);
+         }
+         catch (Exception e) {
+            return null;
+         }
+      }
+      
+      return eventID;
+   }
+
+   public static String saveEvents(Context ctx, String calendarID, String events) {
+      ArrayList<ContentProviderOperation> ops = new ArrayList<ContentProviderOperation>();
+      ArrayList<String>                   ids = new ArrayList<String>();
+      ArrayList<Integer>           insertRefs = new ArrayList<Integer>();
+      Uri                            eventURI = buildEventURI(ACCOUNT_NAME);
+      CompactCodec.Reader              reader = new CompactCodec.Reader(events);
+      int                               width = reader.nextInt();
+      int                               first = reader.position();
+      List<String>                    updated = new ArrayList<String>();
+      
+      // the existing reminders and recurrence of all updated events are loaded up front so they can be diffed within the batch
+      while (reader.hasNext()) {
+         String eventID = reader.nextString();
+         reader.skip(width - 1);
+         
+         if (eventID != null && eventID.trim().length() > 0)
+            updated.add(eventID);
+      }
+      
+      Map<String, List<long[]>> existing  = queryReminderRows(ctx.getContentResolver(), updated);
+      Set<String>               recurring = queryRecurringIDs(ctx.getContentResolver(), updated);
+      reader = new CompactCodec.Reader(events, first, events.length());
+      
+      while (reader.hasNext()) {
+         String  eventID        = reader.nextString();
+         String  title          = reader.nextString();
+         long    startTimeStamp = reader.nextLong();
+         long    endTimeStamp   = reader.nextLong();
+         boolean allDayEvent    = reader.nextBoolean();
+         reader.skip(1); // taskOnly
+         String  notes          = reader.nextString();
+         String  location       = reader.nextString();
+         String  reminders      = reader.nextString();
+         String  recurrenceRule = width > 9 ? reader.nextString() : null;
+         reader.skip(width - CompactCodec.SAVE_FIELD_COUNT);
+         
+         ContentValues cv    = buildEventCVs(calendarID, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, recurrenceRule, recurring.contains(eventID));
+         int           ref   = ops.size();
+         boolean       isNew = eventID == null || eventID.trim().length() == 0;
+         
+         if (isNew) {  // create new event
+            cv.put(CalendarContract.Events.SYNC_DATA9, cv.getAsString(CalendarContract.Events.SYNC_DATA10));
+            ops.add(ContentProviderOperation.newInsert(eventURI).withValues(cv).build());
+            ids.add(null);
+            insertRefs.add(ref);
+         }
+         else {
+            ops.add(ContentProviderOperation.newUpdate(eventURI)
+                                            .withValues(cv)
+                                            .withSelection("(" + CalendarContract.Events._ID + " = ?)", new String[] { eventID })
+                                            .build());
+            ids.add(eventID);
+            insertRefs.add(-1);
+         }
+         
+         if (isNew) {
+            for (int minutes : parseReminderMinutes(reminders)) 
+               ops.add(newReminderInsert(minutes).withValueBackReference(CalendarContract.Reminders.EVENT_ID, ref).build());
+         }
+         else {
+            diffReminders(eventID, parseReminderMinutes(reminders), existing.get(eventID), ops);
+         }
+      }
+      
+      ContentProviderResult[] results;
+      
+      try {
+         // the calendar provider applies a batch in a single transaction so either all events are saved or none
+         results = ctx.getContentResolver().applyBatch(CalendarContract.AUTHORITY, ops);
+      }
+      catch (Exception e) {
+         return null;
+      }
+      
+      StringBuilder sb = new StringBuilder(ids.size() * 8);
+      
+      for (int i = 0; i < ids.size(); i++) {
+         int ref = insertRefs.get(i);
+         
+         CompactCodec.writeField(sb, ref < 0 ? ids.get(i) : results[ref].uri.getLastPathSegment());
+      }
+      
+      return sb.toString();
+   }
+
+   /**
+    * @param recurrenceRule - RRULE of a recurring event, empty to turn a series into a single event, 
+    *                         null to create a single event or keep the recurrence of an existing one
+    * @param recurring      - the updated event is a series, only used when recurrenceRule is null
+    */
+   private static ContentValues buildEventCVs(String calendarID, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, String notes, String location, String recurrenceRule, boolean recurring) {
+      ContentValues cv = new ContentValues();
       cv.put(CalendarContract.Events.CALENDAR_ID,    calendarID);
       cv.put(CalendarContract.Events.TITLE,          title);
       cv.put(CalendarContract.Events.EVENT_LOCATION, location);
       cv.put(CalendarContract.Events.DESCRIPTION,    notes);
       
+      // the provider has no modification times, as the sync adapter of our local account we keep them in the sync columns
+      cv.put(CalendarContract.Events.SYNC_DATA10,    String.valueOf(System.currentTimeMillis()));
+      
       if (allDayEvent) {
          Calendar cal = Calendar.getInstance();
          cal.setTimeInMillis(startTimeStamp);
@@ -143,33 +484,158 @@ public class AndroidCalendarImpl {
          cv.put(CalendarContract.Events.DTEND,          endTimeStamp);
       }
       
-      if (eventID == null || eventID.trim().length() == 0)  // create new event
-         eventID = cr.insert(buildEventURI(ACCOUNT_NAME), cv).getLastPathSegment();   
-      else 
-         cr.update(buildEventURI(ACCOUNT_NAME), cv, "(" + CalendarContract.Events._ID + " = ?)", new String[] { eventID });
-      
-      if (reminders != null && reminders.trim().length() > 0) 
-         addReminders(ctx, eventID, reminders);
+      // the provider requires a duration instead of an end time for recurring events
+      if (recurrenceRule == null ? recurring : recurrenceRule.trim().length() > 0) {
+         cv.put    (CalendarContract.Events.DURATION, allDayEvent ? "P" + Math.max(1, (endTimeStamp - startTimeStamp + 86399999) / 86400000) + "D" 
+                                                                  : "P" + Math.max(0, (endTimeStamp - startTimeStamp) / 1000) + "S");
+         cv.putNull(CalendarContract.Events.DTEND);
+         
+         // without a rule the RRULE column is left as is
+         if (recurrenceRule != null)
+            cv.put(CalendarContract.Events.RRULE, recurrenceRule);
+      }
+      else if (recurrenceRule != null) {
+         cv.putNull(CalendarContract.Events.RRULE);
+         cv.putNull(CalendarContract.Events.DURATION);
+      }
       
-      return eventID;
+      return cv;
    }
 
-   private static void addReminders(Context ctx, String eventID, String reminders) {
-      ContentResolver cr = ctx.getContentResolver();
-      ContentValues   cv = new ContentValues();
-      cv.put(CalendarContract.Reminders.EVENT_ID, eventID);
-      cv.put(CalendarContract.Reminders.METHOD,   CalendarContract.Reminders.METHOD_ALERT);
+   private static ContentProviderOperation.Builder newReminderInsert(int minutes) {
+      return ContentProviderOperation.newInsert(REMINDER_URI)
+                                     .withValue(CalendarContract.Reminders.METHOD,  CalendarContract.Reminders.METHOD_ALERT)
+                                     .withValue(CalendarContract.Reminders.MINUTES, minutes);
+   }
+   
+   /**
+    * Adds the operations turning the alert reminders of an existing event into the requested ones. 
+    * Reminders already present are kept, missing ones inserted and all others deleted, including duplicates 
+    * piled up by earlier versions that inserted the reminders again on every update. 
+    * An update that doesn't change the reminders adds no operations.
+    *
+    * @param requested - reminder minutes as returned from parseReminderMinutes
+    * @param existing  - alert reminder rows of the event as returned from queryReminderRows, null if it has none
+    */
+   private static void diffReminders(String eventID, List<Integer> requested, List<long[]> existing, List<ContentProviderOperation> ops) {
+      List<Integer> missing = new ArrayList<Integer>(requested);
+      
+      if (existing != null) {
+         for (long[] row : existing) 
+            if (!missing.remove(Integer.valueOf((int) row[1])))
+               ops.add(ContentProviderOperation.newDelete(ContentUris.withAppendedId(REMINDER_URI, row[0])).build());
+      }
+      
+      for (int minutes : missing) 
+         ops.add(newReminderInsert(minutes).withValue(CalendarContract.Reminders.EVENT_ID, eventID).build());
+   }
+   
+   /**
+    * @return the IDs of the events that are recurring series, with one query per chunk of MAX_SELECTION_ARGS event IDs
+    */
+   private static Set<String> queryRecurringIDs(ContentResolver cr, List<String> eventIDs) {
+      Set<String> result = new HashSet<String>();
+      
+      for (int from = 0; from < eventIDs.size(); from += MAX_SELECTION_ARGS) {
+         List<String>  chunk     = eventIDs.subList(from, Math.min(eventIDs.size(), from + MAX_SELECTION_ARGS));
+         StringBuilder selection = new StringBuilder("(").append(CalendarContract.Events.RRULE).append(" IS NOT NULL AND ")
+                                                         .append(CalendarContract.Events._ID).append(" IN (");
+         
+         for (int i = 0; i < chunk.size(); i++) 
+            selection.append(i == 0 ? "?" : ",?");
+         
+         Cursor cursor = cr.query(EVENT_URI,
+                                  new String[] { CalendarContract.Events._ID, CalendarContract.Events.RRULE },
+                                  selection.append("))").toString(),
+                                  chunk.toArray(new String[chunk.size()]),
+                                  null);
+         
+         if (cursor == null)
+            continue;
+         
+         try {
+            while (cursor.moveToNext()) 
+               if (!TextUtils.isEmpty(cursor.getString(1)))
+                  result.add(cursor.getString(0));
+         }
+         finally {
+            cursor.close();
+         }
+      }
+      
+      return result;
+   }
+   
+   /**
+    * Loads the alert reminder rows of the events with one query per chunk of MAX_SELECTION_ARGS event IDs
+    *
+    * @return { _ID, MINUTES } rows keyed by event ID, events without alert reminders are absent
+    */
+   private static Map<String, List<long[]>> queryReminderRows(ContentResolver cr, List<String> eventIDs) {
+      Map<String, List<long[]>> result = new HashMap<String, List<long[]>>();
+      
+      for (int from = 0; from < eventIDs.size(); from += MAX_SELECTION_ARGS) {
+         List<String>  chunk     = eventIDs.subList(from, Math.min(eventIDs.size(), from + MAX_SELECTION_ARGS));
+         StringBuilder selection = new StringBuilder("(").append(CalendarContract.Reminders.METHOD).append(" = ").append(CalendarContract.Reminders.METHOD_ALERT)
+                                                         .append(" AND ").append(CalendarContract.Reminders.EVENT_ID).append(" IN (");
+         
+         for (int i = 0; i < chunk.size(); i++) 
+            selection.append(i == 0 ? "?" : ",?");
+         
+         Cursor reminders = cr.query(REMINDER_URI,
+                                     new String[] { CalendarContract.Reminders.EVENT_ID, CalendarContract.Reminders._ID, CalendarContract.Reminders.MINUTES },
+                                     selection.append("))").toString(),
+                                     chunk.toArray(new String[chunk.size()]),
+                                     null);
+         
+         if (reminders == null)
+            continue;
+         
+         try {
+            while (reminders.moveToNext()) {
+               String       eventID = reminders.getString(0);
+               List<long[]> rows    = result.get(eventID);
+               
+               if (rows == null) {
+                  rows = new ArrayList<long[]>(2);
+                  result.put(eventID, rows);
+               }
+               
+               rows.add(new long[] { reminders.getLong(1), reminders.getInt(2) });
+            }
+         }
+         finally {
+            reminders.close();
+         }
+      }
+      
+      return result;
+   }
+   
+   /**
+    * @param reminders - alarm offsets (in seconds) in CSV format, may be null
+    * @return the distinct offsets converted to minutes, invalid entries are skipped
+    */
+   private static List<Integer> parseReminderMinutes(String reminders) {
+      List<Integer> minutes = new ArrayList<Integer>();
+      
+      if (reminders == null) 
+         return minutes;
+      
       StringTokenizer tokens = new StringTokenizer(reminders, ",");
       
       while (tokens.hasMoreTokens()) {
          String reminder = tokens.nextToken();
          
-         if (TextUtils.isDigitsOnly(reminder)) {            
-            cv.put(CalendarContract.Reminders.MINUTES, Integer.valueOf(reminder) / 60);
-
-            cr.insert(REMINDER_URI, cv);
-         }         
-      }      
+         if (TextUtils.isDigitsOnly(reminder)) {
+            Integer value = Integer.valueOf(Integer.parseInt(reminder) / 60);
+            
+            if (!minutes.contains(value))
+               minutes.add(value);
+         }
+      }
+      
+      return minutes;
    }
    
    public static boolean removeEvent(Context ctx, String calendarID, String eventID) {
@@ -178,21 +644,59 @@ public class AndroidCalendarImpl {
       return cr.delete(EVENT_URI, "(" + CalendarContract.Events._ID + " = ?)", new String [] { eventID }) > 0;      
    }
 
+   /**
+    * Deletes the events in chunks of MAX_SELECTION_ARGS IDs, one provider call per chunk.
+    * Events deleted earlier but not yet reported by getEventsModifiedSince aren't counted again.
+    */
+   public static String removeEvents(Context ctx, String calendarID, String eventIDs) {
+      ContentResolver     cr     = ctx.getContentResolver();
+      List<String>        ids    = new ArrayList<String>();
+      CompactCodec.Reader reader = new CompactCodec.Reader(eventIDs);
+      
+      while (reader.hasNext()) 
+         ids.add(reader.nextString());
+      
+      int removed = 0;
+      
+      for (int from = 0; from < ids.size(); from += MAX_SELECTION_ARGS) {
+         List<String>  chunk     = ids.subList(from, Math.min(ids.size(), from + MAX_SELECTION_ARGS));
+         StringBuilder selection = new StringBuilder("(").append(CalendarContract.Events.CALENDAR_ID).append(" = ? AND ")
+                                                         .append(CalendarContract.Events.DELETED).append(" = 0 AND ")
+                                                         .append(CalendarContract.Events._ID).append(" IN (");
+         String[]      args      = new String[chunk.size() + 1];
+         args[0] = calendarID;
+         
+         for (int i = 0; i < chunk.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            args[i + 1] = chunk.get(i);
+         }
+         
+         removed += cr.delete(EVENT_URI, selection.append("))").toString(), args);
+      }
+      
+      return encodeRemoved(removed);
+   }
+
+   /**
+    * Deletes the events whose first occurrence starts within the range with a single provider call
+    */
+   public static String removeEventsInRange(Context ctx, String calendarID, long startTimeStamp, long endTimeStamp) {
+      int removed = ctx.getContentResolver().delete(EVENT_URI, 
+                                                    "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND " + CalendarContract.Events.DELETED + " = 0 AND " + CalendarContract.Events.DTSTART + " >= ? AND " + CalendarContract.Events.DTSTART + " < ?)", 
+                                                    new String[] { calendarID, String.valueOf(startTimeStamp), String.valueOf(endTimeStamp) });
+      
+      return encodeRemoved(removed);
+   }
+   
+   private static String encodeRemoved(int removed) {
+      StringBuilder sb = new StringBuilder(8);
+      CompactCodec.writeField(sb, true);
+      CompactCodec.writeField(sb, removed);
+      return sb.toString();
+   }
+
    public static String getEventByID(Context ctx, String calendarID, String eventID) {
-      ContentResolver cr = ctx.getContentResolver();
-      Cursor      cursor = cr.query(buildEventURI(ACCOUNT_NAME),
-                                    new String[] {
-                                      CalendarContract.Events._ID,
-                                      CalendarContract.Events.TITLE,
-                                      CalendarContract.Events.DESCRIPTION,
-                                      CalendarContract.Events.EVENT_LOCATION,
-                                      CalendarContract.Events.DTSTART,
-                                      CalendarContract.Events.DTEND,
-                                      CalendarContract.Events.ALL_DAY
-                                    },
-                                    "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND " + CalendarContract.Events._ID + " = ?)",
-                                    new String[] { calendarID, eventID },
-                                    null);
+      Cursor cursor = queryEventByID(ctx, calendarID, eventID, 0);
 
       try {
          return "<?xml version=\"1.0\"?>\n" +
@@ -210,20 +714,7 @@ public class AndroidCalendarImpl {
    }
 
    public static String getEvents(Context ctx, String calendarID, long startTimeStamp, long endTimeStamp) {
-      ContentResolver cr = ctx.getContentResolver();
-      Cursor      cursor = cr.query(buildEventURI(ACCOUNT_NAME),
-                                    new String[] {
-                                      CalendarContract.Events._ID,
-                                      CalendarContract.Events.TITLE,
-                                      CalendarContract.Events.DESCRIPTION,
-                                      CalendarContract.Events.EVENT_LOCATION,
-                                      CalendarContract.Events.DTSTART,
-                                      CalendarContract.Events.DTEND,
-                                      CalendarContract.Events.ALL_DAY
-                                    },
-                                    "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND " + CalendarContract.Events.DTSTART + " >= ? AND " + CalendarContract.Events.DTEND + " <= ?)",
-                                    new String[] { calendarID, String.valueOf(startTimeStamp), String.valueOf(endTimeStamp) },
-                                    null);
+      Cursor cursor = queryEvents(ctx, calendarID, startTimeStamp, endTimeStamp, 0);
 
       try {
          return "<?xml version=\"1.0\"?>\n" +
@@ -244,8 +735,305 @@ public class AndroidCalendarImpl {
       }      
    }
 
+   public static String getEventByIDCompact(Context ctx, String calendarID, String eventID, int flags) {
+      Cursor cursor = queryEventByID(ctx, calendarID, eventID, flags);
+
+      try {
+         return encodeEventsCompact(ctx, cursor, flags);
+      }
+      finally {
+         cursor.close();
+      }
+   }
+
+   public static String getEventsCompact(Context ctx, String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+      Cursor cursor = queryEvents(ctx, calendarID, startTimeStamp, endTimeStamp, flags);
+
+      try {
+         return encodeEventsCompact(ctx, cursor, flags);
+      }
+      finally {
+         cursor.close();
+      }
+   }
+
+   /**
+    * Queries the occurrences of several calendars at once, merged in start order by the provider
+    */
+   public static String getEventsForCalendars(Context ctx, String calendarIDs, long startTimeStamp, long endTimeStamp, int flags) {
+      List<String>        args   = new ArrayList<String>();
+      CompactCodec.Reader reader = new CompactCodec.Reader(calendarIDs);
+      
+      while (reader.hasNext()) 
+         args.add(reader.nextString());
+      
+      int calendarCount = args.size();
+      args.add(String.valueOf(startTimeStamp));
+      args.add(String.valueOf(endTimeStamp));
+      
+      Cursor cursor = ctx.getContentResolver().query(buildInstanceURI(startTimeStamp, endTimeStamp),
+                                                     project(INSTANCE_PROJECTION, flags),
+                                                     buildRangeSelection(flags, calendarCount),
+                                                     args.toArray(new String[args.size()]),
+                                                     CalendarContract.Instances.BEGIN + " ASC");
+      
+      try {
+         return encodeEventsCompact(ctx, cursor, flags);
+      }
+      finally {
+         cursor.close();
+      }
+   }
+
+   public static String getEventsPage(Context ctx, String calendarID, long startTimeStamp, long endTimeStamp, String pageToken, int pageSize, int flags) {
+      String   selection = buildRangeSelection(flags);
+      String[] args      = new String[] { calendarID, String.valueOf(startTimeStamp), String.valueOf(endTimeStamp) };
+      
+      if (pageToken != null) {
+         // keyset pagination: continue after the (BEGIN, EVENT_ID) of the last occurrence of the previous page
+         int    split     = pageToken.indexOf(':');
+         String lastStart = pageToken.substring(0, split);
+         String lastID    = pageToken.substring(split + 1);
+         
+         selection += " AND (" + CalendarContract.Instances.BEGIN + " > ? OR (" + CalendarContract.Instances.BEGIN + " = ? AND " + CalendarContract.Instances.EVENT_ID + " > ?))";
+         args       = new String[] { args[0], args[1], args[2], lastStart, lastStart, lastID };
+      }
+      
+      // this page plus one row telling if there's a next one
+      Cursor cursor = queryLimited(ctx.getContentResolver(),
+                                   buildInstanceURI(startTimeStamp, endTimeStamp),
+                                   project(INSTANCE_PROJECTION, flags),
+                                   selection,
+                                   args,
+                                   CalendarContract.Instances.BEGIN + " ASC, " + CalendarContract.Instances.EVENT_ID + " ASC",
+                                   pageSize + 1);
+      
+      try {
+         Map<String, String> reminders = (flags & CompactCodec.FLAG_SKIP_REMINDERS) != 0 ? null : queryReminderOffsets(ctx, cursor, pageSize);
+         StringBuilder       records   = new StringBuilder(pageSize * 128);
+         String              nextPageToken = null;
+         int                 count = 0;
+         
+         while (cursor.moveToNext()) {
+            if (count == pageSize) {
+               cursor.moveToPrevious();
+               nextPageToken = cursor.getLong(4) + ":" + cursor.getString(0);
+               break;
+            }
+            appendEventCompact(cursor, reminders, flags, records);
+            count++;
+         }
+         
+         StringBuilder sb = new StringBuilder(records.length() + 64);
+         CompactCodec.writeField(sb, true);
+         CompactCodec.writeField(sb, nextPageToken);
+         CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+         
+         return sb.append(records).toString();
+      }
+      finally {
+         cursor.close();
+      }
+   }
+
+   /**
+    * Queries up to limit rows. From Android 8 the limit is passed as QUERY_ARG_LIMIT, on older versions and with
+    * providers ignoring it the cursor holds more rows and the caller only reads the ones it needs.
+    */
+   @TargetApi(Build.VERSION_CODES.O)
+   private static Cursor queryLimited(ContentResolver cr, Uri uri, String[] projection, String selection, String[] args, String sortOrder, int limit) {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+         return cr.query(uri, projection, selection, args, sortOrder);
+      
+      Bundle queryArgs = new Bundle();
+      queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,           selection);
+      queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, args);
+      queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER,          sortOrder);
+      queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT,                      limit);
+      
+      return cr.query(uri, projection, queryArgs, null);
+   }
+
+   /**
+    * Reads the changes without touching them, a failed or lost response is simply reported again.
+    * With FLAG_ACKNOWLEDGE the time stamp is a sync token returned here and acknowledges the response it was
+    * returned with: events other applications changed are stamped so they aren't reported to later tokens,
+    * and deletions reported before it are completed, like a sync adapter does after uploading them.
+    */
+   public static String getEventsModifiedSince(Context ctx, String calendarID, long sinceTimeStamp, int flags) {
+      ContentResolver cr       = ctx.getContentResolver();
+      Uri             eventURI = buildEventURI(ACCOUNT_NAME);
+      long            syncTime = System.currentTimeMillis();
+      
+      if (sinceTimeStamp > 0 && (flags & CompactCodec.FLAG_ACKNOWLEDGE) != 0) 
+         acknowledgeChanges(cr, eventURI, calendarID, sinceTimeStamp);
+      
+      // the sync columns are text columns, a bound argument would be compared as text
+      String selection = sinceTimeStamp > 0 
+                       ? "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND (" + CalendarContract.Events.DIRTY + " = 1 OR CAST(" + CalendarContract.Events.SYNC_DATA10 + " AS INTEGER) >= " + sinceTimeStamp 
+                             + " OR CAST(" + CalendarContract.Events.SYNC_DATA8 + " AS INTEGER) >= " + sinceTimeStamp + "))" 
+                       : "(" + CalendarContract.Events.CALENDAR_ID + " = ?)";
+      Cursor cursor = cr.query(eventURI, project(CHANGE_PROJECTION, flags), selection, new String[] { calendarID }, null);
+      
+      if (cursor == null)
+         return null;
+      
+      try {
+         Map<String, String> reminders = (flags & CompactCodec.FLAG_SKIP_REMINDERS) != 0 ? null : queryReminderOffsets(ctx, cursor, Integer.MAX_VALUE);
+         StringBuilder       records   = new StringBuilder(16 + cursor.getCount() * 128);
+         List<String>        deleted   = new ArrayList<String>();
+         
+         while (cursor.moveToNext()) {
+            if (cursor.getInt(12) > 0)
+               deleted.add(cursor.getString(0));
+            else 
+               appendEventCompact(cursor, reminders, flags, records);
+         }
+         
+         StringBuilder sb = new StringBuilder(32 + deleted.size() * 8 + records.length());
+         CompactCodec.writeField(sb, true);
+         CompactCodec.writeField(sb, String.valueOf(syncTime));
+         CompactCodec.writeField(sb, deleted.size());
+         
+         for (String eventID : deleted) 
+            CompactCodec.writeField(sb, eventID);
+         
+         CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+         
+         return sb.append(records).toString();
+      }
+      finally {
+         cursor.close();
+      }
+   }
+   
+   /**
+    * Completes what the response returning the sync token reported. Deletions stamped by an earlier
+    * acknowledgement were reported by it and are removed. Dirty rows, including deletions not stamped yet,
+    * are stamped with the token time so the call passing the token still reports them, but no later one.
+    * The stamp goes to SYNC_DATA8, SYNC_DATA10 keeps the last modification time reported for the event.
+    */
+   private static void acknowledgeChanges(ContentResolver cr, Uri eventURI, String calendarID, long syncToken) {
+      cr.delete(eventURI, "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND " + CalendarContract.Events.DELETED + " = 1 AND " 
+                          + CalendarContract.Events.DIRTY + " = 0 AND CAST(" + CalendarContract.Events.SYNC_DATA8 + " AS INTEGER) < " + syncToken + ")",
+                new String[] { calendarID });
+      
+      ContentValues stamp = new ContentValues();
+      stamp.put(CalendarContract.Events.DIRTY,      0);
+      stamp.put(CalendarContract.Events.SYNC_DATA8, String.valueOf(syncToken));
+      cr.update(eventURI, stamp, "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND " + CalendarContract.Events.DIRTY + " = 1)", new String[] { calendarID });
+   }
+
+   /**
+    * Encodes the times of the occurrences overlapping the range in all given calendars, see CompactCodec.BUSY_FIELD_COUNT.
+    * Occurrences marked as free don't block time and are left out.
+    */
+   public static String getBusyTimes(Context ctx, String calendarIDs, long startTimeStamp, long endTimeStamp) {
+      List<String>        ids    = new ArrayList<String>();
+      CompactCodec.Reader reader = new CompactCodec.Reader(calendarIDs);
+      
+      while (reader.hasNext()) 
+         ids.add(reader.nextString());
+      
+      StringBuilder sb = new StringBuilder(16 + ids.size() * 512);
+      CompactCodec.writeField(sb, true);
+      CompactCodec.writeField(sb, CompactCodec.BUSY_FIELD_COUNT);
+      
+      for (int from = 0; from < ids.size(); from += MAX_SELECTION_ARGS) {
+         List<String>  chunk     = ids.subList(from, Math.min(ids.size(), from + MAX_SELECTION_ARGS));
+         StringBuilder selection = new StringBuilder("(").append(CalendarContract.Instances.END).append(" > ? AND ")
+                                                         .append(CalendarContract.Instances.BEGIN).append(" < ? AND ")
+                                                         .append(CalendarContract.Instances.AVAILABILITY).append(" != ").append(CalendarContract.Instances.AVAILABILITY_FREE).append(" AND ")
+                                                         .append(CalendarContract.Instances.CALENDAR_ID).append(" IN (");
+         String[]      args      = new String[chunk.size() + 2];
+         args[0] = String.valueOf(startTimeStamp);
+         args[1] = String.valueOf(endTimeStamp);
+         
+         for (int i = 0; i < chunk.size(); i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            args[i + 2] = chunk.get(i);
+         }
+         
+         Cursor cursor = ctx.getContentResolver().query(buildInstanceURI(startTimeStamp, endTimeStamp),
+                                                        new String[] { CalendarContract.Instances.BEGIN, CalendarContract.Instances.END, CalendarContract.Instances.ALL_DAY },
+                                                        selection.append("))").toString(),
+                                                        args,
+                                                        null);
+         
+         if (cursor == null)
+            return null;
+         
+         try {
+            while (cursor.moveToNext()) {
+               CompactCodec.writeField(sb, cursor.getLong(0));
+               CompactCodec.writeField(sb, cursor.getLong(1));
+               CompactCodec.writeField(sb, cursor.getInt (2) > 0);
+            }
+         }
+         finally {
+            cursor.close();
+         }
+      }
+      
+      return sb.toString();
+   }
+
+   /**
+    * Counts the occurrences per bucket, only their begin and end are read from the provider
+    */
+   public static String getEventCounts(Context ctx, String calendarID, String boundaries, int flags) {
+      long[] bounds = EventHistogram.readBoundaries(boundaries);
+      
+      if (bounds.length < 2)
+         return null;
+      
+      long   startTimeStamp = bounds[0];
+      long   endTimeStamp   = bounds[bounds.length - 1];
+      Cursor cursor = ctx.getContentResolver().query(buildInstanceURI(startTimeStamp, endTimeStamp),
+                                                     new String[] { CalendarContract.Instances.BEGIN, CalendarContract.Instances.END },
+                                                     buildRangeSelection(flags),
+                                                     new String[] { calendarID, String.valueOf(startTimeStamp), String.valueOf(endTimeStamp) },
+                                                     null);
+      
+      if (cursor == null)
+         return null;
+      
+      try {
+         int[]   counts      = new int[bounds.length - 1];
+         boolean overlapping = (flags & CompactCodec.FLAG_OVERLAPPING) != 0;
+         
+         while (cursor.moveToNext()) 
+            EventHistogram.add(bounds, cursor.getLong(0), cursor.getLong(1), overlapping, counts);
+         
+         return EventHistogram.encode(counts);
+      }
+      finally {
+         cursor.close();
+      }
+   }
+
+   private static Cursor queryEventByID(Context ctx, String calendarID, String eventID, int flags) {
+      return ctx.getContentResolver().query(buildEventURI(ACCOUNT_NAME),
+                                            project(EVENT_PROJECTION, flags),
+                                            "(" + CalendarContract.Events.CALENDAR_ID + " = ? AND " + CalendarContract.Events._ID + " = ?)",
+                                            new String[] { calendarID, eventID },
+                                            null);
+   }
+
+   /**
+    * Queries the occurrences within the range, a recurring event has one row per occurrence with the times of that occurrence
+    */
+   private static Cursor queryEvents(Context ctx, String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+      return ctx.getContentResolver().query(buildInstanceURI(startTimeStamp, endTimeStamp),
+                                            project(INSTANCE_PROJECTION, flags),
+                                            buildRangeSelection(flags),
+                                            new String[] { calendarID, String.valueOf(startTimeStamp), String.valueOf(endTimeStamp) },
+                                            CalendarContract.Instances.BEGIN + " ASC");
+   }
+
    private static String encodeEvents(Context ctx, Cursor cursor, String padding) {
-      StringBuilder sb = new StringBuilder();
+      Map<String, String> reminders = queryReminderOffsets(ctx, cursor, Integer.MAX_VALUE);
+      StringBuilder       sb        = new StringBuilder();
             
       while (cursor.moveToNext()) 
          sb.append(padding).append("<event>\n")
@@ -254,33 +1042,222 @@ public class AndroidCalendarImpl {
            .append(padding).append("  <description>").   append(cursor.getString(2)).append("</description>\n")
            .append(padding).append("  <location>").      append(cursor.getString(3)).append("</location>\n")
            .append(padding).append("  <startTimeStamp>").append(cursor.getLong  (4)).append("</startTimeStamp>\n")
-           .append(padding).append("  <endTimeStamp>").  append(cursor.getString(5)).append("</endTimeStamp>\n")
+           .append(padding).append("  <endTimeStamp>").  append(getEndTime(cursor)).append("</endTimeStamp>\n")
            .append(padding).append("  <allDayEvent>").   append(cursor.getInt   (6) > 0 ? "true" : "false").append("</allDayEvent>\n")
+           .append(padding).append("  <recurrenceRule>").append(cursor.isNull(9) ? "" : cursor.getString(9)).append("</recurrenceRule>\n")
            .append(padding).append("  <reminders>\n")     
-           .append(padding).append(     encodeReminders(ctx, cursor.getString(0), padding))
+           .append(padding).append(     encodeReminders(reminders.get(cursor.getString(0)), padding))
            .append(padding).append("  </reminders>\n")
            .append(padding).append("</event>\n");
       
       return sb.toString();
    }
    
-   private static String encodeReminders(Context ctx, String eventID, String padding) {
-      ContentResolver cr = ctx.getContentResolver();
-      Cursor      cursor = cr.query(REMINDER_URI,
-                                    new String[] { CalendarContract.Reminders.MINUTES },
-                                    "(" + CalendarContract.Reminders.EVENT_ID + " = ?)",
-                                    new String[] { eventID },
-                                    null);
-      StringBuilder sb = new StringBuilder();
+   /**
+    * Encodes the cursor rows in the CompactCodec event format, see CompactCodec.EVENT_FIELD_COUNT
+    */
+   private static String encodeEventsCompact(Context ctx, Cursor cursor, int flags) {
+      Map<String, String> reminders = (flags & CompactCodec.FLAG_SKIP_REMINDERS) != 0 ? null : queryReminderOffsets(ctx, cursor, Integer.MAX_VALUE);
+      StringBuilder       sb        = new StringBuilder(16 + cursor.getCount() * 128);
+      CompactCodec.writeField(sb, true);
+      CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+      
+      while (cursor.moveToNext()) 
+         appendEventCompact(cursor, reminders, flags, sb);
+      
+      return sb.toString();
+   }
+   
+   /**
+    * Appends the current cursor row as a CompactCodec event record
+    *
+    * @param reminders - reminder offsets by event ID as returned from queryReminderOffsets, null to skip reminders
+    * @param flags     - CompactCodec.FLAG_* query options, skipped columns are written as null
+    */
+   private static void appendEventCompact(Cursor cursor, Map<String, String> reminders, int flags, StringBuilder sb) {
+      String eventID = cursor.getString(0);
+      
+      CompactCodec.writeField(sb, eventID);
+      CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_TITLE)       != 0 ? null : cursor.getString(1));
+      CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_DESCRIPTION) != 0 ? null : cursor.getString(2));
+      CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_LOCATION)    != 0 ? null : cursor.getString(3));
+      CompactCodec.writeField(sb, cursor.getLong(4));
+      
+      long end = getEndTime(cursor);
+      
+      if (end == Long.MIN_VALUE)
+         CompactCodec.writeField(sb, (String) null);
+      else 
+         CompactCodec.writeField(sb, end);
+      
+      CompactCodec.writeField(sb, cursor.getInt(6) > 0);
+      CompactCodec.writeField(sb, reminders != null ? reminders.get(eventID) : null);
+      
+      if ((flags & CompactCodec.FLAG_SKIP_TIMESTAMPS) != 0) {
+         CompactCodec.writeField(sb, (String) null);
+         CompactCodec.writeField(sb, (String) null);
+      }
+      else {
+         appendTimeStamp(cursor, 7, sb);
+         appendTimeStamp(cursor, 8, sb);
+      }
+      CompactCodec.writeField(sb, cursor.getString(9));
+      CompactCodec.writeField(sb, cursor.getString(11));
+   }
+   
+   /**
+    * @return the end time of the current row. Recurring events have no DTEND, their first occurrence ends 
+    *         DURATION after DTSTART. Long.MIN_VALUE if neither is known
+    */
+   private static long getEndTime(Cursor cursor) {
+      if (!cursor.isNull(5))
+         return cursor.getLong(5);
+      
+      long duration = parseDuration(cursor.getString(10));
+      
+      return duration < 0 ? Long.MIN_VALUE : cursor.getLong(4) + duration;
+   }
+   
+   /**
+    * Parses the RFC 2445 durations used by the provider, e.g. P3600S, P1D or PT1H30M
+    *
+    * @return the duration in milliseconds, -1 if the value is null or malformed
+    */
+   private static long parseDuration(String value) {
+      if (value == null)
+         return -1;
+      
+      long    total    = 0;
+      long    number   = 0;
+      boolean negative = false;
+      
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         
+         if (c >= '0' && c <= '9') {
+            number = number * 10 + (c - '0');
+            continue;
+         }
+         
+         switch (c) {
+            case '-': negative = true;              break;
+            case '+': case 'P': case 'T':           break;
+            case 'W': total += number * 604800000L; break;
+            case 'D': total += number * 86400000L;  break;
+            case 'H': total += number * 3600000L;   break;
+            case 'M': total += number * 60000L;     break;
+            case 'S': total += number * 1000L;      break;
+            default : return -1;
+         }
+         number = 0;
+      }
+      
+      return negative ? -total : total;
+   }
+   
+   /**
+    * Appends a time stamp kept in a text column, null if the column doesn't hold one
+    */
+   private static void appendTimeStamp(Cursor cursor, int column, StringBuilder sb) {
+      String value = cursor.getString(column);
       
       try {
-         while (cursor.moveToNext()) 
-            sb.append(padding).append("  <reminderOffset>").append(cursor.getInt(0) * 60).append("</reminderOffset>\n");
+         if (value != null) {
+            CompactCodec.writeField(sb, Long.parseLong(value));
+            return;
+         }
+      }
+      catch (NumberFormatException e) {
+         // written by some other sync adapter
+      }
+      
+      CompactCodec.writeField(sb, (String) null);
+   }
+   
+   /**
+    * Fetches the alert reminders of the events in up to limit rows of the cursor, starting at its current position, with
+    * one query per chunk of MAX_SELECTION_ARGS event IDs instead of one query per event.
+    * Only alerts are read since only alerts are written, saving an event back leaves its other reminders alone.
+    * The cursor is moved back to its original position.
+    *
+    * @return alarm offsets (in seconds) in CSV format keyed by event ID, events without alert reminders are absent
+    */
+   private static Map<String, String> queryReminderOffsets(Context ctx, Cursor cursor, int limit) {
+      Map<String, String> result   = new HashMap<String, String>();
+      List<String>        eventIDs = new ArrayList<String>();
+      HashSet<String>     seen     = new HashSet<String>();
+      int                 position = cursor.getPosition();
+      int                 rows     = 0;
+      
+      // occurrences of a recurring event share its ID and reminders
+      while (rows++ < limit && cursor.moveToNext()) 
+         if (seen.add(cursor.getString(0)))
+            eventIDs.add(cursor.getString(0));
+      
+      cursor.moveToPosition(position);
+      
+      ContentResolver cr = ctx.getContentResolver();
+      
+      for (int from = 0; from < eventIDs.size(); from += MAX_SELECTION_ARGS) {
+         List<String>  chunk     = eventIDs.subList(from, Math.min(eventIDs.size(), from + MAX_SELECTION_ARGS));
+         StringBuilder selection = new StringBuilder("(").append(CalendarContract.Reminders.METHOD).append(" = ").append(CalendarContract.Reminders.METHOD_ALERT)
+                                                         .append(" AND ").append(CalendarContract.Reminders.EVENT_ID).append(" IN (");
          
-         return sb.toString();
+         for (int i = 0; i < chunk.size(); i++) 
+            selection.append(i == 0 ? "?" : ",?");
+         
+         Cursor reminders = cr.query(REMINDER_URI,
+                                     new String[] { CalendarContract.Reminders.EVENT_ID, CalendarContract.Reminders.MINUTES },
+                                     selection.append("))").toString(),
+                                     chunk.toArray(new String[chunk.size()]),
+                                     CalendarContract.Reminders.EVENT_ID);
+         
+         if (reminders == null)
+            continue;
+         
+         try {
+            String        currentID = null;
+            StringBuilder offsets   = new StringBuilder();
+            
+            while (reminders.moveToNext()) {
+               String eventID = reminders.getString(0);
+               
+               if (!eventID.equals(currentID)) {
+                  if (currentID != null) 
+                     result.put(currentID, offsets.toString());
+                  currentID = eventID;
+                  offsets.setLength(0);
+               }
+               else {
+                  offsets.append(',');
+               }
+               offsets.append(reminders.getInt(1) * 60);
+            }
+            
+            if (currentID != null) 
+               result.put(currentID, offsets.toString());
+         }
+         finally {
+            reminders.close();
+         }
       }
-      finally {
-         cursor.close();
+      
+      return result;
+   }
+   
+   /**
+    * @param offsets - alarm offsets (in seconds) in CSV format, may be null
+    */
+   private static String encodeReminders(String offsets, String padding) {
+      StringBuilder sb = new StringBuilder();
+      
+      if (offsets != null) {
+         StringTokenizer tokens = new StringTokenizer(offsets, ",");
+         
+         while (tokens.hasMoreTokens()) 
+            sb.append(padding).append("  <reminderOffset>").append(tokens.nextToken()).append("</reminderOffset>\n");
       }
+      
+      return sb.toString();
    }
 }
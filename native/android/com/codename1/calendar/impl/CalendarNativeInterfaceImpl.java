@@ -39,6 +39,13 @@ public class CalendarNativeInterfaceImpl {
       return AndroidCalendarImpl.getCalendarName(com.codename1.impl.android.AndroidNativeUtil.getActivity(), offset);
    }
 
+   /**
+    * Lists all calendars with their metadata in one call
+    */
+   public String getCalendars() {
+      return AndroidCalendarImpl.getCalendars(com.codename1.impl.android.AndroidNativeUtil.getActivity());
+   }
+
    /**
     * Opens the named calendar creating it if necessary.
     *
@@ -69,6 +76,17 @@ public class CalendarNativeInterfaceImpl {
       return AndroidCalendarImpl.saveEvent(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, eventID, title, startTimeStamp, endTimeStamp, allDayEvent, taskOnly, notes, location, reminders);      
    }
 
+   /**
+    * Add/Edit several events in named calendar as a single all-or-nothing operation
+    *
+    * @param calendarID - As returned from openCalendar
+    * @param events     - CompactCodec encoded events, see CalendarNativeInterface.saveEvents
+    * @return CompactCodec encoded event identifiers in the order of the input. Null in the case of failure
+    */
+   public String saveEvents(String calendarID, String events) {
+      return AndroidCalendarImpl.saveEvents(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, events);      
+   }
+
    /**
     * Removes event with previously returned eventID
     *
@@ -80,6 +98,27 @@ public class CalendarNativeInterfaceImpl {
       return AndroidCalendarImpl.removeEvent(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, eventID);      
    }
 
+   /**
+    * Removes several events with one delete per chunk of IDs
+    *
+    * @param calendarID - As returned from openCalendar
+    * @param eventIDs   - CompactCodec encoded list of event IDs
+    */
+   public String removeEvents(String calendarID, String eventIDs) {
+      return AndroidCalendarImpl.removeEvents(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, eventIDs);
+   }
+
+   /**
+    * Removes the events starting within the range with a single delete
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param startTimeStamp - Range starting time stamp (unix time)
+    * @param endTimeStamp   - Range ending time stamp (unix time)
+    */
+   public String removeEventsInRange(String calendarID, long startTimeStamp, long endTimeStamp) {
+      return AndroidCalendarImpl.removeEventsInRange(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, startTimeStamp, endTimeStamp);
+   }
+
    /**
     * Query calendar and return details as XML string
     *
@@ -103,15 +142,108 @@ public class CalendarNativeInterfaceImpl {
       return AndroidCalendarImpl.getEvents(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, startTimeStamp, endTimeStamp);      
    }
 
+   /**
+    * Query calendar and return details in the compact format
+    *
+    * @param calendarID	- As returned from openCalendar
+    * @param eventID    - As returned from saveEvent
+    * @param flags      - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded response with zero or one event records
+    */
+   public String getEventByIDCompact(String calendarID, String eventID, int flags) {
+      return AndroidCalendarImpl.getEventByIDCompact(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, eventID, flags);      
+   }
+
+   /**
+    * Returns all events in the calendar between startTimeStamp and endTimeStamp in the compact format
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param startTimeStamp - Event starting time stamp (unix time)
+    * @param endTimeStamp   - Event ending time stamp (unix time)
+    * @param flags          - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded response
+    */
+   public String getEventsCompact(String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+      return AndroidCalendarImpl.getEventsCompact(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, startTimeStamp, endTimeStamp, flags);      
+   }
+
+   /**
+    * @return false, the Instances queries only return occurrences contained in the range unless asked otherwise
+    */
+   public boolean returnsOverlappingEvents() {
+      return false;
+   }
+
+   /**
+    * Returns all events of several calendars between startTimeStamp and endTimeStamp ordered by start time
+    *
+    * @param calendarIDs    - CompactCodec encoded list of calendar IDs
+    * @param startTimeStamp - Event starting time stamp (unix time)
+    * @param endTimeStamp   - Event ending time stamp (unix time)
+    * @param flags          - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded response
+    */
+   public String getEventsForCalendars(String calendarIDs, long startTimeStamp, long endTimeStamp, int flags) {
+      return AndroidCalendarImpl.getEventsForCalendars(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarIDs, startTimeStamp, endTimeStamp, flags);
+   }
+
+   /**
+    * Returns a bounded page of the events in the calendar between startTimeStamp and endTimeStamp ordered by start time
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param startTimeStamp - Event starting time stamp (unix time)
+    * @param endTimeStamp   - Event ending time stamp (unix time)
+    * @param pageToken      - Opaque token from the previous page, null for the first page
+    * @param pageSize       - Maximum number of events to return
+    * @param flags          - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded paged response
+    */
+   public String getEventsPage(String calendarID, long startTimeStamp, long endTimeStamp, String pageToken, int pageSize, int flags) {
+      return AndroidCalendarImpl.getEventsPage(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, startTimeStamp, endTimeStamp, pageToken, pageSize, flags);      
+   }
+
+   /**
+    * Returns the events of the calendar created, changed or deleted since the given time
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param sinceTimeStamp - Changes at or after this time stamp are returned, 0 or less for all events
+    * @param flags          - CompactCodec.FLAG_* query options
+    */
+   public String getEventsModifiedSince(String calendarID, long sinceTimeStamp, int flags) {
+      return AndroidCalendarImpl.getEventsModifiedSince(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, sinceTimeStamp, flags);
+   }
+
+   /**
+    * Returns the times of all events of several calendars overlapping the given range
+    *
+    * @param calendarIDs    - CompactCodec encoded list of calendar IDs
+    * @param startTimeStamp - Range starting time stamp (unix time)
+    * @param endTimeStamp   - Range ending time stamp (unix time)
+    */
+   public String getBusyTimes(String calendarIDs, long startTimeStamp, long endTimeStamp) {
+      return AndroidCalendarImpl.getBusyTimes(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarIDs, startTimeStamp, endTimeStamp);
+   }
+
+   /**
+    * Counts the events of the calendar per time bucket
+    *
+    * @param calendarID - As returned from openCalendar
+    * @param boundaries - CompactCodec encoded ascending bucket boundaries
+    * @param flags      - CompactCodec.FLAG_* query options
+    */
+   public String getEventCounts(String calendarID, String boundaries, int flags) {
+      return AndroidCalendarImpl.getEventCounts(com.codename1.impl.android.AndroidNativeUtil.getActivity(), calendarID, boundaries, flags);
+   }
+
    /**
     * The following are for registering/deregistering for receiving callbacks when calendar events are modified
     */
    public void registerForEventNotifications() {
-      
+      AndroidCalendarImpl.registerForEventNotifications(com.codename1.impl.android.AndroidNativeUtil.getActivity());
    }
 
    public void deregisterForEventNotifications() {
-      
+      AndroidCalendarImpl.deregisterForEventNotifications(com.codename1.impl.android.AndroidNativeUtil.getActivity());
    }
    
    public boolean isSupported() {
@@ -2,16 +2,30 @@
 #import <EventKit/EventKit.h>
 
 @interface com_codename1_calendar_impl_CalendarNativeInterfaceImpl : NSObject {
+    //Kept alive while registered for change notifications, EventKit only posts them for live stores
+    EKEventStore *notificationStore;
 }
 
 -(NSString*)getCalendarName:(int)param;
 -(int)getCalendarCount;
 -(BOOL)hasPermissions;
+-(NSString*)getCalendars;
 -(NSString*)openCalendar:(NSString*)param param1:(BOOL)param1;
 -(NSString*)saveEvent:(NSString*)param param1:(NSString*)param1 param2:(NSString*)param2 param3:(long long)param3 param4:(long long)param4 param5:(BOOL)param5 param6:(BOOL)param6 param7:(NSString*)param7 param8:(NSString*)param8 param9:(NSString*)param9;
+-(NSString*)saveEvents:(NSString*)param param1:(NSString*)param1;
 -(BOOL)removeEvent:(NSString*)param param1:(NSString*)param1;
+-(NSString*)removeEvents:(NSString*)param param1:(NSString*)param1;
+-(NSString*)removeEventsInRange:(NSString*)param param1:(long long)param1 param2:(long long)param2;
 -(NSString*)getEventByID:(NSString*)param param1:(NSString*)param1;
 -(NSString*)getEvents:(NSString*)param param1:(long long)param1 param2:(long long)param2;
+-(NSString*)getEventByIDCompact:(NSString*)param param1:(NSString*)param1 param2:(int)param2;
+-(NSString*)getEventsCompact:(NSString*)param param1:(long long)param1 param2:(long long)param2 param3:(int)param3;
+-(BOOL)returnsOverlappingEvents;
+-(NSString*)getEventsForCalendars:(NSString*)param param1:(long long)param1 param2:(long long)param2 param3:(int)param3;
+-(NSString*)getEventsPage:(NSString*)param param1:(long long)param1 param2:(long long)param2 param3:(NSString*)param3 param4:(int)param4 param5:(int)param5;
+-(NSString*)getEventsModifiedSince:(NSString*)param param1:(long long)param1 param2:(int)param2;
+-(NSString*)getBusyTimes:(NSString*)param param1:(long long)param1 param2:(long long)param2;
+-(NSString*)getEventCounts:(NSString*)param param1:(NSString*)param1 param2:(int)param2;
 -(void)registerForEventNotifications;
 -(void)deregisterForEventNotifications;
 -(BOOL)isSupported;
@@ -1,4 +1,6 @@
 #import "com_codename1_calendar_impl_CalendarNativeInterfaceImpl.h"
+#import "CodenameOne_GLViewController.h"
+#include "com_codename1_calendar_DeviceCalendar.h"
 
 @implementation com_codename1_calendar_impl_CalendarNativeInterfaceImpl
 
@@ -60,6 +62,43 @@
     return calendars.count;
 }
 
+/*
+ * Enumerates all available calendars with their metadata in one call. Calendars are
+ * ordered by identifier, the same order getCalendarName uses.
+ *
+ * @return  Compact response with one record per calendar: id, name, color, accessLevel, openable. Nil without permissions.
+ */
+-(NSString*)getCalendars{
+    //Make sure we have user permission to continue
+    if (NO == [self hasPermissions]) {
+        return nil;
+    }
+
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    NSMutableSet *calendars = [self getAvailableCalendars:eventStore];
+    NSSortDescriptor *sortDescriptor = [NSSortDescriptor sortDescriptorWithKey:@"calendarIdentifier" ascending:YES];
+    NSArray *sortedCalendars = [calendars sortedArrayUsingDescriptors:[NSArray arrayWithObject:sortDescriptor]];
+
+    NSMutableString *response = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:response];
+    [self appendCompactField:@"5" to:response];
+
+    for (EKCalendar *calendar in sortedCalendars) {
+        int rgb = 0;
+        if (calendar.CGColor != NULL && CGColorGetNumberOfComponents(calendar.CGColor) >= 3) {
+            const CGFloat *components = CGColorGetComponents(calendar.CGColor);
+            rgb = ((int)(components[0] * 255) << 16) | ((int)(components[1] * 255) << 8) | (int)(components[2] * 255);
+        }
+        [self appendCompactField:calendar.calendarIdentifier to:response];
+        [self appendCompactField:calendar.title to:response];
+        [self appendCompactField:[NSString stringWithFormat:@"%d", rgb] to:response];
+        //Only calendars that allow content modifications are available, see getAvailableCalendars
+        [self appendCompactField:(calendar.allowsContentModifications ? @"2" : @"1") to:response];
+        [self appendCompactField:@"1" to:response];
+    }
+    return response;
+}
+
 /*
  * Checks the calendar permission status. If the permissions has not been requested yet,
  * prompt the user for permissions. Note that after the user makes the permission choice,
@@ -169,90 +208,21 @@
     EKEventStore *eventStore = [[EKEventStore alloc] init];
     
     //Find the calendar with the given ID. If calendar ID not provided, use the device default calendar
-    EKCalendar * calendar = [eventStore defaultCalendarForNewEvents];
-    if(0 < [calendarID length]){
-        NSMutableSet *calendars = [self getAvailableCalendars:eventStore];
-        BOOL calendarFound = NO;
-        for (EKCalendar *cal in calendars) {
-            if ([calendarID isEqualToString:cal.calendarIdentifier]) {
-                calendar = cal;
-                calendarFound = YES;
-                break;
-            }
-        }
-        //If calendarID is provided but we couldn't locate the calendar, return here
-        if (!calendarFound) {
-            return nil;
-        }
-    }
-    
-    //Find the event with the given ID. If id not given, create a new event
-    EKEvent *event = nil;
-    if (0 < [eventID length]) {
-        event = [eventStore eventWithIdentifier:eventID];
-        //If we couldn't locate the event with the ID provided, return here
-        if (nil == event) {
-            return nil;
-        }
-    }else{
-        event = [EKEvent eventWithEventStore:eventStore];
-        event.calendar = calendar;
-    }
-    
-    //Set event properties
-    event.title = title;
-    event.notes = notes;
-    event.allDay = allDayEvent;
-    if (!allDayEvent) {
-        NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)startTimeStamp/1000];
-        NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)endTimeStamp/1000];
-        event.startDate = startDate;
-        event.endDate = endDate;
-    }
-    event.location = location;
-    
-    //Add alarms to the event
-    //First, remove all existing alarms
-    NSArray *alarms = event.alarms;
-    if (nil != alarms) {
-        for (EKAlarm *alarm in alarms) {
-            [event removeAlarm:alarm];
-        }
+    EKCalendar * calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    //If calendarID is provided but we couldn't locate the calendar, return here
+    if (nil == calendar) {
+        return nil;
     }
     
-    //Alarms are submitted as a stirng in CSV format. The alarm offsets must be
-    //negative values. If not, they will be converted to a negative value before applying
-    NSArray *reminderArray = [reminders componentsSeparatedByString:@","];
-    for (NSString *str in reminderArray) {
-        int minutes = [str intValue];
-        if (minutes > 0) {
-            minutes *= -1;
-        }
-        //Add this only if we don't have this reminder already
-        BOOL alarmExists = NO;
-        NSArray *alarms = event.alarms;
-        if (nil != alarms) {
-            for (EKAlarm *alarm in alarms) {
-                if (alarm.relativeOffset == minutes) {
-                    alarmExists = YES;
-                    break;
-                }
-            }
-        }
-        if (!alarmExists) {
-            EKAlarm * alarm = [EKAlarm alarmWithRelativeOffset:minutes];
-            [event addAlarm:alarm];
-            //We can only have two alarms
-            if (event.alarms.count >= 2) {
-                break;
-            }
-        }
-        
+    EKEvent *event = [self prepareEvent:eventStore calendar:calendar eventID:eventID title:title startTimeStamp:startTimeStamp endTimeStamp:endTimeStamp allDayEvent:allDayEvent notes:notes location:location reminders:reminders recurrenceRule:nil];
+    //If we couldn't locate the event with the ID provided, return here
+    if (nil == event) {
+        return nil;
     }
     
     //Finally, Save the event
     NSError *saveError = nil;
-    BOOL result = [eventStore saveEvent:event span:EKSpanThisEvent commit:YES error:&saveError];
+    BOOL result = [eventStore saveEvent:event span:event.hasRecurrenceRules ? EKSpanFutureEvents : EKSpanThisEvent commit:YES error:&saveError];
     
     if (result) {
         eventID = event.eventIdentifier;
@@ -264,6 +234,76 @@
     return eventID;
 }
 
+/*
+ * Add/Edit several events in named calendar. All events are saved to the event store
+ * without committing and then committed at once. If any event fails the store is reset
+ * so nothing is saved.
+ *
+ * @param calendarID     - As returned from openCalendar. Pass null for default calendar
+ * @param events         - CompactCodec encoded events: the number of fields per event followed
+ *                         by eventID, title, startTimeStamp, endTimeStamp, allDayEvent, taskOnly,
+ *                         notes, location, reminders, recurrenceRule for every event
+ * @return CompactCodec encoded event identifiers in the order of the input. Nil in the case of failure
+ */
+-(NSString*)saveEvents:(NSString*)calendarID param1:(NSString*)events{
+    
+    //Make sure we have user permission to continue
+    if (NO == [self hasPermissions]) {
+        return nil;
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar * calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return nil;
+    }
+    
+    NSArray *fields = [self decodeCompact:events];
+    if (0 == fields.count) {
+        return @"";
+    }
+    
+    int width = [[fields objectAtIndex:0] intValue];
+    if (width < 9) {
+        return nil;
+    }
+    
+    NSMutableArray *savedEvents = [[NSMutableArray alloc] init];
+    for (NSUInteger i = 1; i + width <= fields.count; i += width) {
+        EKEvent *event = [self prepareEvent:eventStore
+                                   calendar:calendar
+                                    eventID:[self compactString:fields at:i]
+                                      title:[self compactString:fields at:i + 1]
+                             startTimeStamp:[[self compactString:fields at:i + 2] longLongValue]
+                               endTimeStamp:[[self compactString:fields at:i + 3] longLongValue]
+                                allDayEvent:[@"1" isEqualToString:[self compactString:fields at:i + 4]]
+                                      notes:[self compactString:fields at:i + 6]
+                                   location:[self compactString:fields at:i + 7]
+                                  reminders:[self compactString:fields at:i + 8]
+                             recurrenceRule:(width > 9) ? [self compactString:fields at:i + 9] : nil];
+        NSError *saveError = nil;
+        if (nil == event || NO == [eventStore saveEvent:event span:event.hasRecurrenceRules ? EKSpanFutureEvents : EKSpanThisEvent commit:NO error:&saveError]) {
+            NSLog(@"Event batch failed, discarding %d pending events.", (int)savedEvents.count);
+            [eventStore reset];
+            return nil;
+        }
+        [savedEvents addObject:event];
+    }
+    
+    NSError *commitError = nil;
+    if (NO == [eventStore commit:&commitError]) {
+        NSLog(@"Event batch commit failed.");
+        [eventStore reset];
+        return nil;
+    }
+    
+    NSMutableString *result = [[NSMutableString alloc] init];
+    for (EKEvent *event in savedEvents) {
+        [self appendCompactField:event.eventIdentifier to:result];
+    }
+    return result;
+}
+
 /*
  * Removes the event with the ID provided from the calendar provided
  * calendarID parameter is ignored since eventID is unique across all calendars on iOS
@@ -304,6 +344,107 @@
 
 }
 
+/*
+ * Removes the events with the IDs provided from the calendar provided. The removals are committed
+ * to the event store once at the end, a recurring event is removed with all its occurrences.
+ *
+ * @param calendarID     - As returned from openCalendar. Pass null for default calendar.
+ * @param eventIDs       - CompactCodec encoded list of event IDs
+ * @return  Compact response with the number of removed events
+ */
+-(NSString*)removeEvents:(NSString*)calendarID param1:(NSString*)eventIDs{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar *calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return [self getErrorCompact:@"Calendar not found."];
+    }
+    
+    int removed = 0;
+    for (id eventID in [self decodeCompact:eventIDs]) {
+        EKEvent *event = eventID == [NSNull null] ? nil : [eventStore eventWithIdentifier:eventID];
+        if (nil == event || NO == [event.calendar.calendarIdentifier isEqualToString:calendar.calendarIdentifier]) {
+            continue;
+        }
+        NSError *removeError = nil;
+        if ([eventStore removeEvent:event span:EKSpanFutureEvents commit:NO error:&removeError]) {
+            removed++;
+        }
+    }
+    return [self commitRemoved:removed eventStore:eventStore];
+}
+
+/*
+ * Removes the events of the calendar starting within the period specified, a recurring event with all
+ * its occurrences if its first occurrence starts within the period. Committed to the event store once at the end.
+ *
+ * @param calendarID        - As returned from openCalendar. Pass null for default calendar.
+ * @param startTimeStamp    - Period starting time stamp (unix time) in milliseconds
+ * @param endTimeStamp      - Period ending time stamp (unix time) in milliseconds
+ * @return  Compact response with the number of removed events
+ */
+-(NSString*)removeEventsInRange:(NSString*)calendarID param1:(long long)startTimeStamp param2:(long long)endTimeStamp{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar *calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return [self getErrorCompact:@"Calendar not found."];
+    }
+    
+    NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)startTimeStamp/1000];
+    NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)endTimeStamp/1000];
+    NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:startDate endDate:endDate calendars:[NSArray arrayWithObjects:calendar, nil]];
+    if (searchPredicate == nil) {
+        return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+    }
+    
+    int removed = 0;
+    NSMutableSet *seen = [[NSMutableSet alloc] init];
+    for (EKEvent *occurrence in [eventStore eventsMatchingPredicate:searchPredicate]) {
+        if ([seen containsObject:occurrence.eventIdentifier]) {
+            continue;
+        }
+        [seen addObject:occurrence.eventIdentifier];
+        
+        // the first occurrence decides for the whole series
+        EKEvent *event = [eventStore eventWithIdentifier:occurrence.eventIdentifier];
+        if (nil == event || [event.startDate compare:startDate] == NSOrderedAscending || [event.startDate compare:endDate] != NSOrderedAscending) {
+            continue;
+        }
+        NSError *removeError = nil;
+        if ([eventStore removeEvent:event span:EKSpanFutureEvents commit:NO error:&removeError]) {
+            removed++;
+        }
+    }
+    return [self commitRemoved:removed eventStore:eventStore];
+}
+
+/*
+ * Commits the pending removals of removeEvents and removeEventsInRange
+ *
+ * @param   removed - Number of events removed
+ * @param   eventStore - Store holding the removals
+ * @return  Compact response with the number of removed events
+ */
+-(NSString*)commitRemoved:(int)removed eventStore:(EKEventStore *)eventStore
+{
+    NSError *commitError = nil;
+    if (0 < removed && NO == [eventStore commit:&commitError]) {
+        return [self getErrorCompact:[commitError localizedDescription]];
+    }
+    
+    NSMutableString *response = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:response];
+    [self appendCompactField:[NSString stringWithFormat:@"%d", removed] to:response];
+    return response;
+}
+
 /*
  * Returns details of the event with the given ID in an XML string
  * calendarID parameter is ignored since eventID is unique across all calendars on iOS
@@ -434,63 +575,857 @@
     return xmlString;
 }
 
--(void)registerForEventNotifications{
+/*
+ * Returns details of the event with the given ID in the CompactCodec format (see CompactCodec.java).
+ * calendarID parameter is ignored since eventID is unique across all calendars on iOS
+ *
+ * @param calendarID     - As returned from openCalendar. Pass null for default calendar.
+ * @param eventID        - Event Identifier
+ * @param flags          - CompactCodec.FLAG_* query options
+ * @return  Compact response with zero or one event records
+ */
+-(NSString*)getEventByIDCompact:(NSString*)calendarID param1:(NSString*)eventID param2:(int)flags{
+    if (0 == [eventID length]) {
+        return [self getErrorCompact:@"No Event ID supplied."];
+    }
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKEvent *event = [eventStore eventWithIdentifier:eventID];
+    
+    NSMutableString *response = [self getResponseHeaderCompact];
+    if (nil != event) {
+        [self appendEvent:event flags:flags toCompact:response];
+    }
+    return response;
 }
 
--(void)deregisterForEventNotifications{
+/*
+ * Searches events in the calendar with in the period specified and returns them
+ * in the CompactCodec format (see CompactCodec.java)
+ * EventKit always returns the events overlapping the period, so CompactCodec.FLAG_OVERLAPPING
+ * needs no handling here.
+ *
+ * @param calendarID        - As returned from openCalendar. Pass null for default calendar.
+ * @param startTimeStamp    - Event search starting time stamp (unix time) in milliseconds
+ * @param startTimeStamp    - Event search ending time stamp (unix time) in milliseconds
+ * @param flags             - CompactCodec.FLAG_* query options
+ * @return  Compact response with one record per event
+ */
+-(NSString*)getEventsCompact:(NSString*)calendarID param1:(long long)startTimeStamp param2:(long long)endTimeStamp param3:(int)flags{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar *calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return [self getErrorCompact:@"Calendar not found."];
+    }
+    
+    NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)startTimeStamp/1000];
+    NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)endTimeStamp/1000];
+    NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:startDate endDate:endDate calendars:[NSArray arrayWithObjects:calendar, nil]];
+    if (searchPredicate == nil) {
+        return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+    }
+    
+    NSArray *events = [eventStore eventsMatchingPredicate:searchPredicate];
+    NSMutableString *response = [self getResponseHeaderCompact];
+    for (EKEvent *event in events) {
+        [self appendEvent:event flags:flags toCompact:response];
+    }
+    return response;
 }
 
--(BOOL)isSupported{
+/*
+ * EventKit predicates always match the events overlapping the period
+ */
+-(BOOL)returnsOverlappingEvents{
     return YES;
 }
 
-
-/*******************************************************************************************************
-Helper methods for the class. These are not declared in the header. 
-Shouldn't be used directly by the class user.
-******************************************************************************************************/
-
 /*
- * Traverse through all event sources available and enumarates all accissible calendars
- * from all of them
+ * Searches events of several calendars with in the period specified using a single predicate and
+ * returns them ordered by start time in the CompactCodec format (see CompactCodec.java)
  *
- * return Set of EKCalendar objects. Note that the order or calendars returned is not consistant.
- * @author  Kapila de Lanerolle
- * @date    1 Feb 2014
+ * @param calendarIDs       - CompactCodec encoded list of calendar IDs as returned from openCalendar
+ * @param startTimeStamp    - Event search starting time stamp (unix time) in milliseconds
+ * @param endTimeStamp      - Event search ending time stamp (unix time) in milliseconds
+ * @param flags             - CompactCodec.FLAG_* query options
+ * @return  Compact response with one record per event
  */
-
--(NSMutableSet*) getAvailableCalendars: (EKEventStore *) eventStore
-{
-    //EKEventStore *eventStore = [[EKEventStore alloc] init];
-    NSMutableSet * calendars = [[NSMutableSet alloc] init];
+-(NSString*)getEventsForCalendars:(NSString*)calendarIDs param1:(long long)startTimeStamp param2:(long long)endTimeStamp param3:(int)flags{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
     
-    for (EKSource *source in eventStore.sources) {
-        //Let's check the event source type. We are only interested in the calendars
-        //that contain events that are editable by us
-        EKSourceType sourceType = source.sourceType;
-        if (sourceType != EKSourceTypeCalDAV &&
-            sourceType != EKSourceTypeExchange &&
-            sourceType != EKSourceTypeLocal) {
-            continue;
-        }
-        
-        //We have a source that we are interested in.
-        //Let's findout about the available calendars
-        NSSet *cals = [source calendarsForEntityType:EKEntityTypeEvent];
-        for (EKCalendar *calendar in cals) {
-            if(calendar.allowsContentModifications)
-            {
-                [calendars addObject:calendar];
-            }
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    NSMutableArray *calendars = [[NSMutableArray alloc] init];
+    for (id calendarID in [self decodeCompact:calendarIDs]) {
+        EKCalendar *calendar = calendarID == [NSNull null] ? nil : [self calendarWithID:calendarID eventStore:eventStore];
+        if (nil == calendar) {
+            return [self getErrorCompact:@"Calendar not found."];
         }
-        
+        [calendars addObject:calendar];
     }
     
-    return  calendars;
-}
-
-/*
- * Event detailed are encoded in XML and returns as an NSString
+    NSMutableString *response = [self getResponseHeaderCompact];
+    if (0 == calendars.count) {
+        return response;
+    }
+    
+    NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)startTimeStamp/1000];
+    NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)endTimeStamp/1000];
+    NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:startDate endDate:endDate calendars:calendars];
+    if (searchPredicate == nil) {
+        return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+    }
+    
+    NSArray *events = [[eventStore eventsMatchingPredicate:searchPredicate] sortedArrayUsingSelector:@selector(compareStartDateWithEvent:)];
+    for (EKEvent *event in events) {
+        [self appendEvent:event flags:flags toCompact:response];
+    }
+    return response;
+}
+
+/*
+ * Returns a bounded page of the events in the calendar with in the period specified, ordered by
+ * start time and event identifier, in the CompactCodec format (see CompactCodec.java).
+ * EventKit has no cursor API, the page token is the start time and identifier of the last event of
+ * the previous page and the search continues from its start. The period is searched in windows that
+ * double in length until they hold more than a page, so only the events near the page are loaded.
+ * Without FLAG_OVERLAPPING events crossing the period are skipped.
+ *
+ * @param calendarID        - As returned from openCalendar. Pass null for default calendar.
+ * @param startTimeStamp    - Event search starting time stamp (unix time) in milliseconds
+ * @param startTimeStamp    - Event search ending time stamp (unix time) in milliseconds
+ * @param pageToken         - Token returned with the previous page, nil for the first page
+ * @param pageSize          - Maximum number of events to return
+ * @param flags             - CompactCodec.FLAG_* query options
+ * @return  Compact paged response
+ */
+-(NSString*)getEventsPage:(NSString*)calendarID param1:(long long)startTimeStamp param2:(long long)endTimeStamp param3:(NSString*)pageToken param4:(int)pageSize param5:(int)flags{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar *calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return [self getErrorCompact:@"Calendar not found."];
+    }
+    
+    long long lastStart = LLONG_MIN;
+    NSString *lastID = nil;
+    if (nil != pageToken) {
+        NSRange split = [pageToken rangeOfString:@":"];
+        if (split.location == NSNotFound) {
+            return [self getErrorCompact:@"Invalid page token."];
+        }
+        lastStart = [[pageToken substringToIndex:split.location] longLongValue];
+        lastID = [pageToken substringFromIndex:split.location + 1];
+    }
+    
+    //FLAG_OVERLAPPING
+    BOOL overlapping = (flags & 2) != 0;
+    NSUInteger limit = (NSUInteger)MAX(1, pageSize);
+    NSComparator byStart = ^NSComparisonResult(EKEvent *a, EKEvent *b) {
+        NSComparisonResult result = [a.startDate compare:b.startDate];
+        return result != NSOrderedSame ? result : [a.eventIdentifier compare:b.eventIdentifier];
+    };
+    
+    NSMutableArray *page = [[NSMutableArray alloc] init];
+    long long windowStart = MAX(startTimeStamp, lastStart);
+    long long window = 7LL * 24 * 60 * 60 * 1000;
+    BOOL first = YES;
+    while (page.count <= limit && windowStart < endTimeStamp) {
+        long long windowEnd = (endTimeStamp - windowStart > window) ? windowStart + window : endTimeStamp;
+        NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:[NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)windowStart/1000]
+                                                                           endDate:[NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)windowEnd/1000]
+                                                                         calendars:[NSArray arrayWithObjects:calendar, nil]];
+        if (searchPredicate == nil) {
+            return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+        }
+        
+        NSMutableArray *found = [[NSMutableArray alloc] init];
+        for (EKEvent *event in [eventStore eventsMatchingPredicate:searchPredicate]) {
+            long long start = (long long)([event.startDate timeIntervalSince1970]*1000);
+            long long end = (long long)([event.endDate timeIntervalSince1970]*1000);
+            
+            // events overlapping the window but starting before it belong to an earlier window or page
+            if (!first && start < windowStart) {
+                continue;
+            }
+            if (nil != lastID && (start < lastStart || (start == lastStart && [event.eventIdentifier compare:lastID] != NSOrderedDescending))) {
+                continue;
+            }
+            if (!overlapping && (start < startTimeStamp || end > endTimeStamp)) {
+                continue;
+            }
+            [found addObject:event];
+        }
+        [page addObjectsFromArray:[found sortedArrayUsingComparator:byStart]];
+        
+        windowStart = windowEnd;
+        window *= 2;
+        first = NO;
+    }
+    
+    NSString *nextPageToken = nil;
+    if (page.count > limit) {
+        EKEvent *last = [page objectAtIndex:limit - 1];
+        nextPageToken = [NSString stringWithFormat:@"%lld:%@", (long long)([last.startDate timeIntervalSince1970]*1000), last.eventIdentifier];
+    }
+    
+    NSMutableString *response = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:response];
+    [self appendCompactField:nextPageToken to:response];
+    [self appendCompactField:@"12" to:response];
+    for (NSUInteger i = 0; i < MIN(limit, page.count); i++) {
+        [self appendEvent:[page objectAtIndex:i] flags:flags toCompact:response];
+    }
+    return response;
+}
+
+/*
+ * Returns the times of the events of several calendars overlapping the period specified in the
+ * CompactCodec format (see CompactCodec.BUSY_FIELD_COUNT). All calendars are searched with a single
+ * predicate, events marked as free don't block time and are left out.
+ *
+ * @param calendarIDs       - CompactCodec encoded list of calendar IDs as returned from openCalendar
+ * @param startTimeStamp    - Period starting time stamp (unix time) in milliseconds
+ * @param endTimeStamp      - Period ending time stamp (unix time) in milliseconds
+ * @return  Compact response with one record per event
+ */
+-(NSString*)getBusyTimes:(NSString*)calendarIDs param1:(long long)startTimeStamp param2:(long long)endTimeStamp{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    NSMutableArray *calendars = [[NSMutableArray alloc] init];
+    for (id calendarID in [self decodeCompact:calendarIDs]) {
+        EKCalendar *calendar = calendarID == [NSNull null] ? nil : [self calendarWithID:calendarID eventStore:eventStore];
+        if (nil == calendar) {
+            return [self getErrorCompact:@"Calendar not found."];
+        }
+        [calendars addObject:calendar];
+    }
+    
+    NSMutableString *response = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:response];
+    [self appendCompactField:@"3" to:response];
+    if (0 == calendars.count) {
+        return response;
+    }
+    
+    NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)startTimeStamp/1000];
+    NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)endTimeStamp/1000];
+    NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:startDate endDate:endDate calendars:calendars];
+    if (searchPredicate == nil) {
+        return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+    }
+    
+    for (EKEvent *event in [eventStore eventsMatchingPredicate:searchPredicate]) {
+        if (event.availability == EKEventAvailabilityFree) {
+            continue;
+        }
+        [self appendCompactField:[NSString stringWithFormat:@"%lld", (long long)[event.startDate timeIntervalSince1970]*1000] to:response];
+        [self appendCompactField:[NSString stringWithFormat:@"%lld", (long long)[event.endDate timeIntervalSince1970]*1000] to:response];
+        [self appendCompactField:event.allDay ? @"1" : @"0" to:response];
+    }
+    return response;
+}
+
+/*
+ * Counts the events of the calendar per bucket (see EventHistogram.java), bucket i is
+ * [boundaries[i], boundaries[i + 1]). Only the event dates are read, nothing is encoded per event.
+ * With FLAG_OVERLAPPING an event counts in every bucket it overlaps, otherwise in the bucket containing it.
+ * EventKit returns the overlapping events either way, events crossing the range are skipped without the flag,
+ * matching the events DeviceCalendar.getEvents keeps from getEventsCompact.
+ *
+ * @param calendarID        - As returned from openCalendar. Pass null for default calendar.
+ * @param boundaries        - CompactCodec encoded ascending bucket boundaries (unix time) in milliseconds
+ * @param flags             - CompactCodec.FLAG_* query options
+ * @return  Compact response with the number of buckets followed by one count per bucket
+ */
+-(NSString*)getEventCounts:(NSString*)calendarID param1:(NSString*)boundaries param2:(int)flags{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    NSArray *fields = [self decodeCompact:boundaries];
+    if (fields.count < 2) {
+        return [self getErrorCompact:@"At least two boundaries are required."];
+    }
+    NSUInteger buckets = fields.count - 1;
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar *calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return [self getErrorCompact:@"Calendar not found."];
+    }
+    
+    long long *bounds = malloc(sizeof(long long) * fields.count);
+    int *counts = calloc(buckets, sizeof(int));
+    for (NSUInteger i = 0; i < fields.count; i++) {
+        bounds[i] = [[fields objectAtIndex:i] longLongValue];
+    }
+    
+    NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)bounds[0]/1000];
+    NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)bounds[buckets]/1000];
+    NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:startDate endDate:endDate calendars:[NSArray arrayWithObjects:calendar, nil]];
+    if (searchPredicate == nil) {
+        free(bounds);
+        free(counts);
+        return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+    }
+    
+    //FLAG_OVERLAPPING
+    BOOL overlapping = (flags & 2) != 0;
+    for (EKEvent *event in [eventStore eventsMatchingPredicate:searchPredicate]) {
+        long long start = (long long)[event.startDate timeIntervalSince1970]*1000;
+        long long end = (long long)[event.endDate timeIntervalSince1970]*1000;
+        
+        // first bucket ending after the start
+        NSUInteger low = 0, high = buckets;
+        while (low < high) {
+            NSUInteger mid = (low + high) / 2;
+            if (bounds[mid + 1] <= start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        
+        if (overlapping) {
+            for (NSUInteger i = low; i < buckets && bounds[i] < end; i++) {
+                counts[i]++;
+            }
+        } else if (low < buckets && start >= bounds[low] && end <= bounds[low + 1]) {
+            counts[low]++;
+        }
+    }
+    
+    NSMutableString *response = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:response];
+    [self appendCompactField:[NSString stringWithFormat:@"%lu", (unsigned long)buckets] to:response];
+    for (NSUInteger i = 0; i < buckets; i++) {
+        [self appendCompactField:[NSString stringWithFormat:@"%d", counts[i]] to:response];
+    }
+    free(bounds);
+    free(counts);
+    return response;
+}
+
+/*
+ * Returns the events of the calendar created or changed since the given time in the CompactCodec
+ * format (see CompactCodec.java). EventKit doesn't keep track of deleted events and can only
+ * search a window of a few years, events starting within two years of today are searched.
+ *
+ * @param calendarID        - As returned from openCalendar. Pass null for default calendar.
+ * @param sinceTimeStamp    - Changes at or after this time stamp (unix time) in milliseconds are returned, 0 or less for all events
+ * @param flags             - CompactCodec.FLAG_* query options
+ * @return  Compact change response with no deleted events
+ */
+-(NSString*)getEventsModifiedSince:(NSString*)calendarID param1:(long long)sinceTimeStamp param2:(int)flags{
+    if ([self hasPermissions] == NO) {
+        return [self getErrorCompact:@"Permission denied."];
+    }
+    
+    EKEventStore *eventStore = [[EKEventStore alloc] init];
+    EKCalendar *calendar = [self calendarWithID:calendarID eventStore:eventStore];
+    if (nil == calendar) {
+        return [self getErrorCompact:@"Calendar not found."];
+    }
+    
+    NSDate *now = [NSDate date];
+    long long syncTimeStamp = (long long)([now timeIntervalSince1970]*1000);
+    NSTimeInterval window = 2 * 365 * 24 * 60 * 60;
+    NSPredicate *searchPredicate = [eventStore predicateForEventsWithStartDate:[now dateByAddingTimeInterval:-window] endDate:[now dateByAddingTimeInterval:window] calendars:[NSArray arrayWithObjects:calendar, nil]];
+    if (searchPredicate == nil) {
+        return [self getErrorCompact:@"Failed to create a search predicate with supplied parameters"];
+    }
+    
+    NSArray *events = [eventStore eventsMatchingPredicate:searchPredicate];
+    NSMutableString *response = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:response];
+    [self appendCompactField:[NSString stringWithFormat:@"%lld", syncTimeStamp] to:response];
+    [self appendCompactField:@"0" to:response];
+    [self appendCompactField:@"12" to:response];
+    for (EKEvent *event in events) {
+        long long modified = (long long)([event.lastModifiedDate timeIntervalSince1970]*1000);
+        if (sinceTimeStamp <= 0 || nil == event.lastModifiedDate || modified >= sinceTimeStamp) {
+            [self appendEvent:event flags:flags toCompact:response];
+        }
+    }
+    return response;
+}
+
+/*
+ * Starts forwarding EKEventStoreChangedNotification to DeviceCalendar.nativeCalendarChanged.
+ * The Java side coalesces bursts of notifications.
+ */
+-(void)registerForEventNotifications{
+    if (nil != notificationStore) {
+        return;
+    }
+    notificationStore = [[EKEventStore alloc] init];
+    [[NSNotificationCenter defaultCenter] addObserver:self
+                                             selector:@selector(eventStoreChanged:)
+                                                 name:EKEventStoreChangedNotification
+                                               object:notificationStore];
+}
+
+-(void)deregisterForEventNotifications{
+    if (nil == notificationStore) {
+        return;
+    }
+    [[NSNotificationCenter defaultCenter] removeObserver:self
+                                                    name:EKEventStoreChangedNotification
+                                                  object:notificationStore];
+    notificationStore = nil;
+}
+
+-(void)eventStoreChanged:(NSNotification *)notification{
+    com_codename1_calendar_DeviceCalendar_nativeCalendarChanged__(CN1_THREAD_GET_STATE_PASS_SINGLE_ARG);
+}
+
+-(BOOL)isSupported{
+    return YES;
+}
+
+
+/*******************************************************************************************************
+Helper methods for the class. These are not declared in the header. 
+Shouldn't be used directly by the class user.
+******************************************************************************************************/
+
+/*
+ * Traverse through all event sources available and enumarates all accissible calendars
+ * from all of them
+ *
+ * return Set of EKCalendar objects. Note that the order or calendars returned is not consistant.
+ * @author  Kapila de Lanerolle
+ * @date    1 Feb 2014
+ */
+
+-(NSMutableSet*) getAvailableCalendars: (EKEventStore *) eventStore
+{
+    //EKEventStore *eventStore = [[EKEventStore alloc] init];
+    NSMutableSet * calendars = [[NSMutableSet alloc] init];
+    
+    for (EKSource *source in eventStore.sources) {
+        //Let's check the event source type. We are only interested in the calendars
+        //that contain events that are editable by us
+        EKSourceType sourceType = source.sourceType;
+        if (sourceType != EKSourceTypeCalDAV &&
+            sourceType != EKSourceTypeExchange &&
+            sourceType != EKSourceTypeLocal) {
+            continue;
+        }
+        
+        //We have a source that we are interested in.
+        //Let's findout about the available calendars
+        NSSet *cals = [source calendarsForEntityType:EKEntityTypeEvent];
+        for (EKCalendar *calendar in cals) {
+            if(calendar.allowsContentModifications)
+            {
+                [calendars addObject:calendar];
+            }
+        }
+        
+    }
+    
+    return  calendars;
+}
+
+/*
+ * Finds the calendar with the given ID among the available calendars
+ *
+ * @param   calendarID - As returned from openCalendar. Pass nil or empty for the device default calendar
+ * @param   eventStore - Event store to search
+ * @return  The calendar. Nil if a calendarID was provided but no such calendar is available
+ */
+-(EKCalendar *)calendarWithID:(NSString *)calendarID eventStore:(EKEventStore *)eventStore
+{
+    if (0 == [calendarID length]) {
+        return [eventStore defaultCalendarForNewEvents];
+    }
+    NSMutableSet *calendars = [self getAvailableCalendars:eventStore];
+    for (EKCalendar *cal in calendars) {
+        if ([calendarID isEqualToString:cal.calendarIdentifier]) {
+            return cal;
+        }
+    }
+    return nil;
+}
+
+/*
+ * Looks up or creates an event and applies the given properties to it without saving it
+ *
+ * @param   recurrenceRule - RRULE value, empty to turn a series into a single event, nil to create a single event or keep the rules of an existing one
+ * @return  The updated event. Nil if an eventID was provided but no such event exists or the rule is not supported
+ */
+-(EKEvent *)prepareEvent:(EKEventStore *)eventStore calendar:(EKCalendar *)calendar eventID:(NSString *)eventID title:(NSString *)title startTimeStamp:(long long)startTimeStamp endTimeStamp:(long long)endTimeStamp allDayEvent:(BOOL)allDayEvent notes:(NSString *)notes location:(NSString *)location reminders:(NSString *)reminders recurrenceRule:(NSString *)recurrenceRule
+{
+    EKRecurrenceRule *rule = nil;
+    if (0 < [recurrenceRule length]) {
+        rule = [self recurrenceRuleFromString:recurrenceRule];
+        if (nil == rule) {
+            NSLog(@"Unsupported recurrence rule %@", recurrenceRule);
+            return nil;
+        }
+    }
+    
+    //Find the event with the given ID. If id not given, create a new event
+    EKEvent *event = nil;
+    if (0 < [eventID length]) {
+        event = [eventStore eventWithIdentifier:eventID];
+        //If we couldn't locate the event with the ID provided, return here
+        if (nil == event) {
+            return nil;
+        }
+    }else{
+        event = [EKEvent eventWithEventStore:eventStore];
+        event.calendar = calendar;
+    }
+    
+    //Set event properties
+    event.title = title;
+    event.notes = notes;
+    event.allDay = allDayEvent;
+    if (!allDayEvent) {
+        NSDate *startDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)startTimeStamp/1000];
+        NSDate *endDate = [NSDate dateWithTimeIntervalSince1970:(NSTimeInterval)endTimeStamp/1000];
+        event.startDate = startDate;
+        event.endDate = endDate;
+    }
+    event.location = location;
+    if (nil != recurrenceRule) {
+        event.recurrenceRules = (nil != rule) ? [NSArray arrayWithObject:rule] : nil;
+    }
+    
+    //Add alarms to the event
+    //First, remove all existing alarms
+    NSArray *alarms = event.alarms;
+    if (nil != alarms) {
+        for (EKAlarm *alarm in alarms) {
+            [event removeAlarm:alarm];
+        }
+    }
+    
+    //Alarms are submitted as a stirng in CSV format. The alarm offsets must be
+    //negative values. If not, they will be converted to a negative value before applying
+    NSArray *reminderArray = [reminders componentsSeparatedByString:@","];
+    for (NSString *str in reminderArray) {
+        int minutes = [str intValue];
+        if (minutes > 0) {
+            minutes *= -1;
+        }
+        //Add this only if we don't have this reminder already
+        BOOL alarmExists = NO;
+        NSArray *alarms = event.alarms;
+        if (nil != alarms) {
+            for (EKAlarm *alarm in alarms) {
+                if (alarm.relativeOffset == minutes) {
+                    alarmExists = YES;
+                    break;
+                }
+            }
+        }
+        if (!alarmExists) {
+            EKAlarm * alarm = [EKAlarm alarmWithRelativeOffset:minutes];
+            [event addAlarm:alarm];
+            //We can only have two alarms
+            if (event.alarms.count >= 2) {
+                break;
+            }
+        }
+        
+    }
+    
+    return event;
+}
+
+/*
+ * Splits a CompactCodec payload (see CompactCodec.java) into its fields.
+ * Every field is encoded as <length>:<text>, null fields as -1: and are returned as NSNull.
+ *
+ * @param   data - Encoded payload
+ * @return  Array of NSString / NSNull fields
+ */
+-(NSArray *)decodeCompact:(NSString *)data
+{
+    NSMutableArray *fields = [[NSMutableArray alloc] init];
+    NSUInteger length = [data length];
+    NSUInteger pos = 0;
+    
+    while (pos < length) {
+        NSRange colon = [data rangeOfString:@":" options:0 range:NSMakeRange(pos, length - pos)];
+        if (colon.location == NSNotFound) {
+            break;
+        }
+        int fieldLength = [[data substringWithRange:NSMakeRange(pos, colon.location - pos)] intValue];
+        pos = colon.location + 1;
+        if (fieldLength < 0) {
+            [fields addObject:[NSNull null]];
+            continue;
+        }
+        [fields addObject:[data substringWithRange:NSMakeRange(pos, fieldLength)]];
+        pos += fieldLength;
+    }
+    return fields;
+}
+
+/*
+ * @return  The decoded field at the given index, nil for null fields
+ */
+-(NSString *)compactString:(NSArray *)fields at:(NSUInteger)index
+{
+    id value = [fields objectAtIndex:index];
+    return value == [NSNull null] ? nil : value;
+}
+
+/*
+ * Appends a field in CompactCodec format
+ *
+ * @param   value - Field text, nil is encoded as a null field
+ * @param   buffer - Destination
+ */
+-(void)appendCompactField:(NSString *)value to:(NSMutableString *)buffer
+{
+    if (nil == value) {
+        [buffer appendString:@"-1:"];
+    } else {
+        [buffer appendFormat:@"%lu:%@", (unsigned long)[value length], value];
+    }
+}
+
+/*
+ * Appends an event record in the CompactCodec format: id, title, description, location,
+ * startTimeStamp, endTimeStamp, allDayEvent, reminders (CSV of offsets in seconds), created,
+ * lastModified, recurrenceRule, calendarID. EventKit returns occurrences of recurring events, each carries the rule of its series
+ *
+ * @param   event - Event that need to be encoded
+ * @param   flags - CompactCodec.FLAG_* query options
+ * @param   buffer - Destination
+ */
+-(void)appendEvent:(EKEvent *)event flags:(int)flags toCompact:(NSMutableString *)buffer
+{
+    [self appendCompactField:event.eventIdentifier to:buffer];
+    //FLAG_SKIP_TITLE, FLAG_SKIP_DESCRIPTION, FLAG_SKIP_LOCATION
+    [self appendCompactField:(flags & 4)  ? nil : event.title to:buffer];
+    [self appendCompactField:(flags & 8)  ? nil : event.notes to:buffer];
+    [self appendCompactField:(flags & 16) ? nil : event.location to:buffer];
+    [self appendCompactField:[NSString stringWithFormat:@"%lld", (long long)[event.startDate timeIntervalSince1970]*1000] to:buffer];
+    [self appendCompactField:[NSString stringWithFormat:@"%lld", (long long)[event.endDate timeIntervalSince1970]*1000] to:buffer];
+    [self appendCompactField:event.allDay ? @"1" : @"0" to:buffer];
+    
+    //FLAG_SKIP_REMINDERS
+    NSArray *alarms = (flags & 1) ? nil : event.alarms;
+    if (0 < alarms.count) {
+        NSMutableString *offsets = [[NSMutableString alloc] init];
+        for (EKAlarm *alarm in alarms) {
+            if (0 < offsets.length) {
+                [offsets appendString:@","];
+            }
+            [offsets appendFormat:@"%d", (int)alarm.relativeOffset];
+        }
+        [self appendCompactField:offsets to:buffer];
+    } else {
+        [self appendCompactField:nil to:buffer];
+    }
+    
+    //FLAG_SKIP_TIMESTAMPS
+    NSDate *created  = (flags & 32) ? nil : event.creationDate;
+    NSDate *modified = (flags & 32) ? nil : event.lastModifiedDate;
+    [self appendCompactField:(nil != created) ? [NSString stringWithFormat:@"%lld", (long long)[created timeIntervalSince1970]*1000] : nil to:buffer];
+    [self appendCompactField:(nil != modified) ? [NSString stringWithFormat:@"%lld", (long long)[modified timeIntervalSince1970]*1000] : nil to:buffer];
+    [self appendCompactField:[self recurrenceRuleString:event] to:buffer];
+    [self appendCompactField:event.calendar.calendarIdentifier to:buffer];
+}
+
+/*
+ * Formats the recurrence rule of an event in the RFC 5545 RRULE format
+ *
+ * @param   event - Event or one of its occurrences
+ * @return  RRULE value, nil for single events
+ */
+-(NSString *)recurrenceRuleString:(EKEvent *)event
+{
+    if (!event.hasRecurrenceRules || 0 == event.recurrenceRules.count) {
+        return nil;
+    }
+    
+    NSArray *frequencies = [NSArray arrayWithObjects:@"DAILY", @"WEEKLY", @"MONTHLY", @"YEARLY", nil];
+    NSArray *weekdays = [NSArray arrayWithObjects:@"SU", @"MO", @"TU", @"WE", @"TH", @"FR", @"SA", nil];
+    EKRecurrenceRule *rule = [event.recurrenceRules objectAtIndex:0];
+    NSMutableString *result = [NSMutableString stringWithFormat:@"FREQ=%@", [frequencies objectAtIndex:rule.frequency]];
+    
+    if (1 < rule.interval) {
+        [result appendFormat:@";INTERVAL=%ld", (long)rule.interval];
+    }
+    if (nil != rule.recurrenceEnd) {
+        if (0 < rule.recurrenceEnd.occurrenceCount) {
+            [result appendFormat:@";COUNT=%lu", (unsigned long)rule.recurrenceEnd.occurrenceCount];
+        } else if (nil != rule.recurrenceEnd.endDate) {
+            NSDateFormatter *formatter = [[NSDateFormatter alloc] init];
+            formatter.locale = [NSLocale localeWithLocaleIdentifier:@"en_US_POSIX"];
+            formatter.timeZone = [NSTimeZone timeZoneWithAbbreviation:@"UTC"];
+            formatter.dateFormat = @"yyyyMMdd'T'HHmmss'Z'";
+            [result appendFormat:@";UNTIL=%@", [formatter stringFromDate:rule.recurrenceEnd.endDate]];
+        }
+    }
+    if (0 < rule.daysOfTheWeek.count) {
+        [result appendString:@";BYDAY="];
+        for (NSUInteger i = 0; i < rule.daysOfTheWeek.count; i++) {
+            EKRecurrenceDayOfWeek *day = [rule.daysOfTheWeek objectAtIndex:i];
+            if (0 < i) {
+                [result appendString:@","];
+            }
+            if (0 != day.weekNumber) {
+                [result appendFormat:@"%ld", (long)day.weekNumber];
+            }
+            [result appendString:[weekdays objectAtIndex:day.dayOfTheWeek - 1]];
+        }
+    }
+    if (0 < rule.daysOfTheMonth.count) {
+        [result appendFormat:@";BYMONTHDAY=%@", [rule.daysOfTheMonth componentsJoinedByString:@","]];
+    }
+    if (0 < rule.monthsOfTheYear.count) {
+        [result appendFormat:@";BYMONTH=%@", [rule.monthsOfTheYear componentsJoinedByString:@","]];
+    }
+    return result;
+}
+
+/*
+ * Parses an RFC 5545 RRULE value. FREQ, INTERVAL, COUNT, UNTIL, BYDAY, BYMONTHDAY, BYMONTH and WKST are supported,
+ * matching com.codename1.calendar.RecurrenceRule.
+ *
+ * @param   value - RRULE value, an optional RRULE: prefix is ignored
+ * @return  The rule, nil if it is malformed or uses unsupported parts
+ */
+-(EKRecurrenceRule *)recurrenceRuleFromString:(NSString *)value
+{
+    NSArray *frequencies = [NSArray arrayWithObjects:@"DAILY", @"WEEKLY", @"MONTHLY", @"YEARLY", nil];
+    NSArray *weekdays = [NSArray arrayWithObjects:@"SU", @"MO", @"TU", @"WE", @"TH", @"FR", @"SA", nil];
+    NSUInteger frequency = NSNotFound;
+    NSInteger interval = 1;
+    EKRecurrenceEnd *end = nil;
+    NSMutableArray *days = nil;
+    NSMutableArray *monthDays = nil;
+    NSMutableArray *months = nil;
+    
+    value = [value uppercaseString];
+    if ([value hasPrefix:@"RRULE:"]) {
+        value = [value substringFromIndex:6];
+    }
+    
+    for (NSString *part in [value componentsSeparatedByString:@";"]) {
+        NSRange eq = [part rangeOfString:@"="];
+        if (eq.location == NSNotFound) {
+            continue;
+        }
+        NSString *name = [part substringToIndex:eq.location];
+        NSString *arg = [part substringFromIndex:eq.location + 1];
+        
+        if ([name isEqualToString:@"FREQ"]) {
+            frequency = [frequencies indexOfObject:arg];
+        } else if ([name isEqualToString:@"INTERVAL"]) {
+            interval = MAX(1, [arg integerValue]);
+        } else if ([name isEqualToString:@"COUNT"]) {
+            end = [EKRecurrenceEnd recurrenceEndWithOccurrenceCount:[arg integerValue]];
+        } else if ([name isEqualToString:@"UNTIL"]) {
+            NSDateFormatter *formatter = [[NSDateFormatter alloc] init];
+            formatter.locale = [NSLocale localeWithLocaleIdentifier:@"en_US_POSIX"];
+            if (16 == arg.length) {
+                formatter.timeZone = [NSTimeZone timeZoneWithAbbreviation:@"UTC"];
+                formatter.dateFormat = @"yyyyMMdd'T'HHmmss'Z'";
+            } else {
+                formatter.dateFormat = (8 == arg.length) ? @"yyyyMMdd" : @"yyyyMMdd'T'HHmmss";
+            }
+            NSDate *until = [formatter dateFromString:arg];
+            if (nil == until) {
+                return nil;
+            }
+            if (8 == arg.length) {
+                //UNTIL as a date includes occurrences on that day
+                until = [until dateByAddingTimeInterval:24 * 60 * 60 - 1];
+            }
+            end = [EKRecurrenceEnd recurrenceEndWithEndDate:until];
+        } else if ([name isEqualToString:@"BYDAY"]) {
+            days = [[NSMutableArray alloc] init];
+            for (NSString *item in [arg componentsSeparatedByString:@","]) {
+                if (2 > item.length) {
+                    return nil;
+                }
+                NSUInteger weekday = [weekdays indexOfObject:[item substringFromIndex:item.length - 2]];
+                if (weekday == NSNotFound) {
+                    return nil;
+                }
+                NSInteger weekNumber = [[item substringToIndex:item.length - 2] integerValue];
+                [days addObject:(0 == weekNumber) ? [EKRecurrenceDayOfWeek dayOfWeek:weekday + 1]
+                                                  : [EKRecurrenceDayOfWeek dayOfWeek:weekday + 1 weekNumber:weekNumber]];
+            }
+        } else if ([name isEqualToString:@"BYMONTHDAY"] || [name isEqualToString:@"BYMONTH"]) {
+            NSMutableArray *numbers = [[NSMutableArray alloc] init];
+            for (NSString *item in [arg componentsSeparatedByString:@","]) {
+                [numbers addObject:[NSNumber numberWithInteger:[item integerValue]]];
+            }
+            if ([name isEqualToString:@"BYMONTH"]) {
+                months = numbers;
+            } else {
+                monthDays = numbers;
+            }
+        } else if (NO == [name isEqualToString:@"WKST"]) {
+            return nil;
+        }
+    }
+    
+    if (frequency == NSNotFound) {
+        return nil;
+    }
+    
+    return [[EKRecurrenceRule alloc] initRecurrenceWithFrequency:(EKRecurrenceFrequency)frequency
+                                                        interval:interval
+                                                   daysOfTheWeek:days
+                                                  daysOfTheMonth:monthDays
+                                                 monthsOfTheYear:months
+                                                  weeksOfTheYear:nil
+                                                   daysOfTheYear:nil
+                                                    setPositions:nil
+                                                             end:end];
+}
+
+/*
+ * @return  Start of a successful compact event response: success flag and the number of fields per event
+ */
+-(NSMutableString *)getResponseHeaderCompact
+{
+    NSMutableString *buffer = [[NSMutableString alloc] init];
+    [self appendCompactField:@"1" to:buffer];
+    [self appendCompactField:@"12" to:buffer];
+    return buffer;
+}
+
+/*
+ * @param   errorText - Error description
+ * @return  Compact response reporting a failure
+ */
+-(NSString *)getErrorCompact:(NSString *)errorText
+{
+    NSMutableString *buffer = [[NSMutableString alloc] init];
+    [self appendCompactField:@"0" to:buffer];
+    [self appendCompactField:errorText to:buffer];
+    return buffer;
+}
+
+/*
+ * Event detailed are encoded in XML and returns as an NSString
  *
  * @param   event - Event that need to be encoded in XML
  * @return  XML String for the event passed in.
@@ -510,6 +1445,10 @@ Shouldn't be used directly by the class user.
     [xmlString appendString:[NSString stringWithFormat:@"<createdTimeStamp>%lld</createdTimeStamp>", (long long)[event.creationDate timeIntervalSince1970]*1000]];
     [xmlString appendString:[NSString stringWithFormat:@"<lastModifiedTimeStamp>%lld</lastModifiedTimeStamp>", (long long)[event.lastModifiedDate timeIntervalSince1970]*1000]];
     [xmlString appendString:[NSString stringWithFormat:@"<allDayEvent>%@</allDayEvent>", event.allDay ? @"true" : @"false"]];
+    NSString *recurrenceRule = [self recurrenceRuleString:event];
+    if (nil != recurrenceRule) {
+        [xmlString appendString:[NSString stringWithFormat:@"<recurrenceRule>%@</recurrenceRule>", recurrenceRule]];
+    }
     
     NSArray *alarms = event.alarms;
     if (nil != alarms) {
@@ -10,14 +10,46 @@ var o = {};
         callback.error(new Error("Not implemented yet"));
     };
 
+    o.saveEvents__java_lang_String_java_lang_String = function(param1, param2, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
     o.getEventByID__java_lang_String_java_lang_String = function(param1, param2, callback) {
         callback.error(new Error("Not implemented yet"));
     };
 
+    o.getEventByIDCompact__java_lang_String_java_lang_String_int = function(param1, param2, param3, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.getEventsCompact__java_lang_String_long_long_int = function(param1, param2, param3, param4, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.returnsOverlappingEvents_ = function(callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.getEventsForCalendars__java_lang_String_long_long_int = function(param1, param2, param3, param4, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.getEventsPage__java_lang_String_long_long_java_lang_String_int_int = function(param1, param2, param3, param4, param5, param6, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
     o.removeEvent__java_lang_String_java_lang_String = function(param1, param2, callback) {
         callback.error(new Error("Not implemented yet"));
     };
 
+    o.removeEvents__java_lang_String_java_lang_String = function(param1, param2, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.removeEventsInRange__java_lang_String_long_long = function(param1, param2, param3, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
     o.hasPermissions_ = function(callback) {
         callback.error(new Error("Not implemented yet"));
     };
@@ -30,10 +62,26 @@ var o = {};
         callback.error(new Error("Not implemented yet"));
     };
 
+    o.getCalendars_ = function(callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
     o.openCalendar__java_lang_String_boolean = function(param1, param2, callback) {
         callback.error(new Error("Not implemented yet"));
     };
 
+    o.getEventsModifiedSince__java_lang_String_long_int = function(param1, param2, param3, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.getBusyTimes__java_lang_String_long_long = function(param1, param2, param3, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
+    o.getEventCounts__java_lang_String_java_lang_String_int = function(param1, param2, param3, callback) {
+        callback.error(new Error("Not implemented yet"));
+    };
+
     o.registerForEventNotifications_ = function(callback) {
         callback.error(new Error("Not implemented yet"));
     };
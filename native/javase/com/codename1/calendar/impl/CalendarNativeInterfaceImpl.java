@@ -1,46 +1,120 @@
 package com.codename1.calendar.impl;
 
+/**
+ * Simulator port, backed by SimulatorCalendarStore
+ */
 public class CalendarNativeInterfaceImpl implements com.codename1.calendar.impl.CalendarNativeInterface{
+    private final SimulatorCalendarStore store = SimulatorCalendarStore.getInstance();
+
     public String getCalendarName(int param) {
-        return null;
+        store.delay();
+        return store.getCalendarName(param);
     }
 
     public String getEvents(String param, long param1, long param2) {
-        return null;
+        store.delay();
+        return store.getEvents(param, param1, param2);
     }
 
     public boolean hasPermissions() {
-        return false;
+        store.delay();
+        return true;
     }
 
     public int getCalendarCount() {
-        return 0;
+        store.delay();
+        return store.getCalendarCount();
+    }
+
+    public String getCalendars() {
+        store.delay();
+        return store.getCalendars();
     }
 
     public String openCalendar(String param, boolean param1) {
-        return null;
+        store.delay();
+        return store.openCalendar(param, param1);
     }
 
     public String saveEvent(String param, String param1, String param2, long param3, long param4, boolean param5, boolean param6, String param7, String param8, String param9) {
-        return null;
+        store.delay();
+        return store.saveEvent(param, param1, param2, param3, param4, param5, param7, param8, param9);
+    }
+
+    public String saveEvents(String param, String param1) {
+        store.delay();
+        return store.saveEvents(param, param1);
     }
 
     public boolean removeEvent(String param, String param1) {
-        return false;
+        store.delay();
+        return store.removeEvent(param, param1);
+    }
+
+    public String removeEvents(String param, String param1) {
+        store.delay();
+        return store.removeEvents(param, param1);
+    }
+
+    public String removeEventsInRange(String param, long param1, long param2) {
+        store.delay();
+        return store.removeEventsInRange(param, param1, param2);
     }
 
     public String getEventByID(String param, String param1) {
-        return null;
+        store.delay();
+        return store.getEventByID(param, param1);
+    }
+
+    public String getEventByIDCompact(String param, String param1, int param2) {
+        store.delay();
+        return store.getEventByIDCompact(param, param1, param2);
+    }
+
+    public String getEventsCompact(String param, long param1, long param2, int param3) {
+        store.delay();
+        return store.getEventsCompact(param, param1, param2, param3);
+    }
+
+    public boolean returnsOverlappingEvents() {
+        return false;
+    }
+
+    public String getEventsForCalendars(String param, long param1, long param2, int param3) {
+        store.delay();
+        return store.getEventsForCalendars(param, param1, param2, param3);
+    }
+
+    public String getEventsPage(String param, long param1, long param2, String param3, int param4, int param5) {
+        store.delay();
+        return store.getEventsPage(param, param1, param2, param3, param4, param5);
+    }
+
+    public String getEventsModifiedSince(String param, long param1, int param2) {
+        store.delay();
+        return store.getEventsModifiedSince(param, param1, param2);
+    }
+
+    public String getBusyTimes(String param, long param1, long param2) {
+        store.delay();
+        return store.getBusyTimes(param, param1, param2);
+    }
+
+    public String getEventCounts(String param, String param1, int param2) {
+        store.delay();
+        return store.getEventCounts(param, param1, param2);
     }
 
     public void registerForEventNotifications() {
+        store.setNotificationsEnabled(true);
     }
 
     public void deregisterForEventNotifications() {
+        store.setNotificationsEnabled(false);
     }
 
     public boolean isSupported() {
-        return false;
+        return true;
     }
 
 }
@@ -0,0 +1,167 @@
+package com.codename1.calendar.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TimeZone;
+
+/**
+ * Expands recurring series into occurrences within a window and caches the expansions.
+ *
+ * Each series keeps the occurrences of the window it was last expanded for. A request within that window is answered
+ * from the cached start times, a request adjacent to or overlapping it grows the window, e.g. while scrolling through
+ * a calendar, and a request elsewhere replaces it. Series are evicted least recently used first.
+ * Only used by SimulatorCalendarStore, the device ports get occurrences from the platform (Instances table, EventKit).
+ * Thread safe.
+ */
+class RecurrenceExpander {
+    private final LinkedHashMap<String, Expansion> expansions = new LinkedHashMap<String, Expansion>(16, 0.75f, true);
+    private final int maxSeries;
+
+    /**
+     * @param maxSeries - Number of series whose expansions are kept
+     */
+    RecurrenceExpander(int maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+
+    /**
+     * Returns the start times of the occurrences of a series that overlap the window, see RecurrenceRule.getOccurrences
+     *
+     * @param seriesKey   - Identifies the series in the cache, e.g. its event ID
+     * @param rule        - Recurrence rule of the series in RRULE format
+     * @param seriesStart - Start of the first occurrence
+     * @param duration    - Length of every occurrence in milliseconds
+     * @param timeZone    - Time zone the rule is evaluated in
+     * @param windowStart - Window start time stamp
+     * @param windowEnd   - Window end time stamp (exclusive)
+     *
+     * @return start times in ascending order
+     * @throws IllegalArgumentException if the rule can't be parsed
+     */
+    synchronized long[] getOccurrences(String seriesKey, String rule, long seriesStart, long duration, TimeZone timeZone, long windowStart, long windowEnd) {
+        Expansion expansion = expansions.get(seriesKey);
+
+        if (expansion == null || !expansion.matches(rule, seriesStart, duration, timeZone)) {
+            expansion = new Expansion(RecurrenceRule.parse(rule), rule, seriesStart, duration, timeZone);
+            expansions.put(seriesKey, expansion);
+
+            for (Iterator<String> it = expansions.keySet().iterator(); expansions.size() > maxSeries && it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        return expansion.get(windowStart, windowEnd);
+    }
+
+    /**
+     * Drops the cached expansion of a series, e.g. after it was changed
+     */
+    synchronized void invalidate(String seriesKey) {
+        expansions.remove(seriesKey);
+    }
+
+    synchronized void clear() {
+        expansions.clear();
+    }
+
+    /**
+     * Occurrences of one series within the window [from, to)
+     */
+    private static class Expansion {
+        final RecurrenceRule rule;
+        final String         ruleText;
+        final long           seriesStart;
+        final long           duration;
+        final TimeZone       timeZone;
+
+        long   from;
+        long   to;
+        long[] starts;
+
+        Expansion(RecurrenceRule rule, String ruleText, long seriesStart, long duration, TimeZone timeZone) {
+            this.rule        = rule;
+            this.ruleText    = ruleText;
+            this.seriesStart = seriesStart;
+            this.duration    = duration;
+            this.timeZone    = timeZone;
+        }
+
+        boolean matches(String ruleText, long seriesStart, long duration, TimeZone timeZone) {
+            return this.ruleText.equals(ruleText)
+                 && this.seriesStart == seriesStart
+                 && this.duration    == duration
+                 && this.timeZone.getID().equals(timeZone.getID());
+        }
+
+        long[] get(long windowStart, long windowEnd) {
+            if (starts == null || windowStart > to || windowEnd < from) {
+                starts = rule.getOccurrences(seriesStart, duration, timeZone, windowStart, windowEnd);
+                from   = windowStart;
+                to     = windowEnd;
+            }
+            else {
+                // only the parts of the window outside the cached one are expanded
+                if (windowStart < from) {
+                    long[] before = rule.getOccurrences(seriesStart, duration, timeZone, windowStart, from);
+                    int    count  = 0;
+
+                    // occurrences starting after from - duration overlap the cached window and are known already
+                    while (count < before.length && before[count] <= from - duration)
+                        count++;
+
+                    starts = concat(before, count, starts, 0);
+                    from   = windowStart;
+                }
+
+                if (windowEnd > to) {
+                    long[] after = rule.getOccurrences(seriesStart, duration, timeZone, to, windowEnd);
+                    int    skip  = 0;
+
+                    while (skip < after.length && after[skip] < to)
+                        skip++;
+
+                    starts = concat(starts, starts.length, after, skip);
+                    to     = windowEnd;
+                }
+            }
+
+            // with a fixed duration the occurrences overlapping the window are a contiguous run of the sorted starts
+            int first = lowerBound(Math.min(windowStart, windowStart - duration + 1));
+            int last  = lowerBound(windowEnd);
+
+            long[] result = new long[Math.max(0, last - first)];
+            System.arraycopy(starts, first, result, 0, result.length);
+            return result;
+        }
+
+        /**
+         * @return index of the first start not below value
+         */
+        private int lowerBound(long value) {
+            int low  = 0;
+            int high = starts.length;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+
+                if (starts[mid] < value)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            return low;
+        }
+
+        /**
+         * @return a[0, aLength) followed by b[bOffset, b.length)
+         */
+        private static long[] concat(long[] a, int aLength, long[] b, int bOffset) {
+            long[] result = new long[aLength + b.length - bOffset];
+            System.arraycopy(a, 0, result, 0, aLength);
+            System.arraycopy(b, bOffset, result, aLength, b.length - bOffset);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,606 @@
+package com.codename1.calendar.impl;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * A recurrence rule in the RFC 5545 RRULE format, e.g. <code>FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE</code>.
+ *
+ * DAILY, WEEKLY, MONTHLY and YEARLY rules are supported with the INTERVAL, COUNT, UNTIL, BYDAY (including ordinals
+ * such as <code>-1FR</code>), BYMONTHDAY, BYMONTH and WKST parts. Rules using other parts are rejected by parse since
+ * their occurrences can't be computed correctly.
+ *
+ * Occurrences are computed in the local time of a time zone so a series keeps its wall clock time across daylight
+ * saving changes. Expansion begins at the first period that can reach the requested window, so expanding a window years
+ * after the series start costs the same as expanding the first weeks. Only rules with a COUNT are walked from the start
+ * since every earlier occurrence counts toward the limit.
+ */
+class RecurrenceRule {
+
+    static final int DAILY   = 0;
+    static final int WEEKLY  = 1;
+    static final int MONTHLY = 2;
+    static final int YEARLY  = 3;
+
+    /**
+     * Upper bound for the number of occurrences returned by one getOccurrences call
+     */
+    static final int MAX_OCCURRENCES = 100000;
+
+    private static final String[] FREQUENCIES = { "DAILY", "WEEKLY", "MONTHLY", "YEARLY" };
+
+    // indexed by Calendar.DAY_OF_WEEK - 1
+    private static final String[] WEEKDAYS = { "SU", "MO", "TU", "WE", "TH", "FR", "SA" };
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    // 9999-12-31T23:59:59.999Z, keeps unbounded windows within the range Calendar handles
+    private static final long MAX_TIME = 253402300799999L;
+
+    private final String rule;
+
+    private int   frequency = -1;
+    private int   interval  = 1;
+    private int   count;
+    private int   weekStart = 1;
+    private int[] byDayWeekday;
+    private int[] byDayOrdinal;
+    private int[] byMonthDay;
+    private int[] byMonth;
+
+    // UNTIL as local date and time of day, or as UTC time stamp
+    private boolean hasUntil;
+    private boolean untilUTC;
+    private boolean untilDateOnly;
+    private int     untilDay;
+    private long    untilTimeOfDay;
+
+    private RecurrenceRule(String rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Parses an RRULE value, an optional "RRULE:" prefix is ignored
+     *
+     * @param rule - Rule text, e.g. FREQ=DAILY;COUNT=10
+     * @return the parsed rule
+     * @throws IllegalArgumentException if the rule is malformed or uses unsupported parts
+     */
+    static RecurrenceRule parse(String rule) {
+        if (rule == null)
+            throw new IllegalArgumentException("rule required");
+
+        String text = rule.trim();
+
+        if (text.toUpperCase().startsWith("RRULE:"))
+            text = text.substring(6);
+
+        RecurrenceRule result = new RecurrenceRule(text);
+        int pos = 0;
+
+        while (pos < text.length()) {
+            int end = text.indexOf(';', pos);
+
+            if (end < 0)
+                end = text.length();
+
+            String part = text.substring(pos, end).trim();
+            pos = end + 1;
+
+            if (part.length() == 0)
+                continue;
+
+            int eq = part.indexOf('=');
+
+            if (eq < 0)
+                throw new IllegalArgumentException("Malformed rule part " + part);
+
+            result.parsePart(part.substring(0, eq).toUpperCase(), part.substring(eq + 1).toUpperCase());
+        }
+
+        if (result.frequency < 0)
+            throw new IllegalArgumentException("FREQ required: " + rule);
+
+        return result;
+    }
+
+    private void parsePart(String name, String value) {
+        try {
+            if (name.equals("FREQ")) {
+                frequency = indexOf(FREQUENCIES, value);
+
+                if (frequency < 0)
+                    throw new IllegalArgumentException("Unsupported frequency " + value);
+            }
+            else if (name.equals("INTERVAL")) {
+                interval = Integer.parseInt(value);
+
+                if (interval < 1)
+                    throw new IllegalArgumentException("Invalid interval " + value);
+            }
+            else if (name.equals("COUNT")) {
+                count = Integer.parseInt(value);
+
+                if (count < 1)
+                    throw new IllegalArgumentException("Invalid count " + value);
+            }
+            else if (name.equals("UNTIL")) {
+                parseUntil(value);
+            }
+            else if (name.equals("WKST")) {
+                weekStart = indexOf(WEEKDAYS, value);
+
+                if (weekStart < 0)
+                    throw new IllegalArgumentException("Invalid week start " + value);
+            }
+            else if (name.equals("BYDAY")) {
+                int[] values = parseList(value, true);
+                byDayWeekday = new int[values.length / 2];
+                byDayOrdinal = new int[values.length / 2];
+
+                for (int i = 0; i < byDayWeekday.length; i++) {
+                    byDayOrdinal[i] = values[2 * i];
+                    byDayWeekday[i] = values[2 * i + 1];
+                }
+            }
+            else if (name.equals("BYMONTHDAY")) {
+                byMonthDay = parseList(value, false);
+            }
+            else if (name.equals("BYMONTH")) {
+                byMonth = parseList(value, false);
+            }
+            else {
+                throw new IllegalArgumentException("Unsupported rule part " + name);
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed rule part " + name + "=" + value);
+        }
+    }
+
+    /**
+     * @param weekdays - true for BYDAY values, which are returned as ordinal / weekday pairs
+     */
+    private static int[] parseList(String value, boolean weekdays) {
+        int count = 1;
+
+        for (int i = 0; i < value.length(); i++)
+            if (value.charAt(i) == ',')
+                count++;
+
+        int[] result = new int[weekdays ? count * 2 : count];
+        int   pos    = 0;
+
+        for (int i = 0; i < count; i++) {
+            int end = value.indexOf(',', pos);
+
+            if (end < 0)
+                end = value.length();
+
+            String item = value.substring(pos, end).trim();
+            pos = end + 1;
+
+            if (weekdays) {
+                if (item.length() < 2)
+                    throw new IllegalArgumentException("Invalid weekday " + item);
+
+                int weekday = indexOf(WEEKDAYS, item.substring(item.length() - 2));
+                String ordinal = item.substring(0, item.length() - 2);
+
+                if (weekday < 0)
+                    throw new IllegalArgumentException("Invalid weekday " + item);
+
+                if (ordinal.startsWith("+"))
+                    ordinal = ordinal.substring(1);
+
+                result[2 * i]     = ordinal.length() > 0 ? Integer.parseInt(ordinal) : 0;
+                result[2 * i + 1] = weekday;
+            }
+            else {
+                if (item.startsWith("+"))
+                    item = item.substring(1);
+
+                result[i] = Integer.parseInt(item);
+
+                if (result[i] == 0)
+                    throw new IllegalArgumentException("Invalid value " + value);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * UNTIL is either a date (yyyyMMdd), a local date time (yyyyMMddTHHmmss) or a UTC date time (yyyyMMddTHHmmssZ)
+     */
+    private void parseUntil(String value) {
+        if (value.length() != 8 && value.length() != 15 && value.length() != 16)
+            throw new IllegalArgumentException("Invalid UNTIL " + value);
+
+        untilDay      = toEpochDay(Integer.parseInt(value.substring(0, 4)), Integer.parseInt(value.substring(4, 6)), Integer.parseInt(value.substring(6, 8)));
+        untilDateOnly = value.length() == 8;
+        untilUTC      = value.length() == 16;
+
+        if (!untilDateOnly) {
+            if (value.charAt(8) != 'T' || (untilUTC && value.charAt(15) != 'Z'))
+                throw new IllegalArgumentException("Invalid UNTIL " + value);
+
+            untilTimeOfDay = ((Integer.parseInt(value.substring(9, 11)) * 60L
+                                 +  Integer.parseInt(value.substring(11, 13))) * 60
+                                 +  Integer.parseInt(value.substring(13, 15))) * 1000;
+        }
+
+        hasUntil = true;
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++)
+            if (values[i].equals(value))
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * @return DAILY, WEEKLY, MONTHLY or YEARLY
+     */
+    int getFrequency() {
+        return frequency;
+    }
+
+    int getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return the number of occurrences, 0 if the rule isn't limited by a count
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if the rule has an UNTIL part
+     */
+    boolean hasUntil() {
+        return hasUntil;
+    }
+
+    /**
+     * @return true if the series never ends
+     */
+    boolean isInfinite() {
+        return count == 0 && !hasUntil;
+    }
+
+    /**
+     * Computes the start times of the occurrences that overlap a window, i.e. that start before windowEnd and
+     * end after windowStart, or start at windowStart for zero length events.
+     * The series start is always the first occurrence, as required by RFC 5545.
+     *
+     * @param seriesStart - Start of the first occurrence
+     * @param duration    - Length of every occurrence in milliseconds
+     * @param timeZone    - Time zone whose local time the rule is evaluated in, UTC for all day events
+     * @param windowStart - Window start time stamp
+     * @param windowEnd   - Window end time stamp (exclusive)
+     * @return start times in ascending order, at most MAX_OCCURRENCES
+     */
+    long[] getOccurrences(long seriesStart, long duration, TimeZone timeZone, long windowStart, long windowEnd) {
+        long[] result = new long[16];
+        int    size   = 0;
+
+        windowEnd = Math.min(windowEnd, MAX_TIME);
+
+        if (seriesStart >= windowEnd)
+            return new long[0];
+
+        if (overlaps(seriesStart, duration, windowStart))
+            result[size++] = seriesStart;
+
+        Calendar cal = Calendar.getInstance(timeZone);
+        cal.setTime(new Date(seriesStart));
+
+        int  startYear   = cal.get(Calendar.YEAR);
+        int  startMonth  = cal.get(Calendar.MONTH) + 1;
+        int  startDom    = cal.get(Calendar.DAY_OF_MONTH);
+        int  startDay    = toEpochDay(startYear, startMonth, startDom);
+        long timeOfDay   = ((cal.get(Calendar.HOUR_OF_DAY) * 60L + cal.get(Calendar.MINUTE)) * 60 + cal.get(Calendar.SECOND)) * 1000 + cal.get(Calendar.MILLISECOND);
+        long until       = untilTime(cal);
+        int  remaining   = count > 0 ? count - 1 : Integer.MAX_VALUE;
+        int  lastDay     = dayOf(cal, windowEnd) + 1;
+
+        // without a count the periods before the window can be skipped
+        int period = 0;
+
+        if (count == 0) {
+            long from = Math.min(windowStart - duration, windowStart);
+
+            if (from > seriesStart)
+                period = firstPeriod(startDay, startYear, startMonth, dayOf(cal, from));
+        }
+
+        int[] ymd = new int[3];
+
+        for (; remaining > 0 && size < MAX_OCCURRENCES; period++) {
+            int first = periodStart(startDay, startYear, startMonth, period);
+
+            if (first > lastDay)
+                break;
+
+            int last = periodEnd(first);
+
+            for (int day = first; day < last && remaining > 0; day++) {
+                fromEpochDay(day, ymd);
+
+                if (!matches(day, ymd, startDay, startMonth, startDom))
+                    continue;
+
+                long time = toTime(cal, ymd, timeOfDay);
+
+                if (time <= seriesStart)
+                    continue;
+
+                if (time > until || time >= windowEnd)
+                    return trim(result, size);
+
+                remaining--;
+
+                if (overlaps(time, duration, windowStart)) {
+                    if (size == result.length) {
+                        long[] grown = new long[size * 2];
+                        System.arraycopy(result, 0, grown, 0, size);
+                        result = grown;
+                    }
+                    result[size++] = time;
+
+                    if (size == MAX_OCCURRENCES)
+                        break;
+                }
+            }
+        }
+
+        return trim(result, size);
+    }
+
+    private static boolean overlaps(long start, long duration, long windowStart) {
+        return start >= windowStart || start + duration > windowStart;
+    }
+
+    private static long[] trim(long[] values, int size) {
+        if (size == values.length)
+            return values;
+
+        long[] result = new long[size];
+        System.arraycopy(values, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * @return the last time stamp an occurrence may start at, Long.MAX_VALUE without UNTIL
+     */
+    private long untilTime(Calendar cal) {
+        if (!hasUntil)
+            return Long.MAX_VALUE;
+
+        if (untilUTC)
+            return untilDay * DAY + untilTimeOfDay;
+
+        int[] ymd = new int[3];
+
+        if (untilDateOnly) {
+            fromEpochDay(untilDay + 1, ymd);
+            return toTime(cal, ymd, 0) - 1;
+        }
+
+        fromEpochDay(untilDay, ymd);
+        return toTime(cal, ymd, untilTimeOfDay);
+    }
+
+    /**
+     * @return the first day of the given period of the series
+     */
+    private int periodStart(int startDay, int startYear, int startMonth, int period) {
+        switch (frequency) {
+            case DAILY:
+                return startDay + period * interval;
+
+            case WEEKLY:
+                return startDay - (weekday(startDay) - weekStart + 7) % 7 + period * interval * 7;
+
+            case MONTHLY:
+                int month = startYear * 12 + startMonth - 1 + period * interval;
+                return toEpochDay(month / 12, month % 12 + 1, 1);
+
+            default:
+                return toEpochDay(startYear + period * interval, 1, 1);
+        }
+    }
+
+    /**
+     * @return the day after the last day of the period starting at the given day
+     */
+    private int periodEnd(int first) {
+        switch (frequency) {
+            case DAILY:
+                return first + 1;
+
+            case WEEKLY:
+                return first + 7;
+
+            case MONTHLY:
+                int[] ymd = new int[3];
+                fromEpochDay(first, ymd);
+                return first + daysInMonth(ymd[0], ymd[1]);
+
+            default:
+                int[] date = new int[3];
+                fromEpochDay(first, date);
+                return toEpochDay(date[0] + 1, 1, 1);
+        }
+    }
+
+    /**
+     * @return a period at or before the one holding the given day
+     */
+    private int firstPeriod(int startDay, int startYear, int startMonth, int day) {
+        int units;
+
+        switch (frequency) {
+            case DAILY:
+                units = day - startDay;
+                break;
+
+            case WEEKLY:
+                units = (day - periodStart(startDay, startYear, startMonth, 0)) / 7;
+                break;
+
+            case MONTHLY:
+                int[] ymd = new int[3];
+                fromEpochDay(day, ymd);
+                units = (ymd[0] * 12 + ymd[1]) - (startYear * 12 + startMonth);
+                break;
+
+            default:
+                int[] date = new int[3];
+                fromEpochDay(day, date);
+                units = date[0] - startYear;
+                break;
+        }
+
+        return Math.max(0, units / interval - 1);
+    }
+
+    /**
+     * Applies the BY* parts, missing parts default to the corresponding value of the series start
+     */
+    private boolean matches(int day, int[] ymd, int startDay, int startMonth, int startDom) {
+        int month = ymd[1];
+        int dom   = ymd[2];
+
+        if (byMonth != null) {
+            if (!contains(byMonth, month))
+                return false;
+        }
+        else if (frequency == YEARLY && byDayWeekday == null && byMonthDay == null && month != startMonth) {
+            return false;
+        }
+
+        int monthLength = daysInMonth(ymd[0], month);
+
+        if (byMonthDay != null) {
+            boolean found = false;
+
+            for (int i = 0; i < byMonthDay.length && !found; i++)
+                found = byMonthDay[i] > 0 ? byMonthDay[i] == dom : monthLength + byMonthDay[i] + 1 == dom;
+
+            if (!found)
+                return false;
+        }
+
+        if (byDayWeekday != null) {
+            int     weekday = weekday(day);
+            boolean found   = false;
+
+            // ordinals count within the month, or within the year for yearly rules without BYMONTH
+            boolean inYear = frequency == YEARLY && byMonth == null;
+            int     index  = inYear ? day - toEpochDay(ymd[0], 1, 1) : dom - 1;
+            int     length = inYear ? toEpochDay(ymd[0] + 1, 1, 1) - toEpochDay(ymd[0], 1, 1) : monthLength;
+
+            for (int i = 0; i < byDayWeekday.length && !found; i++) {
+                if (byDayWeekday[i] != weekday)
+                    continue;
+
+                int ordinal = byDayOrdinal[i];
+                found = ordinal == 0
+                      || (ordinal > 0 && index / 7 + 1 == ordinal)
+                      || (ordinal < 0 && (length - 1 - index) / 7 + 1 == -ordinal);
+            }
+
+            if (!found)
+                return false;
+        }
+        else if (frequency == WEEKLY && weekday(day) != weekday(startDay)) {
+            return false;
+        }
+
+        if (byDayWeekday == null && byMonthDay == null && (frequency == MONTHLY || frequency == YEARLY))
+            return dom == startDom;
+
+        return true;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int i = 0; i < values.length; i++)
+            if (values[i] == value)
+                return true;
+
+        return false;
+    }
+
+    private static long toTime(Calendar cal, int[] ymd, long timeOfDay) {
+        cal.set(Calendar.YEAR,         ymd[0]);
+        cal.set(Calendar.MONTH,        ymd[1] - 1);
+        cal.set(Calendar.DAY_OF_MONTH, ymd[2]);
+        cal.set(Calendar.HOUR_OF_DAY,  (int) (timeOfDay / 3600000));
+        cal.set(Calendar.MINUTE,       (int) (timeOfDay / 60000 % 60));
+        cal.set(Calendar.SECOND,       (int) (timeOfDay / 1000 % 60));
+        cal.set(Calendar.MILLISECOND,  (int) (timeOfDay % 1000));
+        return cal.getTime().getTime();
+    }
+
+    private static int dayOf(Calendar cal, long time) {
+        cal.setTime(new Date(time));
+        return toEpochDay(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * @return 0 for Sunday to 6 for Saturday
+     */
+    private static int weekday(int day) {
+        // 1970-01-01 was a Thursday
+        return (day % 7 + 11) % 7;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return month == 12 ? 31 : toEpochDay(year, month + 1, 1) - toEpochDay(year, month, 1);
+    }
+
+    /**
+     * @return days since 1970-01-01 of the given proleptic Gregorian date
+     */
+    static int toEpochDay(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yoe = year - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Inverse of toEpochDay
+     *
+     * @param ymd - receives year, month (1-12) and day of month
+     */
+    static void fromEpochDay(int day, int[] ymd) {
+        day += 719468;
+        int era   = (day >= 0 ? day : day - 146096) / 146097;
+        int doe   = day - era * 146097;
+        int yoe   = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy   = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp    = (5 * doy + 2) / 153;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        ymd[0] = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        ymd[1] = month;
+        ymd[2] = doy - (153 * mp + 2) / 5 + 1;
+    }
+
+    /**
+     * @return the rule in RRULE format as it was parsed
+     */
+    @Override
+    public String toString() {
+        return rule;
+    }
+}
@@ -0,0 +1,866 @@
+package com.codename1.calendar.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeSet;
+
+import com.codename1.calendar.DeviceCalendar;
+import com.codename1.io.Log;
+
+/**
+ * In memory calendar store backing the simulator port.
+ *
+ * Events are kept in a per calendar set ordered by start time so range queries only visit the
+ * events that start within the range, which keeps them fast with hundreds of thousands of events.
+ * Responses use the same formats as the Android port, including its query semantics: an event
+ * matches a range if it starts and ends within it. Recurring events are expanded into their
+ * occurrences within the queried range only, like the Android Instances table does.
+ *
+ * System properties:
+ * <ul>
+ * <li>cn1.calendar.simulator.file - file the store is loaded from and saved to, in memory only if unset</li>
+ * <li>cn1.calendar.simulator.latency - artificial delay in milliseconds added to every call</li>
+ * </ul>
+ */
+class SimulatorCalendarStore {
+    private static final int FILE_VERSION = 3;
+
+    private static final long SAVE_DELAY = 1000;
+
+    private static SimulatorCalendarStore instance;
+
+    private static final Comparator<SimEvent> BY_START = new Comparator<SimEvent>() {
+        public int compare(SimEvent a, SimEvent b) {
+            if (a.start != b.start) {
+                return a.start < b.start ? -1 : 1;
+            }
+            return a.id < b.id ? -1 : (a.id == b.id ? 0 : 1);
+        }
+    };
+
+    private final Map<String, SimCalendar> calendars = new LinkedHashMap<String, SimCalendar>();
+    private final Map<Long, SimEvent> events = new HashMap<Long, SimEvent>();
+    private long nextID = 1;
+    private final RecurrenceExpander expander = new RecurrenceExpander(256);
+
+    private final File file;
+    private final long latency;
+    private Timer saveTimer;
+    private boolean savePending;
+    private boolean notify;
+
+    static synchronized SimulatorCalendarStore getInstance() {
+        if (instance == null) {
+            String path = System.getProperty("cn1.calendar.simulator.file");
+            instance = new SimulatorCalendarStore(path != null && path.length() > 0 ? new File(path) : null, Long.getLong("cn1.calendar.simulator.latency", 0));
+        }
+        return instance;
+    }
+
+    SimulatorCalendarStore(File file, long latency) {
+        this.file = file;
+        this.latency = latency;
+
+        if (file != null && file.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                Log.p("Failed to load simulator calendar from " + file);
+                Log.e(e);
+            }
+        }
+
+        if (calendars.isEmpty()) {
+            createCalendar("Simulator");
+        }
+    }
+
+    /**
+     * Applies the configured artificial latency, called at the start of every native call
+     */
+    void delay() {
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    //
+    // calendars
+    //
+
+    synchronized int getCalendarCount() {
+        return calendars.size();
+    }
+
+    synchronized String getCalendarName(int offset) {
+        if (offset < 0 || offset >= calendars.size()) {
+            return null;
+        }
+        Iterator<SimCalendar> it = calendars.values().iterator();
+        for (int i = 0; i < offset; i++) {
+            it.next();
+        }
+        return it.next().name;
+    }
+
+    synchronized String getCalendars() {
+        StringBuilder sb = new StringBuilder(calendars.size() * 32 + 8);
+        CompactCodec.writeField(sb, true);
+        CompactCodec.writeField(sb, CompactCodec.CALENDAR_FIELD_COUNT);
+        for (SimCalendar cal : calendars.values()) {
+            CompactCodec.writeField(sb, cal.id);
+            CompactCodec.writeField(sb, cal.name);
+            CompactCodec.writeField(sb, 0xEA8561);
+            CompactCodec.writeField(sb, 3); // CalendarInfo.ACCESS_OWNER
+            CompactCodec.writeField(sb, true);
+        }
+        return sb.toString();
+    }
+
+    synchronized String openCalendar(String calendarName, boolean createIfNotExists) {
+        if (calendarName == null) {
+            return calendars.keySet().iterator().next();
+        }
+        for (SimCalendar cal : calendars.values()) {
+            if (cal.name.equals(calendarName)) {
+                return cal.id;
+            }
+        }
+        if (!createIfNotExists) {
+            return null;
+        }
+        String id = createCalendar(calendarName).id;
+        changed();
+        return id;
+    }
+
+    private SimCalendar createCalendar(String name) {
+        SimCalendar cal = new SimCalendar(String.valueOf(nextID++), name);
+        calendars.put(cal.id, cal);
+        return cal;
+    }
+
+    //
+    // writes
+    //
+
+    synchronized String saveEvent(String calendarID, String eventID, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, String notes, String location, String reminders) {
+        SimCalendar cal = calendars.get(calendarID);
+        if (cal == null) {
+            return null;
+        }
+        SimEvent event = null;
+        if (eventID != null && eventID.trim().length() > 0) {
+            event = findEvent(eventID);
+            if (event == null) {
+                return null;
+            }
+        }
+        String id = put(cal, event, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, reminders, null, System.currentTimeMillis());
+        changed();
+        return id;
+    }
+
+    synchronized String saveEvents(String calendarID, String data) {
+        SimCalendar cal = calendars.get(calendarID);
+        if (cal == null) {
+            return null;
+        }
+
+        // validate the whole batch first so it is applied all-or-nothing
+        CompactCodec.Reader reader = new CompactCodec.Reader(data);
+        int width = reader.nextInt();
+        int start = reader.position();
+        while (reader.hasNext()) {
+            String eventID = reader.nextString();
+            if (eventID != null && eventID.trim().length() > 0 && findEvent(eventID) == null) {
+                return null;
+            }
+            reader.skip(width - 1);
+        }
+
+        reader = new CompactCodec.Reader(data, start, data.length());
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        while (reader.hasNext()) {
+            String eventID = reader.nextString();
+            String title = reader.nextString();
+            long startTimeStamp = reader.nextLong();
+            long endTimeStamp = reader.nextLong();
+            boolean allDayEvent = reader.nextBoolean();
+            reader.skip(1); // taskOnly
+            String notes = reader.nextString();
+            String location = reader.nextString();
+            String reminders = reader.nextString();
+            String rule = width > 9 ? reader.nextString() : null;
+            reader.skip(width - CompactCodec.SAVE_FIELD_COUNT);
+
+            SimEvent event = eventID != null && eventID.trim().length() > 0 ? findEvent(eventID) : null;
+            CompactCodec.writeField(sb, put(cal, event, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, reminders, rule, now));
+        }
+        changed();
+        return sb.toString();
+    }
+
+    private String put(SimCalendar cal, SimEvent event, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, String notes, String location, String reminders, String rule, long now) {
+        if (event == null) {
+            event = new SimEvent(nextID++, cal.id);
+            event.created = now;
+            events.put(event.id, event);
+        } else {
+            SimCalendar previous = calendars.get(event.calendarID);
+            previous.byStart.remove(event);
+            previous.recurring.remove(event);
+            expander.invalidate(String.valueOf(event.id));
+            event.calendarID = cal.id;
+        }
+        event.title = title;
+        event.notes = notes;
+        event.location = location;
+        event.start = startTimeStamp;
+        event.end = endTimeStamp;
+        event.allDay = allDayEvent;
+        event.reminders = reminders != null && reminders.trim().length() > 0 ? reminders : null;
+        // null keeps the rule of an existing event, an empty rule turns a series into a single event
+        if (rule != null) {
+            event.rule = rule.trim().length() > 0 ? rule : null;
+        }
+        event.modified = now;
+        cal.byStart.add(event);
+        cal.maxDuration = Math.max(cal.maxDuration, event.end - event.start);
+        if (event.rule != null) {
+            cal.recurring.add(event);
+        }
+        return String.valueOf(event.id);
+    }
+
+    synchronized boolean removeEvent(String calendarID, String eventID) {
+        SimEvent event = findEvent(eventID);
+        if (event == null) {
+            return false;
+        }
+        remove(event, System.currentTimeMillis());
+        changed();
+        return true;
+    }
+
+    synchronized String removeEvents(String calendarID, String eventIDs) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        CompactCodec.Reader reader = new CompactCodec.Reader(eventIDs);
+        while (reader.hasNext()) {
+            SimEvent event = findEvent(reader.nextString());
+            if (event != null && event.calendarID.equals(calendarID)) {
+                remove(event, now);
+                count++;
+            }
+        }
+        return removed(count);
+    }
+
+    synchronized String removeEventsInRange(String calendarID, long startTimeStamp, long endTimeStamp) {
+        SimCalendar cal = calendars.get(calendarID);
+        if (cal == null || startTimeStamp >= endTimeStamp) {
+            return removed(0);
+        }
+        SimEvent from = new SimEvent(Long.MIN_VALUE, null);
+        from.start = startTimeStamp;
+        SimEvent to = new SimEvent(Long.MIN_VALUE, null);
+        to.start = endTimeStamp;
+        long now = System.currentTimeMillis();
+        List<SimEvent> matches = new ArrayList<SimEvent>(cal.byStart.subSet(from, true, to, false));
+        for (SimEvent event : matches) {
+            remove(event, now);
+        }
+        return removed(matches.size());
+    }
+
+    private void remove(SimEvent event, long now) {
+        SimCalendar cal = calendars.get(event.calendarID);
+        events.remove(event.id);
+        cal.byStart.remove(event);
+        cal.recurring.remove(event);
+        expander.invalidate(String.valueOf(event.id));
+        cal.deleted.put(String.valueOf(event.id), now);
+    }
+
+    private String removed(int count) {
+        if (count > 0) {
+            changed();
+        }
+        StringBuilder sb = new StringBuilder();
+        CompactCodec.writeField(sb, true);
+        CompactCodec.writeField(sb, count);
+        return sb.toString();
+    }
+
+    //
+    // queries
+    //
+
+    synchronized String getEventByID(String calendarID, String eventID) {
+        SimEvent event = findEvent(eventID);
+        StringBuilder sb = new StringBuilder();
+        xmlHeader(sb, "getEventByID");
+        if (event != null && event.calendarID.equals(calendarID)) {
+            appendEventXML(event, sb, "    ");
+        }
+        return xmlFooter(sb);
+    }
+
+    synchronized String getEvents(String calendarID, long startTimeStamp, long endTimeStamp) {
+        StringBuilder sb = new StringBuilder();
+        xmlHeader(sb, "getEvents");
+        sb.append("    <eventList>\n")
+          .append("      <searchStartTimeStamp>").append(startTimeStamp).append("</searchStartTimeStamp>\n")
+          .append("      <searchEndTimeStamp>").append(endTimeStamp).append("</searchEndTimeStamp>\n");
+        for (SimEvent event : range(calendarID, startTimeStamp, endTimeStamp, 0, null)) {
+            appendEventXML(event, sb, "      ");
+        }
+        sb.append("    </eventList>\n");
+        return xmlFooter(sb);
+    }
+
+    synchronized String getEventByIDCompact(String calendarID, String eventID, int flags) {
+        SimEvent event = findEvent(eventID);
+        StringBuilder sb = compactHeader();
+        if (event != null && event.calendarID.equals(calendarID)) {
+            appendEventCompact(event, flags, sb);
+        }
+        return sb.toString();
+    }
+
+    synchronized String getEventsCompact(String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+        StringBuilder sb = compactHeader();
+        for (SimEvent event : range(calendarID, startTimeStamp, endTimeStamp, flags, null)) {
+            appendEventCompact(event, flags, sb);
+        }
+        return sb.toString();
+    }
+
+    synchronized String getEventsForCalendars(String calendarIDs, long startTimeStamp, long endTimeStamp, int flags) {
+        List<SimEvent> merged = new ArrayList<SimEvent>();
+        CompactCodec.Reader reader = new CompactCodec.Reader(calendarIDs);
+        while (reader.hasNext()) {
+            for (SimEvent event : range(reader.nextString(), startTimeStamp, endTimeStamp, flags, null)) {
+                merged.add(event);
+            }
+        }
+        Collections.sort(merged, BY_START);
+        StringBuilder sb = compactHeader();
+        for (SimEvent event : merged) {
+            appendEventCompact(event, flags, sb);
+        }
+        return sb.toString();
+    }
+
+    synchronized String getEventsPage(String calendarID, long startTimeStamp, long endTimeStamp, String pageToken, int pageSize, int flags) {
+        SimEvent after = null;
+        if (pageToken != null) {
+            // keyset token like the Android port: start and ID of the last event of the previous page
+            int split = pageToken.indexOf(':');
+            after = new SimEvent(Long.parseLong(pageToken.substring(split + 1)), null);
+            after.start = Long.parseLong(pageToken.substring(0, split));
+        }
+
+        StringBuilder records = new StringBuilder();
+        String nextPageToken = null;
+        int count = 0;
+        SimEvent last = null;
+        for (SimEvent event : range(calendarID, startTimeStamp, endTimeStamp, flags, after)) {
+            if (count == pageSize) {
+                nextPageToken = last.start + ":" + last.id;
+                break;
+            }
+            appendEventCompact(event, flags, records);
+            last = event;
+            count++;
+        }
+
+        StringBuilder sb = new StringBuilder(records.length() + 64);
+        CompactCodec.writeField(sb, true);
+        CompactCodec.writeField(sb, nextPageToken);
+        CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+        return sb.append(records).toString();
+    }
+
+    synchronized String getEventsModifiedSince(String calendarID, long sinceTimeStamp, int flags) {
+        SimCalendar cal = calendars.get(calendarID);
+        if (cal == null) {
+            StringBuilder sb = new StringBuilder();
+            CompactCodec.writeField(sb, false);
+            CompactCodec.writeField(sb, "Calendar not found.");
+            return sb.toString();
+        }
+
+        long syncTime = System.currentTimeMillis();
+        List<String> deleted = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : cal.deleted.entrySet()) {
+            if (entry.getValue().longValue() >= sinceTimeStamp) {
+                deleted.add(entry.getKey());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        CompactCodec.writeField(sb, true);
+        CompactCodec.writeField(sb, String.valueOf(syncTime));
+        CompactCodec.writeField(sb, deleted.size());
+        for (String eventID : deleted) {
+            CompactCodec.writeField(sb, eventID);
+        }
+        CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+        for (SimEvent event : cal.byStart) {
+            if (event.modified >= sinceTimeStamp) {
+                appendEventCompact(event, flags, sb);
+            }
+        }
+        return sb.toString();
+    }
+
+    synchronized String getBusyTimes(String calendarIDs, long startTimeStamp, long endTimeStamp) {
+        StringBuilder sb = new StringBuilder();
+        CompactCodec.writeField(sb, true);
+        CompactCodec.writeField(sb, CompactCodec.BUSY_FIELD_COUNT);
+        CompactCodec.Reader reader = new CompactCodec.Reader(calendarIDs);
+        while (reader.hasNext()) {
+            for (SimEvent event : range(reader.nextString(), startTimeStamp, endTimeStamp, CompactCodec.FLAG_OVERLAPPING, null)) {
+                CompactCodec.writeField(sb, event.start);
+                CompactCodec.writeField(sb, event.end);
+                CompactCodec.writeField(sb, event.allDay);
+            }
+        }
+        return sb.toString();
+    }
+
+    synchronized String getEventCounts(String calendarID, String boundaries, int flags) {
+        long[] bounds = EventHistogram.readBoundaries(boundaries);
+        if (bounds.length < 2) {
+            return null;
+        }
+        int[] counts = new int[bounds.length - 1];
+        boolean overlapping = (flags & CompactCodec.FLAG_OVERLAPPING) != 0;
+        for (SimEvent event : range(calendarID, bounds[0], bounds[bounds.length - 1], flags, null)) {
+            EventHistogram.add(bounds, event.start, event.end, overlapping, counts);
+        }
+        return EventHistogram.encode(counts);
+    }
+
+    /**
+     * @return events of the calendar contained in the range and the occurrences of recurring events contained in it,
+     *         or overlapping it with CompactCodec.FLAG_OVERLAPPING, in start order, after the given event if not null
+     */
+    private Iterable<SimEvent> range(String calendarID, long startTimeStamp, long endTimeStamp, int flags, SimEvent after) {
+        SimCalendar cal = calendars.get(calendarID);
+        if (cal == null || startTimeStamp > endTimeStamp) {
+            return Collections.<SimEvent>emptyList();
+        }
+        boolean overlapping = (flags & CompactCodec.FLAG_OVERLAPPING) != 0;
+        SimEvent from = new SimEvent(Long.MIN_VALUE, null);
+        // an event overlapping the range starts at most maxDuration before it
+        from.start = overlapping ? startTimeStamp - cal.maxDuration : startTimeStamp;
+        SimEvent to = new SimEvent(Long.MAX_VALUE, null);
+        to.start = endTimeStamp;
+        NavigableSet<SimEvent> single;
+        if (after != null && BY_START.compare(after, from) > 0) {
+            if (BY_START.compare(after, to) >= 0) {
+                return Collections.<SimEvent>emptyList();
+            }
+            single = cal.byStart.subSet(after, false, to, true);
+        } else {
+            single = cal.byStart.subSet(from, true, to, true);
+        }
+        return new Range(single, occurrences(cal, startTimeStamp, endTimeStamp, overlapping, after), startTimeStamp, endTimeStamp, overlapping);
+    }
+
+    /**
+     * @return the occurrences of the recurring events of the calendar contained in or overlapping the range, sorted by start
+     */
+    private List<SimEvent> occurrences(SimCalendar cal, long startTimeStamp, long endTimeStamp, boolean overlapping, SimEvent after) {
+        List<SimEvent> result = new ArrayList<SimEvent>();
+        for (SimEvent series : cal.recurring) {
+            if (series.start >= endTimeStamp) {
+                continue;
+            }
+            long duration = series.end - series.start;
+            long[] starts;
+            try {
+                TimeZone timeZone = series.allDay ? TimeZone.getTimeZone("UTC") : TimeZone.getDefault();
+                starts = expander.getOccurrences(String.valueOf(series.id), series.rule, series.start, duration, timeZone, startTimeStamp, endTimeStamp);
+            } catch (IllegalArgumentException e) {
+                // a rule the expander doesn't support only yields the first occurrence
+                starts = new long[] { series.start };
+            }
+            for (long start : starts) {
+                if (!matches(start, start + duration, startTimeStamp, endTimeStamp, overlapping)) {
+                    continue;
+                }
+                SimEvent occurrence = series.occurrence(start);
+                if (after == null || BY_START.compare(occurrence, after) > 0) {
+                    result.add(occurrence);
+                }
+            }
+        }
+        Collections.sort(result, BY_START);
+        return result;
+    }
+
+    private static boolean matches(long start, long end, long startTimeStamp, long endTimeStamp, boolean overlapping) {
+        return overlapping ? start < endTimeStamp && end > startTimeStamp
+                           : start >= startTimeStamp && end <= endTimeStamp;
+    }
+
+    private SimEvent findEvent(String eventID) {
+        try {
+            return events.get(Long.valueOf(eventID));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static StringBuilder compactHeader() {
+        StringBuilder sb = new StringBuilder();
+        CompactCodec.writeField(sb, true);
+        CompactCodec.writeField(sb, CompactCodec.EVENT_FIELD_COUNT);
+        return sb;
+    }
+
+    private static void appendEventCompact(SimEvent event, int flags, StringBuilder sb) {
+        CompactCodec.writeField(sb, String.valueOf(event.id));
+        CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_TITLE)       != 0 ? null : event.title);
+        CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_DESCRIPTION) != 0 ? null : event.notes);
+        CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_LOCATION)    != 0 ? null : event.location);
+        CompactCodec.writeField(sb, event.start);
+        CompactCodec.writeField(sb, event.end);
+        CompactCodec.writeField(sb, event.allDay);
+        CompactCodec.writeField(sb, (flags & CompactCodec.FLAG_SKIP_REMINDERS)   != 0 ? null : event.reminders);
+
+        if ((flags & CompactCodec.FLAG_SKIP_TIMESTAMPS) != 0) {
+            CompactCodec.writeField(sb, (String) null);
+            CompactCodec.writeField(sb, (String) null);
+        } else {
+            CompactCodec.writeField(sb, event.created);
+            CompactCodec.writeField(sb, event.modified);
+        }
+        CompactCodec.writeField(sb, event.rule);
+        CompactCodec.writeField(sb, event.calendarID);
+    }
+
+    private static void xmlHeader(StringBuilder sb, String requestType) {
+        sb.append("<?xml version=\"1.0\"?>\n")
+          .append("<calendarNativeAPIResponse>\n")
+          .append("  <response>\n")
+          .append("    <requestType>").append(requestType).append("</requestType>\n");
+    }
+
+    private static String xmlFooter(StringBuilder sb) {
+        return sb.append("    <requestCompletedSuccessfully>true</requestCompletedSuccessfully>\n")
+                 .append("  </response>\n")
+                 .append("</calendarNativeAPIResponse>").toString();
+    }
+
+    private static void appendEventXML(SimEvent event, StringBuilder sb, String padding) {
+        sb.append(padding).append("<event>\n")
+          .append(padding).append("  <id>").append(event.id).append("</id>\n")
+          .append(padding).append("  <title>").append(escape(event.title)).append("</title>\n")
+          .append(padding).append("  <description>").append(escape(event.notes)).append("</description>\n")
+          .append(padding).append("  <location>").append(escape(event.location)).append("</location>\n")
+          .append(padding).append("  <startTimeStamp>").append(event.start).append("</startTimeStamp>\n")
+          .append(padding).append("  <endTimeStamp>").append(event.end).append("</endTimeStamp>\n")
+          .append(padding).append("  <createdTimeStamp>").append(event.created).append("</createdTimeStamp>\n")
+          .append(padding).append("  <lastModifiedTimeStamp>").append(event.modified).append("</lastModifiedTimeStamp>\n")
+          .append(padding).append("  <allDayEvent>").append(event.allDay).append("</allDayEvent>\n");
+        if (event.rule != null) {
+            sb.append(padding).append("  <recurrenceRule>").append(escape(event.rule)).append("</recurrenceRule>\n");
+        }
+        sb.append(padding).append("  <reminders>\n");
+        if (event.reminders != null) {
+            for (String offset : event.reminders.split(",")) {
+                sb.append(padding).append("    <reminderOffset>").append(offset.trim()).append("</reminderOffset>\n");
+            }
+        }
+        sb.append(padding).append("  </reminders>\n")
+          .append(padding).append("</event>\n");
+    }
+
+    private static String escape(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    //
+    // change notifications
+    //
+
+    synchronized void setNotificationsEnabled(boolean enabled) {
+        notify = enabled;
+    }
+
+    /**
+     * Called after every write: notifies DeviceCalendar and schedules saving the store
+     */
+    private void changed() {
+        if (notify) {
+            DeviceCalendar.nativeCalendarChanged();
+        }
+        if (file != null && !savePending) {
+            savePending = true;
+            if (saveTimer == null) {
+                saveTimer = new Timer("Simulator calendar store", true);
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+                    public void run() {
+                        flush();
+                    }
+                });
+            }
+            saveTimer.schedule(new TimerTask() {
+                public void run() {
+                    flush();
+                }
+            }, SAVE_DELAY);
+        }
+    }
+
+    //
+    // persistence, the file is a sequence of CompactCodec fields
+    //
+
+    synchronized void flush() {
+        if (!savePending) {
+            return;
+        }
+        savePending = false;
+
+        StringBuilder sb = new StringBuilder(64 + events.size() * 96);
+        CompactCodec.writeField(sb, FILE_VERSION);
+        CompactCodec.writeField(sb, nextID);
+        CompactCodec.writeField(sb, calendars.size());
+        for (SimCalendar cal : calendars.values()) {
+            CompactCodec.writeField(sb, cal.id);
+            CompactCodec.writeField(sb, cal.name);
+            CompactCodec.writeField(sb, cal.deleted.size());
+            for (Map.Entry<String, Long> entry : cal.deleted.entrySet()) {
+                CompactCodec.writeField(sb, entry.getKey());
+                CompactCodec.writeField(sb, entry.getValue().longValue());
+            }
+            CompactCodec.writeField(sb, cal.byStart.size());
+            for (SimEvent event : cal.byStart) {
+                appendEventCompact(event, 0, sb);
+            }
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+            try {
+                out.write(sb.toString());
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                tmp.renameTo(file);
+            }
+        } catch (IOException e) {
+            Log.p("Failed to save simulator calendar to " + file);
+            Log.e(e);
+        }
+    }
+
+    private void load() throws IOException {
+        StringBuilder sb = new StringBuilder((int) file.length());
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] buffer = new char[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                sb.append(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        CompactCodec.Reader reader = new CompactCodec.Reader(sb.toString());
+        int version = reader.nextInt();
+        if (version < 1 || version > FILE_VERSION) {
+            throw new IOException("Unsupported file version");
+        }
+        nextID = reader.nextLong();
+        int calendarCount = reader.nextInt();
+        for (int i = 0; i < calendarCount; i++) {
+            SimCalendar cal = new SimCalendar(reader.nextString(), reader.nextString());
+            calendars.put(cal.id, cal);
+            int deletedCount = reader.nextInt();
+            for (int j = 0; j < deletedCount; j++) {
+                cal.deleted.put(reader.nextString(), Long.valueOf(reader.nextLong()));
+            }
+            int eventCount = reader.nextInt();
+            for (int j = 0; j < eventCount; j++) {
+                SimEvent event = new SimEvent(Long.parseLong(reader.nextString()), cal.id);
+                event.title = reader.nextString();
+                event.notes = reader.nextString();
+                event.location = reader.nextString();
+                event.start = reader.nextLong();
+                event.end = reader.nextLong();
+                event.allDay = reader.nextBoolean();
+                event.reminders = reader.nextString();
+                event.created = reader.nextLong();
+                event.modified = reader.nextLong();
+                // version 1 files predate recurring events
+                event.rule = version > 1 ? reader.nextString() : null;
+                // version 3 records end with the calendar ID, implied by the enclosing calendar
+                if (version > 2) {
+                    reader.skip(1);
+                }
+                events.put(event.id, event);
+                cal.byStart.add(event);
+                cal.maxDuration = Math.max(cal.maxDuration, event.end - event.start);
+                if (event.rule != null) {
+                    cal.recurring.add(event);
+                }
+            }
+        }
+    }
+
+    private static class SimCalendar {
+        final String id;
+        final String name;
+        // every event, a recurring event by the start of its first occurrence
+        final TreeSet<SimEvent> byStart = new TreeSet<SimEvent>(BY_START);
+        final List<SimEvent> recurring = new ArrayList<SimEvent>();
+        // longest duration of any event ever stored, bounds how far back an overlap query has to look
+        long maxDuration;
+        // deletion time by event ID, reported by getEventsModifiedSince
+        final Map<String, Long> deleted = new LinkedHashMap<String, Long>();
+
+        SimCalendar(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static class SimEvent {
+        final long id;
+        String calendarID;
+        String title;
+        String notes;
+        String location;
+        long start;
+        long end;
+        boolean allDay;
+        String reminders;
+        String rule;
+        long created;
+        long modified;
+
+        SimEvent(long id, String calendarID) {
+            this.id = id;
+            this.calendarID = calendarID;
+        }
+
+        /**
+         * @return a copy of this series moved to the given occurrence
+         */
+        SimEvent occurrence(long occurrenceStart) {
+            SimEvent occurrence = new SimEvent(id, calendarID);
+            occurrence.title = title;
+            occurrence.notes = notes;
+            occurrence.location = location;
+            occurrence.start = occurrenceStart;
+            occurrence.end = occurrenceStart + end - start;
+            occurrence.allDay = allDay;
+            occurrence.reminders = reminders;
+            occurrence.rule = rule;
+            occurrence.created = created;
+            occurrence.modified = modified;
+            return occurrence;
+        }
+    }
+
+    /**
+     * Merges the single events of a range with the occurrences of recurring events, both in start order.
+     * Series are skipped since they are represented by their occurrences.
+     */
+    private static class Range implements Iterable<SimEvent> {
+        private final Iterable<SimEvent> single;
+        private final List<SimEvent> occurrences;
+        private final long startTimeStamp;
+        private final long endTimeStamp;
+        private final boolean overlapping;
+
+        Range(Iterable<SimEvent> single, List<SimEvent> occurrences, long startTimeStamp, long endTimeStamp, boolean overlapping) {
+            this.single = single;
+            this.occurrences = occurrences;
+            this.startTimeStamp = startTimeStamp;
+            this.endTimeStamp = endTimeStamp;
+            this.overlapping = overlapping;
+        }
+
+        public Iterator<SimEvent> iterator() {
+            final Iterator<SimEvent> singles = single.iterator();
+            final Iterator<SimEvent> recurring = occurrences.iterator();
+
+            return new Iterator<SimEvent>() {
+                private SimEvent nextSingle = advance();
+                private SimEvent nextOccurrence = recurring.hasNext() ? recurring.next() : null;
+
+                private SimEvent advance() {
+                    while (singles.hasNext()) {
+                        SimEvent event = singles.next();
+                        if (event.rule == null && matches(event.start, event.end, startTimeStamp, endTimeStamp, overlapping)) {
+                            return event;
+                        }
+                    }
+                    return null;
+                }
+
+                public boolean hasNext() {
+                    return nextSingle != null || nextOccurrence != null;
+                }
+
+                public SimEvent next() {
+                    SimEvent result;
+                    if (nextOccurrence == null || (nextSingle != null && BY_START.compare(nextSingle, nextOccurrence) < 0)) {
+                        if (nextSingle == null) {
+                            throw new NoSuchElementException();
+                        }
+                        result = nextSingle;
+                        nextSingle = advance();
+                    } else {
+                        result = nextOccurrence;
+                        nextOccurrence = recurring.hasNext() ? recurring.next() : null;
+                    }
+                    return result;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
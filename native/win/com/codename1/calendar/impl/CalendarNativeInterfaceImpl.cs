@@ -17,6 +17,10 @@ public class CalendarNativeInterfaceImpl {
         return 0;
     }
 
+    public String  getCalendars() {
+        return null;
+    }
+
     public String  openCalendar(String param, boolean param1) {
         return null;
     }
@@ -25,14 +29,58 @@ public class CalendarNativeInterfaceImpl {
         return null;
     }
 
+    public String  saveEvents(String param, String param1) {
+        return null;
+    }
+
     public bool removeEvent(String param, String param1) {
         return false;
     }
 
+    public String  removeEvents(String param, String param1) {
+        return null;
+    }
+
+    public String  removeEventsInRange(String param, long param1, long param2) {
+        return null;
+    }
+
     public String  getEventByID(String param, String param1) {
         return null;
     }
 
+    public String  getEventByIDCompact(String param, String param1, int param2) {
+        return null;
+    }
+
+    public String  getEventsCompact(String param, long param1, long param2, int param3) {
+        return null;
+    }
+
+    public bool returnsOverlappingEvents() {
+        return false;
+    }
+
+    public String  getEventsForCalendars(String param, long param1, long param2, int param3) {
+        return null;
+    }
+
+    public String  getEventsPage(String param, long param1, long param2, String param3, int param4, int param5) {
+        return null;
+    }
+
+    public String  getEventsModifiedSince(String param, long param1, int param2) {
+        return null;
+    }
+
+    public String  getBusyTimes(String param, long param1, long param2) {
+        return null;
+    }
+
+    public String  getEventCounts(String param, String param1, int param2) {
+        return null;
+    }
+
     public void registerForEventNotifications() {
     }
 
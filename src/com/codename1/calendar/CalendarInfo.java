@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import com.codename1.calendar.impl.CompactCodec;
+
+/**
+ * Metadata of a device calendar as returned from DeviceCalendar.getCalendarInfos
+ */
+public class CalendarInfo {
+   /**
+    * The calendar only exposes free/busy information
+    */
+   public static final int ACCESS_NONE  = 0;
+
+   /**
+    * Events can be read but not modified
+    */
+   public static final int ACCESS_READ  = 1;
+
+   /**
+    * Events can be read and modified
+    */
+   public static final int ACCESS_WRITE = 2;
+
+   /**
+    * Full control of the calendar
+    */
+   public static final int ACCESS_OWNER = 3;
+
+   private final String  id;
+   private final String  name;
+   private final int     color;
+   private final int     accessLevel;
+   private final boolean openable;
+
+   /**
+    * Restores calendar metadata, e.g. from an EventSnapshot
+    */
+   CalendarInfo(String id, String name, int color, int accessLevel, boolean openable) {
+      this.id          = id;
+      this.name        = name;
+      this.color       = color;
+      this.accessLevel = accessLevel;
+      this.openable    = openable;
+   }
+
+   /**
+    * Decodes a calendar record from a compact getCalendars response
+    *
+    * @param reader - Positioned at the first field of the record
+    * @param width  - Number of fields per record in the response
+    */
+   CalendarInfo(CompactCodec.Reader reader, int width) {
+      id          = reader.nextString();
+      name        = reader.nextString();
+      color       = reader.nextInt();
+      accessLevel = reader.nextInt();
+      openable    = reader.nextBoolean();
+      reader.skip(width - CompactCodec.CALENDAR_FIELD_COUNT);
+   }
+
+   /**
+    * @return Unique ID to be used in other methods referencing this calendar
+    */
+   public String getID() {
+      return id;
+   }
+
+   /**
+    * @return Name of the calendar
+    */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * @return Display color of the calendar as 0xRRGGBB
+    */
+   public int getColor() {
+      return color;
+   }
+
+   /**
+    * @return One of the ACCESS_* constants
+    */
+   public int getAccessLevel() {
+      return accessLevel;
+   }
+
+   /**
+    * @return true if events of this calendar can be modified
+    */
+   public boolean isWritable() {
+      return accessLevel >= ACCESS_WRITE;
+   }
+
+   /**
+    * @return true if openCalendar would return this calendar for its name
+    */
+   boolean isOpenable() {
+      return openable;
+   }
+
+   @Override
+   public String toString() {
+      return "CalendarInfo{" +
+              "id='"         + id          + '\'' +
+            ", name='"       + name        + '\'' +
+            ", color="       + Integer.toHexString(color) +
+            ", accessLevel=" + accessLevel +
+            '}';
+   }
+}
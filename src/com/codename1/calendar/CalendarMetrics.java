@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Metrics of the native calendar operations, see DeviceCalendar.setMetricsEnabled.
+ *
+ * The registry kept by DeviceCalendar is live, DeviceCalendar.getMetrics returns a snapshot that no longer changes.
+ * Operations are named after the native calls, e.g. getEventsCompact or saveEvents, and listed in the order they were first used.
+ */
+public final class CalendarMetrics {
+   private final LinkedHashMap<String, OperationMetrics> operations = new LinkedHashMap<String, OperationMetrics>();
+   private final long since;
+   private int        cacheHits;
+   private int        cacheMisses;
+
+   CalendarMetrics() {
+      this(System.currentTimeMillis());
+   }
+
+   private CalendarMetrics(long since) {
+      this.since = since;
+   }
+
+   /**
+    * @return the live counters of the operation, created on first use
+    */
+   synchronized OperationMetrics operation(String name) {
+      OperationMetrics operation = operations.get(name);
+
+      if (operation == null) {
+         operation = new OperationMetrics(name);
+         operations.put(name, operation);
+      }
+
+      return operation;
+   }
+
+   /**
+    * @return a copy of the current counters together with the event cache counters
+    */
+   synchronized CalendarMetrics snapshot(int cacheHits, int cacheMisses) {
+      CalendarMetrics snapshot = new CalendarMetrics(since);
+
+      for (OperationMetrics operation : operations.values())
+         snapshot.operations.put(operation.getName(), operation.copy());
+
+      snapshot.cacheHits   = cacheHits;
+      snapshot.cacheMisses = cacheMisses;
+      return snapshot;
+   }
+
+   /**
+    * @return when recording started, in milliseconds
+    */
+   public long getStartTime() {
+      return since;
+   }
+
+   /**
+    * @return counters of every operation called since recording started
+    */
+   public synchronized List<OperationMetrics> getOperations() {
+      return new ArrayList<OperationMetrics>(operations.values());
+   }
+
+   /**
+    * @param name - Name of the native operation, e.g. getEventsCompact
+    * @return counters of the operation, null if it wasn't called
+    */
+   public synchronized OperationMetrics getOperation(String name) {
+      return operations.get(name);
+   }
+
+   /**
+    * @return number of getEvents calls answered by the event cache since it was enabled, 0 while the cache is disabled
+    */
+   public int getCacheHits() {
+      return cacheHits;
+   }
+
+   /**
+    * @return number of getEvents calls the event cache couldn't answer since it was enabled, 0 while the cache is disabled
+    */
+   public int getCacheMisses() {
+      return cacheMisses;
+   }
+
+   /**
+    * @return share of getEvents calls answered by the event cache between 0 and 1, 0 if there were none
+    */
+   public double getCacheHitRatio() {
+      int lookups = cacheHits + cacheMisses;
+      return lookups > 0 ? (double) cacheHits / lookups : 0;
+   }
+
+   /**
+    * @return a multi line dump of all counters, e.g. for logging
+    */
+   public synchronized String toString() {
+      StringBuilder sb = new StringBuilder("CalendarMetrics since ").append(since)
+         .append(", cache hits=").append(cacheHits)
+         .append(", cache misses=").append(cacheMisses)
+         .append('\n');
+
+      for (OperationMetrics operation : operations.values())
+         sb.append("  ").append(operation).append('\n');
+
+      return sb.toString();
+   }
+}
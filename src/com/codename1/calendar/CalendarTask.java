@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import com.codename1.ui.Display;
+import com.codename1.util.Callback;
+
+/**
+ * Handle of an asynchronous DeviceCalendar request. The request runs on the calendar worker thread
+ * and its callback is called on the EDT unless the request was cancelled first.
+ */
+public abstract class CalendarTask<T> {
+   private final Callback<T> callback;
+   private boolean           cancelled;
+   private boolean           done;
+
+   CalendarTask(Callback<T> callback) {
+      this.callback = callback;
+   }
+
+   /**
+    * Performs the request on the worker thread
+    */
+   abstract T execute();
+
+   /**
+    * Cancels the request, e.g. a read superseded by a newer one. A request that didn't start yet is skipped,
+    * otherwise it completes but its callback isn't called.
+    *
+    * @return false if the callback has already been called
+    */
+   public synchronized boolean cancel() {
+      if (done)
+         return false;
+
+      cancelled = true;
+      return true;
+   }
+
+   /**
+    * @return true if cancel was called before the callback
+    */
+   public synchronized boolean isCancelled() {
+      return cancelled;
+   }
+
+   /**
+    * @return true once the callback has been called
+    */
+   public synchronized boolean isDone() {
+      return done;
+   }
+
+   /**
+    * Called by CalendarWorker
+    */
+   void run() {
+      if (isCancelled())
+         return;
+
+      T         result = null;
+      Throwable error  = null;
+
+      try {
+         result = execute();
+      }
+      catch (Throwable t) {
+         error = t;
+      }
+
+      final T         r = result;
+      final Throwable e = error;
+
+      Display.getInstance().callSerially(new Runnable() {
+         public void run() {
+            synchronized (CalendarTask.this) {
+               if (cancelled)
+                  return;
+
+               done = true;
+            }
+
+            if (e != null)
+               callback.onError(CalendarTask.this, e, 0, e.getMessage());
+            else
+               callback.onSucess(r);
+         }
+      });
+   }
+}
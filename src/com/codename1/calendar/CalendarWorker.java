@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.LinkedList;
+
+import com.codename1.ui.Display;
+
+/**
+ * Runs asynchronous DeviceCalendar requests one at a time in submission order on a dedicated thread,
+ * so requests against the same calendar never overtake each other. The thread is started on demand
+ * and ends after being idle for a while.
+ */
+class CalendarWorker implements Runnable {
+   private static final long IDLE_TIMEOUT = 30000;
+
+   private final LinkedList<CalendarTask<?>> queue = new LinkedList<CalendarTask<?>>();
+   private boolean running;
+
+   synchronized <T> CalendarTask<T> submit(CalendarTask<T> task) {
+      queue.add(task);
+
+      if (!running) {
+         running = true;
+         Display.getInstance().startThread(this, "Calendar").start();
+      }
+      else {
+         notify();
+      }
+
+      return task;
+   }
+
+   public void run() {
+      while (true) {
+         CalendarTask<?> task;
+
+         synchronized (this) {
+            if (queue.isEmpty()) {
+               try {
+                  wait(IDLE_TIMEOUT);
+               }
+               catch (InterruptedException e) {
+                  // fall through and check the queue
+               }
+            }
+
+            if (queue.isEmpty()) {
+               running = false;
+               return;
+            }
+
+            task = queue.removeFirst();
+         }
+
+         task.run();
+      }
+   }
+}
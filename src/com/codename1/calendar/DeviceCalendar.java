@@ -23,17 +23,32 @@
 
 package com.codename1.calendar;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.Vector;
 
 import com.codename1.calendar.impl.CalendarNativeInterface;
+import com.codename1.calendar.impl.CompactCodec;
+import com.codename1.calendar.impl.EventHistogram;
 import com.codename1.io.CharArrayReader;
 import com.codename1.system.NativeLookup;
 import com.codename1.ui.Display;
+import com.codename1.util.Callback;
 import com.codename1.xml.Element;
 import com.codename1.xml.XMLParser;
 
@@ -46,11 +61,122 @@ import com.codename1.xml.XMLParser;
  */
 public final class DeviceCalendar {
 
+	/**
+	 * Query flag: don't fetch reminders, EventInfo.getReminders returns an empty array for the
+	 * returned events. Saves a reminders lookup on platforms where they are stored separately.
+	 */
+	public static final int QUERY_SKIP_REMINDERS = CompactCodec.FLAG_SKIP_REMINDERS;
+
+	/**
+	 * Query flag: range queries return every event overlapping the range, i.e. starting before its end and
+	 * ending after its start, instead of only the events within it. Events crossing the range boundaries such
+	 * as a night shift in a day view are found without querying a wider range. The platform evaluates the
+	 * condition so only matching events are read. Ports without support for the flag fall back to their default semantics.
+	 */
+	public static final int QUERY_OVERLAPPING = CompactCodec.FLAG_OVERLAPPING;
+
+	/**
+	 * Query flag: don't fetch titles, EventInfo.getTitle returns an empty string for the returned events
+	 */
+	public static final int QUERY_SKIP_TITLE = CompactCodec.FLAG_SKIP_TITLE;
+
+	/**
+	 * Query flag: don't fetch descriptions, EventInfo.getDescription returns an empty string for the returned events.
+	 * Descriptions are usually the largest field, skipping them keeps them out of the native query and the response.
+	 */
+	public static final int QUERY_SKIP_DESCRIPTION = CompactCodec.FLAG_SKIP_DESCRIPTION;
+
+	/**
+	 * Query flag: don't fetch locations, EventInfo.getLocation returns an empty string for the returned events
+	 */
+	public static final int QUERY_SKIP_LOCATION = CompactCodec.FLAG_SKIP_LOCATION;
+
+	/**
+	 * Query flag: don't fetch creation and modification times, EventInfo.getCreatedTime and
+	 * EventInfo.getLastModifiedTime return null for the returned events
+	 */
+	public static final int QUERY_SKIP_TIMESTAMPS = CompactCodec.FLAG_SKIP_TIMESTAMPS;
+
+	/**
+	 * Projection for views that only lay events out, e.g. a month grid: only the ID, start and end times,
+	 * the all day flag, the recurrence rule and the calendar ID are fetched. Can be combined with the other QUERY_* flags.
+	 */
+	public static final int QUERY_TIMES_ONLY = QUERY_SKIP_REMINDERS | QUERY_SKIP_TITLE | QUERY_SKIP_DESCRIPTION | QUERY_SKIP_LOCATION | QUERY_SKIP_TIMESTAMPS;
+
 	//Make DeviceCalendar a singleton
 	private static DeviceCalendar INSTANCE = null;
 
-	//Native Interface Implementation
-	private CalendarNativeInterface impl = null;
+	//Native Interface Implementation, wrapped by a MeteredNativeInterface while metrics are enabled
+	private volatile CalendarNativeInterface impl = null;
+
+	//The port returns events overlapping the range of a query even without QUERY_OVERLAPPING, see withinRange
+	private final boolean portOverlapping;
+
+	//Metrics registry, null while disabled
+	private volatile CalendarMetrics metrics = null;
+
+	//Calendar metadata cache, null until first loaded or after invalidation
+	private List<CalendarInfo> calendars = null;
+
+	//Default upper bound for the number of events held by the event cache
+	private static final int DEFAULT_EVENT_CACHE_SIZE = 2000;
+
+	//getEvents cache, null while disabled
+	private EventCache eventCache = null;
+
+	//Storage file written by saveSnapshot
+	private static final String SNAPSHOT_NAME = "DeviceCalendarSnapshot";
+
+	//Upper bound for the number of events written by saveSnapshot
+	private static final int SNAPSHOT_SIZE = 1000;
+
+	//Quiet period after the last change notification before listeners are called
+	private static final long CHANGE_DELAY = 500;
+
+	//Upper bound for delaying listeners while change notifications keep coming in
+	private static final long MAX_CHANGE_DELAY = 2000;
+
+	private final List<CalendarChangeListener> changeListeners = new ArrayList<CalendarChangeListener>();
+	private Timer changeTimer = null;
+	private TimerTask pendingChange = null;
+	private long firstChange;
+
+	//Storage file journaling the updates queued in write-behind mode
+	private static final String WRITE_JOURNAL_NAME = "DeviceCalendarWrites";
+
+	//Quiet period after the last queued update before the queue is written
+	private static final long WRITE_DELAY = 1000;
+
+	//Upper bound for delaying the write while updates keep coming in
+	private static final long MAX_WRITE_DELAY = 5000;
+
+	//Updates not written yet, null unless write-behind mode is enabled
+	private WriteBehindQueue writeQueue = null;
+	private Timer writeTimer = null;
+	private TimerTask pendingWrite = null;
+	private long firstWrite;
+
+	//Held while queued updates are written so they reach the device in order
+	private final Object writeLock = new Object();
+
+	//Number of events saved per native call by importICalendar
+	private static final int IMPORT_BATCH_SIZE = 200;
+
+	//Number of events fetched per native call by exportICalendar
+	private static final int EXPORT_PAGE_SIZE = 200;
+
+	//Runs the *Async requests
+	private final CalendarWorker worker = new CalendarWorker();
+
+	//Orders events merged from several calendars, events without start time first
+	private static final Comparator<EventInfo> BY_START_TIME = new Comparator<EventInfo>() {
+		public int compare(EventInfo a, EventInfo b) {
+			long timeA = a.getStartTime() != null ? a.getStartTime().getTime() : Long.MIN_VALUE;
+			long timeB = b.getStartTime() != null ? b.getStartTime().getTime() : Long.MIN_VALUE;
+
+			return timeA < timeB ? -1 : (timeA == timeB ? 0 : 1);
+		}
+	};
 
 	/**
 	 * DeviceCalendar can be use to manipulate device calendars.
@@ -74,14 +200,17 @@ public final class DeviceCalendar {
 	}
 	
 	/**
+	 * Package private so benchmarks can run against a canned implementation
+	 *
 	 * @param impl	- Instance of NativeCalendarInterface implementation
 	 */
-	private DeviceCalendar(CalendarNativeInterface impl) {
+	DeviceCalendar(CalendarNativeInterface impl) {
 		if(null == impl){
 			//Shouldn't happen.
 			throw new IllegalArgumentException("NativeInterface is null!");
 		}
 		this.impl = impl;
+		this.portOverlapping = impl.returnsOverlappingEvents();
 	}
 	
 	/**
@@ -97,6 +226,21 @@ public final class DeviceCalendar {
 	 * @return array of Strings of calendar names or null if no permissions
 	 */
 	public Collection<String> getCalendars() {
+		List<CalendarInfo> infos = getCalendarInfos();
+
+		if (infos != null) {
+			if (infos.isEmpty())
+				return null;
+
+			Collection<String> list = new ArrayList<String>(infos.size());
+
+			for (CalendarInfo info : infos)
+				list.add(info.getName());
+
+			return list;
+		}
+
+		//Port without getCalendars support.
 		//Check if we have any calendars we can work with. If so, return a collection of their names.
 		int cnt = impl.getCalendarCount();
 		if(0 < cnt){
@@ -120,160 +264,2048 @@ public final class DeviceCalendar {
 	 * @return Unique ID to be used in other methods referencing this calendar. Null in case of failure or calendar does not exist
 	 */
 	public String openCalendar(String calendarName, boolean createIfNotExists) {
-		return impl.openCalendar(calendarName, createIfNotExists);
+		if (calendarName != null) {
+			List<CalendarInfo> infos = getCalendarInfos();
+
+			if (infos != null) {
+				for (CalendarInfo info : infos)
+					if (info.isOpenable() && calendarName.equals(info.getName()))
+						return info.getID();
+			}
+		}
+
+		String calendarID = impl.openCalendar(calendarName, createIfNotExists);
+
+		//The calendar might have just been created
+		if (calendarID != null && createIfNotExists)
+			refreshCalendars();
+
+		return calendarID;
 	}
 
 	/**
-	 * Add/Edit an event in named calendar.
+	 * Lists all calendars with their metadata using a single native call. The result is cached,
+	 * call refreshCalendars to pick up calendars that were added or removed outside of the application.
 	 *
-	 * @param calendarID     - As returned from openCalendar
-	 * @param eventID        - Event Identifier. Pass null for new Events
-	 * @param title          - Title of the Calendar Event
-	 * @param startTimeStamp - Event starting time stamp
-	 * @param endTimeStamp   - Event ending time stamp
-	 * @param allDayEvent    - The event is an all day event
-	 * @param notes          - Any notes for the event
-	 * @param location       - Location of the event
-	 * @param reminders      - alarm offsets (in seconds). Pass null for no alarms
-	 *                       
-	 * @return Unique event identifier for the event that's created. Null in the case of failure or no permissions
+	 * @return calendars ordered as in getCalendars. Null if the platform doesn't support listing calendar metadata or no permissions
 	 */
-	public String saveEvent(String calendarID, 
-								   String eventID, 
-								   String title,
-								   Date startTimeStamp,
-								   Date endTimeStamp,
-								   boolean allDayEvent,
-								   String notes,
-								   String location,
-								   Collection<Integer> reminders) {		
-		if (calendarID == null || calendarID.length() == 0)
-			throw new IllegalArgumentException("calendarID required");
+	public List<CalendarInfo> getCalendarInfos() {
+		synchronized (this) {
+			if (calendars != null)
+				return calendars;
+		}
 
-		String sReminders = null;
-      
-		if (reminders != null && reminders.size() > 0) {
-			sReminders = "";
+		String compact = impl.getCalendars();
 
-			for (int reminder : reminders)
-				sReminders += reminder + ",";
+		if (compact == null)
+			return null;
 
-			sReminders = sReminders.substring(0, sReminders.length() - 1);
+		long parseStart = parseStart();
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return null;
+
+		int width = reader.nextInt();
+		List<CalendarInfo> list = new ArrayList<CalendarInfo>();
+
+		while (reader.hasNext())
+			list.add(new CalendarInfo(reader, width));
+
+		list = Collections.unmodifiableList(list);
+		parsed("getCalendars", parseStart);
+
+		synchronized (this) {
+			calendars = list;
 		}
 
-		return impl.saveEvent(calendarID, eventID, title, startTimeStamp.getTime(), endTimeStamp.getTime(), allDayEvent, false, notes, location, sReminders);
+		return list;
 	}
 
 	/**
-	 * Removes event with previously returned eventID
+	 * Discards the cached calendar metadata, the next getCalendars, getCalendarInfos or openCalendar
+	 * call reloads it from the device.
+	 */
+	public synchronized void refreshCalendars() {
+		calendars = null;
+	}
+
+	/**
+	 * Enables or disables caching of getEvents results. While enabled, a getEvents call is answered
+	 * from memory when an earlier call with the same calendar fetched a range covering the requested one,
+	 * e.g. a day view within an already loaded month. Cached events are dropped by saveEvent, saveEvents
+	 * and removeEvent calls going through this instance, changes made by other applications are only
+	 * picked up after clearEventCache. Disabled by default.
 	 *
-	 * @param calendarID	- As returned from openCalendar
-	 * @param eventID 	- As returned from saveEvent
-	 *                   
-	 * @return If removal successful
-	 */   
-	public boolean removeEvent(String calendarID, String eventID) {
-		if (calendarID == null || calendarID.length() == 0)
-			throw new IllegalArgumentException("calendarID required");
+	 * @param enabled - true to enable the cache, false to disable it and discard its content
+	 */
+	public synchronized void setEventCacheEnabled(boolean enabled) {
+		if (!enabled)
+			eventCache = null;
+		else if (eventCache == null)
+			eventCache = new EventCache(DEFAULT_EVENT_CACHE_SIZE, portOverlapping);
+	}
 
-		if (eventID == null || eventID.length() == 0)
-			throw new IllegalArgumentException("eventID required");
+	/**
+	 * @return true if getEvents results are cached
+	 */
+	public synchronized boolean isEventCacheEnabled() {
+		return eventCache != null;
+	}
+
+	/**
+	 * Limits the memory used by the event cache. When the limit is exceeded the least recently
+	 * used ranges are evicted.
+	 *
+	 * @param maxEvents - Upper bound for the total number of cached events
+	 */
+	public synchronized void setEventCacheSize(int maxEvents) {
+		if (maxEvents < 1)
+			throw new IllegalArgumentException("maxEvents must be positive");
 
-		return impl.removeEvent(calendarID, eventID);
+		setEventCacheEnabled(true);
+		eventCache.setMaxEvents(maxEvents);
 	}
 
 	/**
-	 * Query calendar and return details as an EventInfo
+	 * Discards all cached events, hit and miss counts are kept
+	 */
+	public synchronized void clearEventCache() {
+		if (eventCache != null)
+			eventCache.clear();
+	}
+
+	/**
+	 * Saves the calendar metadata and the most recently used ranges of the event cache to Storage so the next
+	 * run of the application can restore them with loadSnapshot, e.g. call it from the stop method of the application.
+	 * Does nothing while the event cache is disabled.
 	 *
-	 * @param calendarID	- As returned from openCalendar
-	 * @param eventID    - As returned from saveEvent
-	 *                   
-	 * @return an EventInfo or null on failure, not found or no permissions.
+	 * @return false if the snapshot couldn't be written
 	 */
-	public EventInfo getEventByID(String calendarID, String eventID) {
-		if (calendarID == null || calendarID.length() == 0)
-			throw new IllegalArgumentException("calendarID required");
+	public boolean saveSnapshot() {
+		EventSnapshot snapshot;
 
-		if (eventID == null || eventID.length() == 0)
-			throw new IllegalArgumentException("eventID required");
+		synchronized (this) {
+			if (eventCache == null)
+				return true;
 
-		String xml = impl.getEventByID(calendarID, eventID);
-      
-		if(null != xml){
-			Element element = new XMLParser().parse(new CharArrayReader(xml.toCharArray()));
-//         Log.p("event XML " + xml);
-//         Log.p("parsed " + element);
-			return new EventInfo(findElement(element, "response", "event"));         
+			snapshot = new EventSnapshot(calendars, eventCache.ranges(SNAPSHOT_SIZE));
+		}
+
+		try {
+			snapshot.save(SNAPSHOT_NAME);
+			return true;
+		}
+		catch (IOException e) {
+			return false;
 		}
-      
-		return null;
 	}
 
 	/**
-	 * Returns all events in the calendar between startTimeStamp and endTimeStamp
+	 * Restores the snapshot written by saveSnapshot during an earlier run so the first screens can be rendered
+	 * from memory, before the device calendar is queried. The event cache is enabled and filled with the saved
+	 * ranges and the saved calendar metadata answers getCalendars, getCalendarInfos and openCalendar.
 	 *
-	 * @param calendarID     - As returned from openCalendar
-	 * @param startTimeStamp - Event search starting time stamp                       
-	 * @param endTimeStamp   - Event search ending time stamp
-	 *                       
-	 * @return collection of EventInfo's. Returns null in case of failure or no permissions
+	 * The restored data is then reconciled with the device on the calendar worker thread: the calendars and every
+	 * restored range are fetched again and replace the saved ones, and the registered CalendarChangeListeners are
+	 * called if anything differs so screens showing saved data can refresh. The snapshot is rewritten afterwards.
+	 *
+	 * @return true if a snapshot was restored, false if there was none or it couldn't be read
 	 */
-	public Collection<EventInfo> getEvents(String calendarID, Date startTimeStamp, Date endTimeStamp) {
-		if (calendarID == null || calendarID.length() == 0)
-			throw new IllegalArgumentException("calendarID required");
+	public boolean loadSnapshot() {
+		final EventSnapshot snapshot = EventSnapshot.load(SNAPSHOT_NAME);
 
-		String xml = impl.getEvents(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime());
-      
-		if(null != xml){
-			Element element = new XMLParser().parse(new CharArrayReader(xml.toCharArray()));
+		if (snapshot == null)
+			return false;
 
-//         Log.p("events XML " + xml);
-//         Log.p("parsed " + element);
+		final EventCache cache;
 
-			element = findElement(element, "response", "eventList"); 
-			Collection<EventInfo> col = new ArrayList<EventInfo>();         
+		synchronized (this) {
+			setEventCacheEnabled(true);
+			cache = eventCache;
 
-			if (element != null) {
-				Vector<Element> events = element.getChildrenByTagName("event");
+			if (calendars == null && snapshot.calendars != null)
+				calendars = Collections.unmodifiableList(snapshot.calendars);
 
-				if (events != null) {
-					Enumeration<Element> enumeration = events.elements();
+			for (EventSnapshot.Range range : snapshot.ranges)
+				cache.put(range.calendarID, range.startTimeStamp, range.endTimeStamp, range.flags, range.events);
+		}
 
-					while (enumeration.hasMoreElements())
-						col.add(new EventInfo(enumeration.nextElement()));
-				}
+		worker.submit(new CalendarTask<Boolean>(new Callback<Boolean>() {
+			public void onSucess(Boolean changed) {
+				if (changed.booleanValue())
+					fireCalendarChanged();
 			}
 
-			return col;         
+			public void onError(Object sender, Throwable err, int errorCode, String errorMessage) {
+				//The saved data stays in use until the next change notification or query miss
+			}
+		}) {
+			Boolean execute() {
+				return reconcile(snapshot, cache) ? Boolean.TRUE : Boolean.FALSE;
+			}
+		});
+
+		return true;
+	}
+
+	/**
+	 * Deletes the snapshot written by saveSnapshot, e.g. when the user signs out
+	 */
+	public void deleteSnapshot() {
+		EventSnapshot.delete(SNAPSHOT_NAME);
+	}
+
+	/**
+	 * Replaces restored snapshot data with fresh device data
+	 *
+	 * @return true if the device data differs from the snapshot
+	 */
+	private boolean reconcile(EventSnapshot snapshot, EventCache cache) {
+		boolean changed = false;
+
+		if (snapshot.calendars != null) {
+			refreshCalendars();
+			List<CalendarInfo> fresh = getCalendarInfos();
+
+			changed = fresh != null && !sameCalendars(snapshot.calendars, fresh);
 		}
 
-		return null;
+		for (EventSnapshot.Range range : snapshot.ranges) {
+			Collection<EventInfo> fresh = fetchEvents(range.calendarID, new Date(range.startTimeStamp), new Date(range.endTimeStamp), range.flags);
+
+			if (fresh == null)
+				continue;
+
+			synchronized (this) {
+				if (cache != eventCache)
+					return changed;
+
+				cache.put(range.calendarID, range.startTimeStamp, range.endTimeStamp, range.flags, fresh);
+			}
+
+			changed |= !sameEvents(range.events, fresh);
+		}
+
+		saveSnapshot();
+		return changed;
+	}
+
+	private static boolean sameCalendars(List<CalendarInfo> a, List<CalendarInfo> b) {
+		if (a.size() != b.size())
+			return false;
+
+		for (int i = 0; i < a.size(); i++) {
+			CalendarInfo x = a.get(i);
+			CalendarInfo y = b.get(i);
+
+			if (!x.getID().equals(y.getID()) || !x.getName().equals(y.getName()) || x.getColor() != y.getColor() || x.getAccessLevel() != y.getAccessLevel())
+				return false;
+		}
+
+		return true;
+	}
+
+	private static boolean sameEvents(Collection<EventInfo> a, Collection<EventInfo> b) {
+		if (a.size() != b.size())
+			return false;
+
+		Set<String> keys = new HashSet<String>();
+
+		for (EventInfo event : a)
+			keys.add(eventKey(event));
+
+		for (EventInfo event : b)
+			if (!keys.contains(eventKey(event)))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * @return the fields shown by calendar views, an event whose key changed has to be rendered again
+	 */
+	private static String eventKey(EventInfo event) {
+		return event.getID() + '\n' + event.getStartTime() + '\n' + event.getEndTime() + '\n' + event.isAllDayEvent() + '\n'
+		     + event.getTitle() + '\n' + event.getDescription() + '\n' + event.getLocation() + '\n' + event.getRecurrenceRule() + '\n'
+		     + event.getLastModifiedTime();
+	}
+
+	/**
+	 * @return number of getEvents calls answered from the cache since it was enabled
+	 */
+	public synchronized int getEventCacheHits() {
+		return eventCache != null ? eventCache.getHits() : 0;
+	}
+
+	/**
+	 * @return number of getEvents calls that had to query the device since the cache was enabled
+	 */
+	public synchronized int getEventCacheMisses() {
+		return eventCache != null ? eventCache.getMisses() : 0;
+	}
+
+	/**
+	 * Enables or disables recording of metrics for every native operation: call and error counts, histograms of
+	 * the time spent in the native call and decoding its response, and response sizes. While disabled the native
+	 * interface is called directly, so leaving the option off costs nothing. Disabling discards the recorded metrics.
+	 * Disabled by default.
+	 *
+	 * @param enabled - true to start recording, false to stop
+	 */
+	public synchronized void setMetricsEnabled(boolean enabled) {
+		if (enabled == (metrics != null))
+			return;
+
+		if (enabled) {
+			metrics = new CalendarMetrics();
+			impl    = new MeteredNativeInterface(impl, metrics);
+		}
+		else {
+			impl    = ((MeteredNativeInterface) impl).getDelegate();
+			metrics = null;
+		}
+	}
+
+	/**
+	 * @return true if metrics are recorded
+	 */
+	public synchronized boolean isMetricsEnabled() {
+		return metrics != null;
+	}
+
+	/**
+	 * Takes a snapshot of the metrics recorded since they were enabled or last reset, including the event cache
+	 * counters. The snapshot doesn't change afterwards, its toString method dumps all counters.
+	 *
+	 * @return snapshot of the metrics, null while disabled
+	 */
+	public synchronized CalendarMetrics getMetrics() {
+		return metrics != null ? metrics.snapshot(getEventCacheHits(), getEventCacheMisses()) : null;
+	}
+
+	/**
+	 * Restarts recording with empty metrics, has no effect while disabled
+	 */
+	public synchronized void resetMetrics() {
+		if (metrics != null) {
+			setMetricsEnabled(false);
+			setMetricsEnabled(true);
+		}
+	}
+
+	/**
+	 * Drops cached events of the calendar after a change
+	 */
+	private synchronized void invalidateEvents(String calendarID) {
+		if (eventCache != null)
+			eventCache.invalidate(calendarID);
 	}
-   
-   private static Element findElement(Element element, String... tags) {
-      if (element != null) {
-         for (String tag : tags) {
-            element = element.getFirstChildByTagName(tag);
-            
-//            Log.p("child " + element);
-            
-            if (element == null)
-               break;            
-         }
-      }
-      
-      return element;
-   }
 
-//   public void registerForEventNotifications() {
-//      if (hasPermissions())
-//         ((CalendarNativeInterface) NativeLookup.create(CalendarNativeInterface.class)).registerForEventNotifications();
-//   }
-//
-//   public void deregisterForEventNotifications() {
-//      if (hasPermissions())
-//         ((CalendarNativeInterface) NativeLookup.create(CalendarNativeInterface.class)).deregisterForEventNotifications();
-//   }
+	/**
+	 * Registers a listener called when calendars or events change on the device, including changes made by
+	 * other applications and sync. Notifications are coalesced: a burst of changes results in a single call
+	 * once no further change arrived for a short while. Listeners are called on the EDT.
+	 * The calendar and event caches are discarded before the listeners are called.
+	 *
+	 * @param listener - Listener to add
+	 */
+	public void addCalendarChangeListener(CalendarChangeListener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener required");
 
+		boolean register;
+
+		synchronized (this) {
+			register = changeListeners.isEmpty();
+			changeListeners.add(listener);
+
+			if (register)
+				changeTimer = new Timer();
+		}
+
+		if (register)
+			impl.registerForEventNotifications();
+	}
+
+	/**
+	 * Unregisters a listener added with addCalendarChangeListener. Change notifications are turned off
+	 * when the last listener is removed.
+	 *
+	 * @param listener - Listener to remove
+	 */
+	public void removeCalendarChangeListener(CalendarChangeListener listener) {
+		boolean deregister;
+
+		synchronized (this) {
+			deregister = changeListeners.remove(listener) && changeListeners.isEmpty();
+
+			if (deregister) {
+				changeTimer.cancel();
+				changeTimer   = null;
+				pendingChange = null;
+			}
+		}
+
+		if (deregister)
+			impl.deregisterForEventNotifications();
+	}
+
+	/**
+	 * Called by the native ports whenever the device calendars change, may be called from any thread.
+	 * Not meant to be called by applications.
+	 */
+	public static void nativeCalendarChanged() {
+		DeviceCalendar calendar;
+
+		synchronized (DeviceCalendar.class) {
+			calendar = INSTANCE;
+		}
+
+		if (calendar != null)
+			calendar.scheduleChange();
+	}
+
+	/**
+	 * Debounces change notifications: the pending delivery is pushed back on every change
+	 * until MAX_CHANGE_DELAY elapsed since the first one.
+	 */
+	private synchronized void scheduleChange() {
+		if (changeTimer == null)
+			return;
+
+		long now = System.currentTimeMillis();
+
+		if (pendingChange == null)
+			firstChange = now;
+		else if (now - firstChange >= MAX_CHANGE_DELAY)
+			return;
+		else
+			pendingChange.cancel();
+
+		final TimerTask task = new TimerTask() {
+			public void run() {
+				deliverChange(this);
+			}
+		};
+
+		pendingChange = task;
+		changeTimer.schedule(task, Math.min(CHANGE_DELAY, firstChange + MAX_CHANGE_DELAY - now));
+	}
+
+	private void deliverChange(TimerTask task) {
+		final CalendarChangeListener[] listeners;
+
+		synchronized (this) {
+			if (task != pendingChange)
+				return;
+
+			pendingChange = null;
+			calendars     = null;
+
+			if (eventCache != null)
+				eventCache.clear();
+
+			listeners = changeListeners.toArray(new CalendarChangeListener[changeListeners.size()]);
+		}
+
+		Display.getInstance().callSerially(new Runnable() {
+			public void run() {
+				for (CalendarChangeListener listener : listeners)
+					listener.calendarChanged();
+			}
+		});
+	}
+
+	/**
+	 * Calls the registered listeners, must be called on the EDT
+	 */
+	private void fireCalendarChanged() {
+		CalendarChangeListener[] listeners;
+
+		synchronized (this) {
+			listeners = changeListeners.toArray(new CalendarChangeListener[changeListeners.size()]);
+		}
+
+		for (CalendarChangeListener listener : listeners)
+			listener.calendarChanged();
+	}
+
+	/**
+	 * Enables or disables write-behind mode for editors saving an event on every field change.
+	 * While enabled, saveEvent calls updating an existing event return right away and only queue the update.
+	 * The first update of an event reads it once, a queued update carries its creation time and the time of the update.
+	 * Repeated updates of the same event replace each other in the queue. The queue is written to the device
+	 * on a background thread once no update arrived for a short while, one saveEvents batch per calendar.
+	 * The queue is journaled to Storage on a background thread, updates an application didn't write before being
+	 * killed are written after it enables write-behind mode on its next run. Updates made within a fraction of a
+	 * second before the application is killed may not be journaled yet.
+	 *
+	 * getEventByID and getEvents return queued updates as if they had been written already. Other queries and
+	 * changes of a calendar, e.g. getEventsPage or saveEvents, write its queued updates first. Creating an event
+	 * always writes it immediately so its ID can be returned, as does updating a recurring event or one that isn't found. Updates rejected by the platform, e.g. because the
+	 * event was removed by another application in the meantime, are dropped.
+	 * Disabling the mode writes the queued updates before returning. Disabled by default.
+	 *
+	 * @param enabled - true to queue updates, false to write them immediately
+	 */
+	public void setWriteBehindEnabled(boolean enabled) {
+		if (enabled) {
+			synchronized (this) {
+				if (writeQueue == null) {
+					writeQueue = new WriteBehindQueue(WRITE_JOURNAL_NAME);
+					writeTimer = new Timer();
+
+					//Updates journaled by an earlier run
+					if (!writeQueue.isEmpty())
+						scheduleWrite();
+				}
+			}
+
+			return;
+		}
+
+		synchronized (writeLock) {
+			WriteBehindQueue queue;
+
+			synchronized (this) {
+				queue = writeQueue;
+
+				if (queue == null)
+					return;
+
+				writeQueue   = null;
+				pendingWrite = null;
+				writeTimer.cancel();
+				writeTimer   = null;
+			}
+
+			writeQueued(queue, null);
+			queue.close();
+		}
+	}
+
+	/**
+	 * @return true if updates are queued, see setWriteBehindEnabled
+	 */
+	public synchronized boolean isWriteBehindEnabled() {
+		return writeQueue != null;
+	}
+
+	/**
+	 * Writes the updates queued in write-behind mode now instead of after the quiet period, e.g. from the stop
+	 * method of the application. Blocks until they are written, does nothing while write-behind mode is disabled.
+	 *
+	 * @return false if the platform rejected some of the updates, they are dropped
+	 */
+	public boolean flushWrites() {
+		WriteBehindQueue queue;
+
+		synchronized (this) {
+			queue = writeQueue;
+		}
+
+		return queue == null || writeQueued(queue, null);
+	}
+
+	/**
+	 * Add/Edit an event in named calendar.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param eventID        - Event Identifier. Pass null for new Events
+	 * @param title          - Title of the Calendar Event
+	 * @param startTimeStamp - Event starting time stamp
+	 * @param endTimeStamp   - Event ending time stamp
+	 * @param allDayEvent    - The event is an all day event
+	 * @param notes          - Any notes for the event
+	 * @param location       - Location of the event
+	 * @param reminders      - alarm offsets (in seconds). Pass null for no alarms
+	 *                       
+	 * @return Unique event identifier for the event that's created. Null in the case of failure or no permissions.
+	 *         In write-behind mode updates always return eventID, see setWriteBehindEnabled.
+	 *         Updating a recurring event updates its series and keeps the recurrence
+	 */
+	public String saveEvent(String calendarID, 
+								   String eventID, 
+								   String title,
+								   Date startTimeStamp,
+								   Date endTimeStamp,
+								   boolean allDayEvent,
+								   String notes,
+								   String location,
+								   Collection<Integer> reminders) {		
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (eventID != null && eventID.length() > 0 && isWriteBehindEnabled()) {
+			//The recurrence and creation time are taken from the device copy, or from the update queued earlier.
+			//Series aren't queued, getEvents couldn't apply the update to each of their occurrences.
+			EventInfo current = getEventByID(calendarID, eventID, QUERY_SKIP_REMINDERS | QUERY_SKIP_TITLE | QUERY_SKIP_DESCRIPTION | QUERY_SKIP_LOCATION);
+
+			if (current != null && !current.isRecurring()) {
+				int[] alarms = null;
+
+				if (reminders != null) {
+					alarms = new int[reminders.size()];
+					int i = 0;
+
+					for (int reminder : reminders)
+						alarms[i++] = reminder;
+				}
+
+				EventInfo update = new EventInfo(eventID, title, notes, location, new Date(startTimeStamp.getTime()), new Date(endTimeStamp.getTime()), allDayEvent, alarms,
+				                                 null, current.getCreatedTime(), new Date(), calendarID);
+
+				//Queued while holding the monitor setWriteBehindEnabled and flushWrites take the queue with,
+				//so an update is either written by a concurrent disable/flush or stays queued and scheduled
+				synchronized (this) {
+					if (writeQueue != null) {
+						writeQueue.put(update);
+						scheduleWrite();
+
+						return eventID;
+					}
+				}
+
+				//Disabled meanwhile, wait until the queued updates are written so this one isn't overwritten by an older one
+				synchronized (writeLock) {
+					return saveEventNow(calendarID, eventID, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, reminders);
+				}
+			}
+		}
+
+		return saveEventNow(calendarID, eventID, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, reminders);
+	}
+
+	/**
+	 * Writes the event with a native saveEvent call, bypassing the write-behind queue
+	 */
+	private String saveEventNow(String calendarID, String eventID, String title, Date startTimeStamp, Date endTimeStamp, boolean allDayEvent,
+	                            String notes, String location, Collection<Integer> reminders) {
+		String sReminders = null;
+      
+		if (reminders != null && reminders.size() > 0) {
+			sReminders = "";
+
+			for (int reminder : reminders)
+				sReminders += reminder + ",";
+
+			sReminders = sReminders.substring(0, sReminders.length() - 1);
+		}
+
+		try {
+			return impl.saveEvent(calendarID, eventID, title, startTimeStamp.getTime(), endTimeStamp.getTime(), allDayEvent, false, notes, location, sReminders);
+		}
+		finally {
+			//After the write, a query running meanwhile may have cached the previous version
+			invalidateEvents(calendarID);
+		}
+	}
+
+	/**
+	 * Add/Edit several events in named calendar with a single native call. The events are saved
+	 * as one all-or-nothing operation, if any of them fails none of them are saved.
+	 * Very large collections should be split into batches of a few hundred events, the
+	 * underlying platform transaction has to hold the whole batch in memory.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param events     - Events to save. Events with a null ID are created, others are updated.
+	 *                     An event with a recurrence rule is saved as a series starting at its start time.
+	 *                     An update without a rule keeps the recurrence of the event, an empty rule turns a series into a single event
+	 *
+	 * @return Unique event identifiers in the same order as the events. Null in the case of failure or no permissions
+	 */
+	public List<String> saveEvents(String calendarID, Collection<EventInfo> events) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (events == null)
+			throw new IllegalArgumentException("events required");
+
+		List<String> ids = new ArrayList<String>(events.size());
+
+		if (events.isEmpty())
+			return ids;
+
+		String encoded = encodeEvents(events);
+
+		writePending(calendarID);
+
+		String response;
+
+		try {
+			response = impl.saveEvents(calendarID, encoded);
+		}
+		finally {
+			invalidateEvents(calendarID);
+		}
+
+		if (response == null)
+			return null;
+
+		CompactCodec.Reader reader = new CompactCodec.Reader(response);
+
+		while (reader.hasNext())
+			ids.add(reader.nextString());
+
+		return ids;
+	}
+
+	/**
+	 * @return the events as CompactCodec records for the native saveEvents call
+	 */
+	private static String encodeEvents(Collection<EventInfo> events) {
+		StringBuilder sb = new StringBuilder(events.size() * 128);
+		CompactCodec.writeField(sb, CompactCodec.SAVE_FIELD_COUNT);
+
+		for (EventInfo event : events) {
+			if (event.getStartTime() == null || event.getEndTime() == null)
+				throw new IllegalArgumentException("start and end time required");
+
+			CompactCodec.writeField(sb, event.getID());
+			CompactCodec.writeField(sb, event.getTitle());
+			CompactCodec.writeField(sb, event.getStartTime().getTime());
+			CompactCodec.writeField(sb, event.getEndTime().getTime());
+			CompactCodec.writeField(sb, event.isAllDayEvent());
+			CompactCodec.writeField(sb, false);
+			CompactCodec.writeField(sb, event.getDescription());
+			CompactCodec.writeField(sb, event.getLocation());
+			CompactCodec.writeField(sb, encodeReminders(event.getReminders()));
+			CompactCodec.writeField(sb, event.getRecurrenceRule());
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return alarm offsets in CSV format as expected by the native interface, null for no alarms
+	 */
+	private static String encodeReminders(int[] reminders) {
+		if (reminders == null || reminders.length == 0)
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < reminders.length; i++) {
+			if (i > 0)
+				sb.append(',');
+			sb.append(reminders[i]);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Debounces writing the queue: the pending write is pushed back on every update
+	 * until MAX_WRITE_DELAY elapsed since the first one.
+	 */
+	private synchronized void scheduleWrite() {
+		if (writeTimer == null)
+			return;
+
+		long now = System.currentTimeMillis();
+
+		if (pendingWrite == null)
+			firstWrite = now;
+		else if (now - firstWrite >= MAX_WRITE_DELAY)
+			return;
+		else
+			pendingWrite.cancel();
+
+		final TimerTask task = new TimerTask() {
+			public void run() {
+				WriteBehindQueue queue;
+
+				synchronized (DeviceCalendar.this) {
+					if (this != pendingWrite)
+						return;
+
+					pendingWrite = null;
+					queue        = writeQueue;
+				}
+
+				writeQueued(queue, null);
+			}
+		};
+
+		pendingWrite = task;
+		writeTimer.schedule(task, Math.min(WRITE_DELAY, firstWrite + MAX_WRITE_DELAY - now));
+	}
+
+	/**
+	 * Writes the queued updates of the calendar before a call that doesn't see them otherwise
+	 *
+	 * @param calendarID - As returned from openCalendar, null for all calendars
+	 */
+	private void writePending(String calendarID) {
+		WriteBehindQueue queue;
+
+		synchronized (this) {
+			queue = writeQueue;
+		}
+
+		if (queue != null && !queue.isEmpty())
+			writeQueued(queue, calendarID);
+	}
+
+	/**
+	 * Writes queued updates with one saveEvents call per calendar. A batch the platform rejects, e.g. because one
+	 * of its events was removed in the meantime, is written event by event so only the failing updates are lost.
+	 *
+	 * @param calendarID - As returned from openCalendar, null for all calendars
+	 * @return false if some updates were rejected
+	 */
+	private boolean writeQueued(WriteBehindQueue queue, String calendarID) {
+		synchronized (writeLock) {
+			List<EventInfo> events = queue.events(calendarID);
+			boolean         ok     = true;
+
+			while (!events.isEmpty()) {
+				String          cal   = events.get(0).getCalendarID();
+				List<EventInfo> batch = new ArrayList<EventInfo>();
+
+				for (Iterator<EventInfo> it = events.iterator(); it.hasNext();) {
+					EventInfo event = it.next();
+
+					if (cal.equals(event.getCalendarID())) {
+						batch.add(event);
+						it.remove();
+					}
+				}
+
+				if (impl.saveEvents(cal, encodeEvents(batch)) == null) {
+					for (EventInfo event : batch)
+						ok &= impl.saveEvent(cal, event.getID(), event.getTitle(), event.getStartTime().getTime(), event.getEndTime().getTime(),
+						                     event.isAllDayEvent(), false, event.getDescription(), event.getLocation(), encodeReminders(event.getReminders())) != null;
+				}
+
+				queue.written(batch);
+				invalidateEvents(cal);
+			}
+
+			return ok;
+		}
+	}
+
+	/**
+	 * Applies the updates queued in write-behind mode to a getEvents result, an updated event replaces
+	 * all occurrences returned for it and is only kept if it still matches the range
+	 */
+	private Collection<EventInfo> withPendingWrites(String calendarID, long startTimeStamp, long endTimeStamp, int flags, Collection<EventInfo> col) {
+		List<EventInfo> pending;
+
+		synchronized (this) {
+			if (col == null || writeQueue == null)
+				return col;
+
+			pending = writeQueue.events(null);
+		}
+
+		if (pending.isEmpty())
+			return col;
+
+		Set<String> ids = new HashSet<String>();
+
+		for (EventInfo event : pending)
+			ids.add(event.getID());
+
+		boolean         overlapping = (flags & QUERY_OVERLAPPING) != 0;
+		List<EventInfo> events      = new ArrayList<EventInfo>(col.size() + pending.size());
+
+		for (EventInfo event : col)
+			if (!ids.contains(event.getID()))
+				events.add(event);
+
+		for (EventInfo event : pending) {
+			long start = event.getStartTime().getTime();
+			long end   = event.getEndTime().getTime();
+
+			if (calendarID.equals(event.getCalendarID()) && (overlapping ? start < endTimeStamp && end > startTimeStamp
+			                                                             : start >= startTimeStamp && end <= endTimeStamp))
+				events.add(event);
+		}
+
+		Collections.sort(events, BY_START_TIME);
+		return events;
+	}
+
+	/**
+	 * Removes event with previously returned eventID
+	 *
+	 * @param calendarID	- As returned from openCalendar
+	 * @param eventID 	- As returned from saveEvent
+	 *                   
+	 * @return If removal successful
+	 */   
+	public boolean removeEvent(String calendarID, String eventID) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (eventID == null || eventID.length() == 0)
+			throw new IllegalArgumentException("eventID required");
+
+		synchronized (this) {
+			if (writeQueue != null)
+				writeQueue.remove(eventID);
+		}
+
+		try {
+			return impl.removeEvent(calendarID, eventID);
+		}
+		finally {
+			synchronized (this) {
+				if (eventCache != null)
+					eventCache.remove(calendarID, eventID);
+			}
+		}
+	}
+
+	/**
+	 * Removes several events of the calendar. The platform removes them in bulk, e.g. one delete per 500 events
+	 * on Android and a single commit on iOS, instead of one native call per event. Ports without native support
+	 * fall back to one removeEvent call per event.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param eventIDs   - As returned from saveEvent
+	 *
+	 * @return number of events removed, -1 in case of failure or no permissions
+	 */
+	public int removeEvents(String calendarID, Collection<String> eventIDs) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (eventIDs == null)
+			throw new IllegalArgumentException("eventIDs required");
+
+		StringBuilder ids = new StringBuilder(eventIDs.size() * 8);
+
+		for (String eventID : eventIDs) {
+			if (eventID == null || eventID.length() == 0)
+				throw new IllegalArgumentException("eventID required");
+
+			CompactCodec.writeField(ids, eventID);
+		}
+
+		writePending(calendarID);
+
+		try {
+			String compact = impl.removeEvents(calendarID, ids.toString());
+
+			if (compact != null)
+				return decodeRemoved(compact);
+
+			int removed = 0;
+
+			for (String eventID : eventIDs)
+				if (impl.removeEvent(calendarID, eventID))
+					removed++;
+
+			return removed;
+		}
+		finally {
+			invalidateEvents(calendarID);
+		}
+	}
+
+	/**
+	 * Removes the events of the calendar starting between startTimeStamp (inclusive) and endTimeStamp (exclusive).
+	 * A recurring event is removed with all its occurrences if its first occurrence starts within the range,
+	 * otherwise it's kept. The platform removes the events with a single delete where it supports it.
+	 * Ports without native support fall back to removing the single events returned by getEvents for the range one by one.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Range starting time stamp
+	 * @param endTimeStamp   - Range ending time stamp
+	 *
+	 * @return number of events removed, -1 in case of failure or no permissions
+	 */
+	public int removeEvents(String calendarID, Date startTimeStamp, Date endTimeStamp) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		writePending(calendarID);
+
+		String compact;
+
+		try {
+			compact = impl.removeEventsInRange(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime());
+		}
+		finally {
+			invalidateEvents(calendarID);
+		}
+
+		if (compact != null)
+			return decodeRemoved(compact);
+
+		Collection<EventInfo> col = fetchEvents(calendarID, startTimeStamp, endTimeStamp, QUERY_TIMES_ONLY);
+
+		if (col == null)
+			return -1;
+
+		Set<String> ids = new HashSet<String>();
+
+		for (EventInfo event : col)
+			if (event.getRecurrenceRule() == null)
+				ids.add(event.getID());
+
+		return removeEvents(calendarID, ids);
+	}
+
+	private static int decodeRemoved(String compact) {
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return -1;
+
+		return reader.nextInt();
+	}
+
+	/**
+	 * Query calendar and return details as an EventInfo
+	 *
+	 * @param calendarID	- As returned from openCalendar
+	 * @param eventID    - As returned from saveEvent
+	 *                   
+	 * @return an EventInfo or null on failure, not found or no permissions.
+	 */
+	public EventInfo getEventByID(String calendarID, String eventID) {
+		return getEventByID(calendarID, eventID, 0);
+	}
+
+	/**
+	 * Query calendar and return details as an EventInfo. For a recurring event the series is returned,
+	 * with the start and end time of its first occurrence. The QUERY_SKIP_* flags limit the fields fetched.
+	 *
+	 * @param calendarID	- As returned from openCalendar
+	 * @param eventID    - As returned from saveEvent
+	 * @param flags      - QUERY_* flags or 0
+	 *                   
+	 * @return an EventInfo or null on failure, not found or no permissions.
+	 */
+	public EventInfo getEventByID(String calendarID, String eventID, int flags) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (eventID == null || eventID.length() == 0)
+			throw new IllegalArgumentException("eventID required");
+
+		synchronized (this) {
+			EventInfo pending = writeQueue != null ? writeQueue.get(eventID) : null;
+
+			if (pending != null)
+				return pending;
+		}
+
+		String compact = impl.getEventByIDCompact(calendarID, eventID, flags);
+
+		if (null != compact) {
+			Collection<EventInfo> col = decodeEvents("getEventByIDCompact", compact);
+
+			return col != null && !col.isEmpty() ? col.iterator().next() : null;
+		}
+
+		String xml = impl.getEventByID(calendarID, eventID);
+      
+		if(null != xml){
+			long parseStart = parseStart();
+			Element element = new XMLParser().parse(new CharArrayReader(xml.toCharArray()));
+//         Log.p("event XML " + xml);
+//         Log.p("parsed " + element);
+			EventInfo event = new EventInfo(findElement(element, "response", "event"));
+			parsed("getEventByID", parseStart);
+			return event;
+		}
+      
+		return null;
+	}
+
+	/**
+	 * Returns all events in the calendar between startTimeStamp and endTimeStamp
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp                       
+	 * @param endTimeStamp   - Event search ending time stamp
+	 *                       
+	 * @return collection of EventInfo's. Returns null in case of failure or no permissions
+	 */
+	public Collection<EventInfo> getEvents(String calendarID, Date startTimeStamp, Date endTimeStamp) {
+		return getEvents(calendarID, startTimeStamp, endTimeStamp, 0);
+	}
+
+	/**
+	 * Returns all events in the calendar between startTimeStamp and endTimeStamp.
+	 * A recurring event is returned once per occurrence within the range, every occurrence carries the ID
+	 * and recurrence rule of the series. Only the requested range is expanded by the platform.
+	 * Only events within the range are returned unless QUERY_OVERLAPPING is passed, on every port.
+	 * The QUERY_SKIP_* flags, e.g. QUERY_TIMES_ONLY for a month grid, limit the fields fetched by the platform.
+	 * Ports that don't support the compact queries ignore them and return every field.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp                       
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param flags          - QUERY_* flags or 0
+	 *                       
+	 * @return collection of EventInfo's. Returns null in case of failure or no permissions
+	 */
+	public Collection<EventInfo> getEvents(String calendarID, Date startTimeStamp, Date endTimeStamp, int flags) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		EventCache cache;
+
+		synchronized (this) {
+			cache = eventCache;
+
+			if (cache != null) {
+				Collection<EventInfo> col = cache.get(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), flags);
+
+				if (col != null)
+					return withPendingWrites(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), flags, withinRange(col, startTimeStamp, endTimeStamp, flags));
+			}
+		}
+
+		Collection<EventInfo> col = fetchEvents(calendarID, startTimeStamp, endTimeStamp, flags);
+
+		if (col != null && cache != null) {
+			synchronized (this) {
+				//Skip if the cache was disabled or replaced in the meantime
+				if (cache == eventCache)
+					cache.put(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), flags, col);
+			}
+
+			col = new ArrayList<EventInfo>(col);
+		}
+
+		return withPendingWrites(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), flags, withinRange(col, startTimeStamp, endTimeStamp, flags));
+	}
+
+	/**
+	 * Drops the events crossing the boundaries of the range from a native result unless QUERY_OVERLAPPING
+	 * was passed, for ports returning overlapping events regardless. Every port then applies the same rules.
+	 */
+	private Collection<EventInfo> withinRange(Collection<EventInfo> col, Date startTimeStamp, Date endTimeStamp, int flags) {
+		if (col == null || !portOverlapping || (flags & QUERY_OVERLAPPING) != 0)
+			return col;
+
+		long            start  = startTimeStamp.getTime();
+		long            end    = endTimeStamp.getTime();
+		List<EventInfo> events = new ArrayList<EventInfo>(col.size());
+
+		for (EventInfo event : col)
+			if (event.getStartTime() != null && event.getEndTime() != null
+			    && event.getStartTime().getTime() >= start && event.getEndTime().getTime() <= end)
+				events.add(event);
+
+		return events;
+	}
+
+	private Collection<EventInfo> fetchEvents(String calendarID, Date startTimeStamp, Date endTimeStamp, int flags) {
+		String compact = impl.getEventsCompact(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), flags);
+
+		if (null != compact)
+			return decodeEvents("getEventsCompact", compact);
+
+		return fetchEventsXML(calendarID, startTimeStamp, endTimeStamp);
+	}
+
+	private Collection<EventInfo> fetchEventsXML(String calendarID, Date startTimeStamp, Date endTimeStamp) {
+		String xml = impl.getEvents(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime());
+      
+		if(null != xml){
+			long parseStart = parseStart();
+			Element element = new XMLParser().parse(new CharArrayReader(xml.toCharArray()));
+
+//         Log.p("events XML " + xml);
+//         Log.p("parsed " + element);
+
+			element = findElement(element, "response", "eventList"); 
+			Collection<EventInfo> col = new ArrayList<EventInfo>();         
+
+			if (element != null) {
+				Vector<Element> events = element.getChildrenByTagName("event");
+
+				if (events != null) {
+					Enumeration<Element> enumeration = events.elements();
+
+					while (enumeration.hasMoreElements())
+						col.add(new EventInfo(enumeration.nextElement()));
+				}
+			}
+
+			parsed("getEvents", parseStart);
+			return col;         
+		}
+
+		return null;
+	}
+   
+	/**
+	 * Returns all events of the calendars between startTimeStamp and endTimeStamp
+	 *
+	 * @param calendarIDs    - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 *
+	 * @return collection of EventInfo's in start time order. Returns null in case of failure or no permissions
+	 */
+	public Collection<EventInfo> getEvents(Collection<String> calendarIDs, Date startTimeStamp, Date endTimeStamp) {
+		return getEvents(calendarIDs, startTimeStamp, endTimeStamp, 0);
+	}
+
+	/**
+	 * Returns all events of the calendars between startTimeStamp and endTimeStamp merged in start time order,
+	 * e.g. for an agenda over several calendars. The platform is asked for all calendars in one query,
+	 * EventInfo.getCalendarID tells which calendar an event belongs to.
+	 * Ports without native support fall back to one getEvents call per calendar.
+	 * The event cache is not consulted or filled by this call.
+	 *
+	 * @param calendarIDs    - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param flags          - QUERY_* flags or 0
+	 *
+	 * @return collection of EventInfo's in start time order. Returns null in case of failure or no permissions
+	 */
+	public Collection<EventInfo> getEvents(Collection<String> calendarIDs, Date startTimeStamp, Date endTimeStamp, int flags) {
+		writePending(null);
+
+		String compact = impl.getEventsForCalendars(encodeCalendarIDs(calendarIDs), startTimeStamp.getTime(), endTimeStamp.getTime(), flags);
+
+		if (null != compact)
+			return withinRange(decodeEvents("getEventsForCalendars", compact), startTimeStamp, endTimeStamp, flags);
+
+		List<EventInfo> events = new ArrayList<EventInfo>();
+
+		for (String calendarID : calendarIDs) {
+			Collection<EventInfo> col = withinRange(fetchEvents(calendarID, startTimeStamp, endTimeStamp, flags), startTimeStamp, endTimeStamp, flags);
+
+			if (col == null)
+				return null;
+
+			events.addAll(col);
+		}
+
+		Collections.sort(events, BY_START_TIME);
+		return events;
+	}
+
+	/**
+	 * @return the IDs as a CompactCodec field list for the native multi calendar queries
+	 */
+	private static String encodeCalendarIDs(Collection<String> calendarIDs) {
+		if (calendarIDs == null || calendarIDs.isEmpty())
+			throw new IllegalArgumentException("calendarIDs required");
+
+		StringBuilder ids = new StringBuilder();
+
+		for (String calendarID : calendarIDs) {
+			if (calendarID == null || calendarID.length() == 0)
+				throw new IllegalArgumentException("calendarID required");
+
+			CompactCodec.writeField(ids, calendarID);
+		}
+
+		return ids.toString();
+	}
+
+	/**
+	 * Returns all events in the calendar between startTimeStamp and endTimeStamp in columnar form
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param reuse          - Batch to refill, its previous content is cleared. Pass null to get a new batch
+	 *
+	 * @return the filled batch. Returns null in case of failure or no permissions
+	 */
+	public EventBatch getEvents(String calendarID, Date startTimeStamp, Date endTimeStamp, EventBatch reuse) {
+		return getEvents(calendarID, startTimeStamp, endTimeStamp, 0, reuse);
+	}
+
+	/**
+	 * Returns all events in the calendar between startTimeStamp and endTimeStamp in columnar form.
+	 * Large ranges allocate far fewer objects than with the Collection variant since events are stored
+	 * in primitive arrays and repeated text is shared, see EventBatch.
+	 * The event cache is not consulted or filled by this call.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param flags          - QUERY_* flags or 0
+	 * @param reuse          - Batch to refill, its previous content is cleared. Pass null to get a new batch
+	 *
+	 * @return the filled batch. Returns null in case of failure or no permissions
+	 */
+	public EventBatch getEvents(String calendarID, Date startTimeStamp, Date endTimeStamp, int flags, EventBatch reuse) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		writePending(calendarID);
+
+		EventBatch batch = reuse != null ? reuse : new EventBatch();
+		batch.clear();
+
+		String compact = impl.getEventsCompact(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), flags);
+
+		if (null != compact) {
+			long parseStart = parseStart();
+			CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+			if (!reader.hasNext() || !reader.nextBoolean())
+				return null;
+
+			int width = reader.nextInt();
+			batch.decode(reader, width);
+			parsed("getEventsCompact", parseStart);
+			return batch;
+		}
+
+		Collection<EventInfo> col = fetchEventsXML(calendarID, startTimeStamp, endTimeStamp);
+
+		if (col == null)
+			return null;
+
+		for (EventInfo event : col)
+			batch.add(event);
+
+		return batch;
+	}
+
+	/**
+	 * Returns a bounded page of the events in the calendar between startTimeStamp and endTimeStamp.
+	 * Events are ordered by start time, pass the token of the returned page to fetch the following one.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param pageToken      - As returned from EventPage.getNextPageToken, null for the first page
+	 * @param pageSize       - Maximum number of events in the page
+	 *
+	 * @return page of EventInfo's. Returns null in case of failure or no permissions
+	 */
+	public EventPage getEventsPage(String calendarID, Date startTimeStamp, Date endTimeStamp, String pageToken, int pageSize) {
+		return getEventsPage(calendarID, startTimeStamp, endTimeStamp, pageToken, pageSize, 0);
+	}
+
+	/**
+	 * Returns a bounded page of the events in the calendar between startTimeStamp and endTimeStamp.
+	 * Events are ordered by start time, pass the token of the returned page to fetch the following one.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param pageToken      - As returned from EventPage.getNextPageToken, null for the first page
+	 * @param pageSize       - Maximum number of events in the page
+	 * @param flags          - QUERY_* flags or 0
+	 *
+	 * @return page of EventInfo's. Returns null in case of failure or no permissions
+	 */
+	public EventPage getEventsPage(String calendarID, Date startTimeStamp, Date endTimeStamp, String pageToken, int pageSize, int flags) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (pageSize < 1)
+			throw new IllegalArgumentException("pageSize must be positive");
+
+		writePending(calendarID);
+
+		String compact = impl.getEventsPage(calendarID, startTimeStamp.getTime(), endTimeStamp.getTime(), pageToken, pageSize, flags);
+
+		if (null == compact) {
+			// port without paging support, everything fits in a single page
+			if (pageToken != null)
+				return null;
+
+			Collection<EventInfo> col = getEvents(calendarID, startTimeStamp, endTimeStamp, flags);
+
+			return col != null ? new EventPage(new ArrayList<EventInfo>(col), null) : null;
+		}
+
+		long parseStart = parseStart();
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return null;
+
+		String nextPageToken = reader.nextString();
+		int width = reader.nextInt();
+		List<EventInfo> events = new ArrayList<EventInfo>(pageSize);
+
+		while (reader.hasNext())
+			events.add(LazyEventInfo.read(reader, width));
+
+		parsed("getEventsPage", parseStart);
+		//withinRange returns the list itself or a filtered copy of it
+		return new EventPage((List<EventInfo>) withinRange(events, startTimeStamp, endTimeStamp, flags), nextPageToken);
+	}
+
+	/**
+	 * Returns the events of the calendar created, changed or deleted since the given time.
+	 * Unlike passing a sync token this doesn't acknowledge any changes.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param since      - Only changes at or after this time are returned
+	 *
+	 * @return changes and the sync token for the next call. Returns null in case of failure or no permissions
+	 */
+	public EventChanges getEventsModifiedSince(String calendarID, Date since) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		return fetchChanges(calendarID, since.getTime(), 0);
+	}
+
+	/**
+	 * Returns the events of the calendar created, changed or deleted since an earlier call.
+	 * The same change may be reported twice, changes are never skipped. Reading changes has no side effects,
+	 * passing a sync token acknowledges the changes returned with it, e.g. deletions are reported until then.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param syncToken  - As returned from EventChanges.getSyncToken, null to fetch all events
+	 *
+	 * @return changes and the sync token for the next call. Returns null in case of failure or no permissions
+	 */
+	public EventChanges getEventsModifiedSince(String calendarID, String syncToken) {
+		return getEventsModifiedSince(calendarID, syncToken, 0);
+	}
+
+	/**
+	 * Returns the events of the calendar created, changed or deleted since an earlier call.
+	 * The same change may be reported twice, changes are never skipped. Reading changes has no side effects,
+	 * passing a sync token acknowledges the changes returned with it, e.g. deletions are reported until then.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param syncToken  - As returned from EventChanges.getSyncToken, null to fetch all events
+	 * @param flags      - QUERY_* flags or 0
+	 *
+	 * @return changes and the sync token for the next call. Returns null in case of failure, no permissions or if the platform doesn't support it
+	 */
+	public EventChanges getEventsModifiedSince(String calendarID, String syncToken, int flags) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		long since = 0;
+
+		if (syncToken != null) {
+			try {
+				since = Long.parseLong(syncToken);
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid syncToken " + syncToken);
+			}
+		}
+
+		return fetchChanges(calendarID, since, (flags & ~CompactCodec.FLAG_ACKNOWLEDGE) | (syncToken != null ? CompactCodec.FLAG_ACKNOWLEDGE : 0));
+	}
+
+	/**
+	 * @param flags - QUERY_* flags, plus CompactCodec.FLAG_ACKNOWLEDGE if since is a sync token returned by the port
+	 */
+	private EventChanges fetchChanges(String calendarID, long since, int flags) {
+		writePending(calendarID);
+
+		String compact = impl.getEventsModifiedSince(calendarID, since, flags);
+
+		if (compact == null)
+			return null;
+
+		long parseStart = parseStart();
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return null;
+
+		String nextSyncToken = reader.nextString();
+		int deletedCount = reader.nextInt();
+		List<String> deleted = new ArrayList<String>(deletedCount);
+
+		for (int i = 0; i < deletedCount; i++)
+			deleted.add(reader.nextString());
+
+		int width = reader.nextInt();
+		List<EventInfo> changed = new ArrayList<EventInfo>();
+
+		while (reader.hasNext())
+			changed.add(LazyEventInfo.read(reader, width));
+
+		parsed("getEventsModifiedSince", parseStart);
+		return new EventChanges(changed, deleted, nextSyncToken);
+	}
+
+	/**
+	 * Returns the busy intervals of the calendars between startTimeStamp and endTimeStamp, all day events excluded
+	 *
+	 * @param calendarIDs    - As returned from openCalendar
+	 * @param startTimeStamp - Range starting time stamp
+	 * @param endTimeStamp   - Range ending time stamp
+	 *
+	 * @return merged busy intervals. Returns null in case of failure or no permissions
+	 */
+	public FreeBusy getFreeBusy(Collection<String> calendarIDs, Date startTimeStamp, Date endTimeStamp) {
+		return getFreeBusy(calendarIDs, startTimeStamp, endTimeStamp, false);
+	}
+
+	/**
+	 * Returns the busy intervals of the calendars between startTimeStamp and endTimeStamp.
+	 * Every event overlapping the range makes its time busy, overlapping and adjacent events are merged.
+	 * The platform is asked for the times of all calendars in one query and only start, end and all day flag
+	 * are transferred, no EventInfo is created. Ports without native support fall back to one getEvents call per calendar.
+	 *
+	 * @param calendarIDs    - As returned from openCalendar
+	 * @param startTimeStamp - Range starting time stamp
+	 * @param endTimeStamp   - Range ending time stamp
+	 * @param includeAllDay  - true if all day events make their days busy, false to ignore them
+	 *
+	 * @return merged busy intervals. Returns null in case of failure or no permissions
+	 */
+	public FreeBusy getFreeBusy(Collection<String> calendarIDs, Date startTimeStamp, Date endTimeStamp, boolean includeAllDay) {
+		writePending(null);
+
+		long start = startTimeStamp.getTime();
+		long end   = endTimeStamp.getTime();
+		String compact = impl.getBusyTimes(encodeCalendarIDs(calendarIDs), start, end);
+
+		if (compact == null)
+			return getFreeBusyFallback(calendarIDs, start, end, includeAllDay);
+
+		long parseStart = parseStart();
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return null;
+
+		int width = reader.nextInt();
+		long[] starts = new long[64];
+		long[] ends   = new long[64];
+		int count = 0;
+
+		while (reader.hasNext()) {
+			long eventStart = reader.nextLong();
+			long eventEnd   = reader.nextLong();
+			boolean allDay  = reader.nextBoolean();
+			reader.skip(width - CompactCodec.BUSY_FIELD_COUNT);
+
+			if (allDay && !includeAllDay)
+				continue;
+
+			if (count == starts.length) {
+				starts = grow(starts);
+				ends   = grow(ends);
+			}
+
+			starts[count] = eventStart;
+			ends[count]   = eventEnd;
+			count++;
+		}
+
+		FreeBusy freeBusy = FreeBusy.merge(start, end, starts, ends, count);
+		parsed("getBusyTimes", parseStart);
+		return freeBusy;
+	}
+
+	private FreeBusy getFreeBusyFallback(Collection<String> calendarIDs, long start, long end, boolean includeAllDay) {
+		List<EventInfo> events = new ArrayList<EventInfo>();
+
+		for (String calendarID : calendarIDs) {
+			Collection<EventInfo> col = getEvents(calendarID, new Date(start), new Date(end), QUERY_OVERLAPPING | QUERY_TIMES_ONLY);
+
+			if (col == null)
+				return null;
+
+			events.addAll(col);
+		}
+
+		long[] starts = new long[events.size()];
+		long[] ends   = new long[events.size()];
+		int count = 0;
+
+		for (EventInfo event : events) {
+			if (event.getStartTime() == null || event.getEndTime() == null || (event.isAllDayEvent() && !includeAllDay))
+				continue;
+
+			starts[count] = event.getStartTime().getTime();
+			ends[count]   = event.getEndTime().getTime();
+			count++;
+		}
+
+		return FreeBusy.merge(start, end, starts, ends, count);
+	}
+
+	/**
+	 * Counts the events in the calendar between startTimeStamp and endTimeStamp
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 *
+	 * @return number of events, -1 in case of failure or no permissions
+	 */
+	public int getEventCount(String calendarID, Date startTimeStamp, Date endTimeStamp) {
+		return getEventCount(calendarID, startTimeStamp, endTimeStamp, 0);
+	}
+
+	/**
+	 * Counts the events in the calendar between startTimeStamp and endTimeStamp, with the same conditions as getEvents
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param flags          - QUERY_* flags or 0, only QUERY_OVERLAPPING affects the count
+	 *
+	 * @return number of events, -1 in case of failure or no permissions
+	 */
+	public int getEventCount(String calendarID, Date startTimeStamp, Date endTimeStamp, int flags) {
+		int[] counts = getEventCounts(calendarID, new long[] { startTimeStamp.getTime(), endTimeStamp.getTime() }, flags);
+
+		return counts != null ? counts[0] : -1;
+	}
+
+	/**
+	 * Counts the events in the calendar per day, e.g. for the dots of a month grid.
+	 * Days start at local midnight, the first one is the day containing startTimeStamp.
+	 * With QUERY_OVERLAPPING an event counts on every day it overlaps, otherwise only on the day containing it.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Any time on the first day
+	 * @param days           - Number of days
+	 * @param flags          - QUERY_* flags or 0, only QUERY_OVERLAPPING affects the counts
+	 *
+	 * @return one count per day. Returns null in case of failure or no permissions
+	 */
+	public int[] getEventCountsPerDay(String calendarID, Date startTimeStamp, int days, int flags) {
+		if (days < 1)
+			throw new IllegalArgumentException("days must be positive");
+
+		Calendar cal = Calendar.getInstance();
+		long[] boundaries = new long[days + 1];
+		boundaries[0] = startOfDay(cal, startTimeStamp.getTime());
+
+		// a day is 23 to 25 hours long, 36 hours after a midnight always falls on the next day
+		for (int i = 1; i <= days; i++)
+			boundaries[i] = startOfDay(cal, boundaries[i - 1] + 36 * 60 * 60 * 1000L);
+
+		return getEventCounts(calendarID, boundaries, flags);
+	}
+
+	/**
+	 * Counts the events in the calendar per time bucket, bucket i being [boundaries[i], boundaries[i + 1]).
+	 * The platform counts the events in a single query returning only the counts, no EventInfo is created.
+	 * Ports without native support fall back to a getEvents call over the whole range with QUERY_TIMES_ONLY.
+	 * Every port counts with the range rules of getEvents, including ports whose queries return overlapping
+	 * events regardless of QUERY_OVERLAPPING, so a single bucket counts getEvents(...).size() events.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param boundaries - Ascending bucket boundaries (unix time), at least two
+	 * @param flags      - QUERY_* flags or 0, with QUERY_OVERLAPPING an event counts in every bucket it overlaps,
+	 *                     otherwise only in the bucket containing it
+	 *
+	 * @return one count per bucket. Returns null in case of failure or no permissions
+	 */
+	public int[] getEventCounts(String calendarID, long[] boundaries, int flags) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (boundaries == null || boundaries.length < 2)
+			throw new IllegalArgumentException("at least two boundaries required");
+
+		StringBuilder sb = new StringBuilder(boundaries.length * 16);
+
+		for (int i = 0; i < boundaries.length; i++) {
+			if (i > 0 && boundaries[i] < boundaries[i - 1])
+				throw new IllegalArgumentException("boundaries must be ascending");
+
+			CompactCodec.writeField(sb, boundaries[i]);
+		}
+
+		writePending(calendarID);
+
+		String compact = impl.getEventCounts(calendarID, sb.toString(), flags);
+
+		if (compact == null)
+			return getEventCountsFallback(calendarID, boundaries, flags);
+
+		long parseStart = parseStart();
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return null;
+
+		int[] counts = new int[reader.nextInt()];
+
+		if (counts.length != boundaries.length - 1)
+			return null;
+
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = reader.nextInt();
+
+		parsed("getEventCounts", parseStart);
+		return counts;
+	}
+
+	private int[] getEventCountsFallback(String calendarID, long[] boundaries, int flags) {
+		//getEvents drops the events crossing the range unless QUERY_OVERLAPPING is passed, see withinRange
+		Collection<EventInfo> col = getEvents(calendarID, new Date(boundaries[0]), new Date(boundaries[boundaries.length - 1]),
+		                                      (flags & QUERY_OVERLAPPING) | QUERY_TIMES_ONLY);
+
+		if (col == null)
+			return null;
+
+		int[] counts = new int[boundaries.length - 1];
+		boolean overlapping = (flags & QUERY_OVERLAPPING) != 0;
+
+		for (EventInfo event : col) {
+			if (event.getStartTime() == null || event.getEndTime() == null)
+				continue;
+
+			EventHistogram.add(boundaries, event.getStartTime().getTime(), event.getEndTime().getTime(), overlapping, counts);
+		}
+
+		return counts;
+	}
+
+	private static long startOfDay(Calendar cal, long time) {
+		cal.setTime(new Date(time));
+		cal.set(Calendar.HOUR_OF_DAY, 0);
+		cal.set(Calendar.MINUTE,      0);
+		cal.set(Calendar.SECOND,      0);
+		cal.set(Calendar.MILLISECOND, 0);
+		return cal.getTime().getTime();
+	}
+
+	private static long[] grow(long[] array) {
+		long[] result = new long[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	/**
+	 * Iterates over all events in the calendar between startTimeStamp and endTimeStamp fetching them
+	 * lazily one page at a time, so memory use doesn't depend on the size of the range.
+	 * The iterator throws an IllegalStateException if a page can't be fetched.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param pageSize       - Number of events fetched per native call
+	 *
+	 * @return iterator over the events in start time order
+	 */
+	public Iterator<EventInfo> iterateEvents(String calendarID, Date startTimeStamp, Date endTimeStamp, int pageSize) {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		if (pageSize < 1)
+			throw new IllegalArgumentException("pageSize must be positive");
+
+		return new PagedEventIterator(this, calendarID, startTimeStamp, endTimeStamp, pageSize);
+	}
+
+	/**
+	 * Creates the events of an iCalendar (RFC 5545) feed in the calendar. The feed is read one event at a time
+	 * with an ICalendarReader and saved with one saveEvents call per IMPORT_BATCH_SIZE events, so memory use doesn't
+	 * depend on the size of the feed. Every VEVENT creates a new event, importing a feed twice duplicates its events.
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param in         - UTF-8 encoded iCalendar data, left open
+	 *
+	 * @return number of events created, -1 if the platform rejected a batch. The batches before it stay saved
+	 */
+	public int importICalendar(String calendarID, InputStream in) throws IOException {
+		if (calendarID == null || calendarID.length() == 0)
+			throw new IllegalArgumentException("calendarID required");
+
+		ICalendarReader reader   = new ICalendarReader(in);
+		List<EventInfo> batch    = new ArrayList<EventInfo>(IMPORT_BATCH_SIZE);
+		int             imported = 0;
+		EventInfo       event;
+
+		do {
+			event = reader.next();
+
+			if (event != null)
+				batch.add(event);
+
+			if (batch.size() == IMPORT_BATCH_SIZE || (event == null && !batch.isEmpty())) {
+				if (saveEvents(calendarID, batch) == null)
+					return -1;
+
+				imported += batch.size();
+				batch.clear();
+			}
+		} while (event != null);
+
+		return imported;
+	}
+
+	/**
+	 * Writes the events of the calendar between startTimeStamp and endTimeStamp as an iCalendar (RFC 5545) document.
+	 * The events are fetched one page at a time and written with an ICalendarWriter as they arrive, so memory use
+	 * doesn't depend on the size of the range. A recurring event is written once as its series with the recurrence rule.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param out            - Destination, written as UTF-8 and left open
+	 *
+	 * @return number of events written, -1 if the events couldn't be fetched. The document is incomplete in that case
+	 */
+	public int exportICalendar(String calendarID, Date startTimeStamp, Date endTimeStamp, OutputStream out) throws IOException {
+		ICalendarWriter writer   = new ICalendarWriter(out);
+		Set<String>     series   = new HashSet<String>();
+		int             exported = 0;
+
+		EventPage page = null;
+
+		//One page at a time, a page that can't be fetched fails the export
+		do {
+			page = getEventsPage(calendarID, startTimeStamp, endTimeStamp, page != null ? page.getNextPageToken() : null, EXPORT_PAGE_SIZE);
+
+			if (page == null)
+				return -1;
+
+			for (EventInfo event : page.getEvents()) {
+				if (event.isRecurring()) {
+					// the range holds one entry per occurrence, the series is written for the first one
+					if (!series.add(event.getID()))
+						continue;
+
+					EventInfo first = getEventByID(calendarID, event.getID());
+
+					if (first != null)
+						event = first;
+				}
+
+				writer.write(event);
+				exported++;
+			}
+		} while (page.hasMore());
+
+		writer.finish();
+		return exported;
+	}
+
+	/**
+	 * Asynchronous version of hasPermissions, e.g. to keep the iOS permission prompt off the EDT.
+	 * Like all *Async methods the request runs on the calendar worker thread after all earlier requests
+	 * and the callback is called on the EDT.
+	 *
+	 * @param callback - Receives the result of hasPermissions
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<Boolean> hasPermissionsAsync(Callback<Boolean> callback) {
+		return worker.submit(new CalendarTask<Boolean>(callback) {
+			Boolean execute() {
+				return hasPermissions() ? Boolean.TRUE : Boolean.FALSE;
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of getCalendars
+	 *
+	 * @param callback - Receives the result of getCalendars
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<Collection<String>> getCalendarsAsync(Callback<Collection<String>> callback) {
+		return worker.submit(new CalendarTask<Collection<String>>(callback) {
+			Collection<String> execute() {
+				return getCalendars();
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of openCalendar
+	 *
+	 * @param calendarName      - Name of calendar to be opened/created. Pass null for default calendar on the device
+	 * @param createIfNotExists - Indicates if a calendar must be created if there is no calendar found by the name provided
+	 * @param callback          - Receives the result of openCalendar
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<String> openCalendarAsync(final String calendarName, final boolean createIfNotExists, Callback<String> callback) {
+		return worker.submit(new CalendarTask<String>(callback) {
+			String execute() {
+				return openCalendar(calendarName, createIfNotExists);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of saveEvent
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param eventID        - Event Identifier. Pass null for new Events
+	 * @param title          - Title of the Calendar Event
+	 * @param startTimeStamp - Event starting time stamp
+	 * @param endTimeStamp   - Event ending time stamp
+	 * @param allDayEvent    - The event is an all day event
+	 * @param notes          - Any notes for the event
+	 * @param location       - Location of the event
+	 * @param reminders      - alarm offsets (in seconds). Pass null for no alarms
+	 * @param callback       - Receives the result of saveEvent
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<String> saveEventAsync(final String calendarID,
+											   final String eventID,
+											   final String title,
+											   final Date startTimeStamp,
+											   final Date endTimeStamp,
+											   final boolean allDayEvent,
+											   final String notes,
+											   final String location,
+											   final Collection<Integer> reminders,
+											   Callback<String> callback) {
+		return worker.submit(new CalendarTask<String>(callback) {
+			String execute() {
+				return saveEvent(calendarID, eventID, title, startTimeStamp, endTimeStamp, allDayEvent, notes, location, reminders);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of saveEvents
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param events     - Events to save. Events with a null ID are created, others are updated
+	 * @param callback   - Receives the result of saveEvents
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<List<String>> saveEventsAsync(final String calendarID, final Collection<EventInfo> events, Callback<List<String>> callback) {
+		return worker.submit(new CalendarTask<List<String>>(callback) {
+			List<String> execute() {
+				return saveEvents(calendarID, events);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of removeEvent
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param eventID    - As returned from saveEvent
+	 * @param callback   - Receives the result of removeEvent
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<Boolean> removeEventAsync(final String calendarID, final String eventID, Callback<Boolean> callback) {
+		return worker.submit(new CalendarTask<Boolean>(callback) {
+			Boolean execute() {
+				return removeEvent(calendarID, eventID) ? Boolean.TRUE : Boolean.FALSE;
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of getEventByID
+	 *
+	 * @param calendarID - As returned from openCalendar
+	 * @param eventID    - As returned from saveEvent
+	 * @param callback   - Receives the result of getEventByID
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<EventInfo> getEventByIDAsync(final String calendarID, final String eventID, Callback<EventInfo> callback) {
+		return worker.submit(new CalendarTask<EventInfo>(callback) {
+			EventInfo execute() {
+				return getEventByID(calendarID, eventID);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous version of getEvents. Cancel the returned task when the range is no longer needed,
+	 * e.g. when the user scrolled on, so that superseded reads don't delay newer ones.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param callback       - Receives the result of getEvents
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<Collection<EventInfo>> getEventsAsync(String calendarID, Date startTimeStamp, Date endTimeStamp, Callback<Collection<EventInfo>> callback) {
+		return getEventsAsync(calendarID, startTimeStamp, endTimeStamp, 0, callback);
+	}
+
+	/**
+	 * Asynchronous version of getEvents. Cancel the returned task when the range is no longer needed,
+	 * e.g. when the user scrolled on, so that superseded reads don't delay newer ones.
+	 *
+	 * @param calendarID     - As returned from openCalendar
+	 * @param startTimeStamp - Event search starting time stamp
+	 * @param endTimeStamp   - Event search ending time stamp
+	 * @param flags          - QUERY_* flags or 0
+	 * @param callback       - Receives the result of getEvents
+	 *
+	 * @return handle to cancel the request
+	 */
+	public CalendarTask<Collection<EventInfo>> getEventsAsync(final String calendarID, final Date startTimeStamp, final Date endTimeStamp, final int flags, Callback<Collection<EventInfo>> callback) {
+		return worker.submit(new CalendarTask<Collection<EventInfo>>(callback) {
+			Collection<EventInfo> execute() {
+				return getEvents(calendarID, startTimeStamp, endTimeStamp, flags);
+			}
+		});
+	}
+
+	/**
+	 * Decodes a compact query response (see CompactCodec) straight into EventInfo's
+	 *
+	 * @param compact - Response of one of the compact native queries
+	 *
+	 * @return collection of EventInfo's. Null if the native side reported a failure
+	 */
+	private Collection<EventInfo> decodeEvents(String operation, String compact) {
+		long parseStart = parseStart();
+		CompactCodec.Reader reader = new CompactCodec.Reader(compact);
+
+		if (!reader.hasNext() || !reader.nextBoolean())
+			return null;
+
+		int width = reader.nextInt();
+		Collection<EventInfo> col = new ArrayList<EventInfo>();
+
+		while (reader.hasNext())
+			col.add(LazyEventInfo.read(reader, width));
+
+		parsed(operation, parseStart);
+		return col;
+	}
+
+	/**
+	 * @return start time of decoding a native response, 0 while metrics are disabled
+	 */
+	private long parseStart() {
+		return metrics != null ? System.currentTimeMillis() : 0;
+	}
+
+	/**
+	 * Records the time spent decoding the response of a native operation
+	 */
+	private void parsed(String operation, long parseStart) {
+		CalendarMetrics registry = metrics;
+
+		if (registry != null && parseStart != 0)
+			registry.operation(operation).recordParse(System.currentTimeMillis() - parseStart);
+	}
+   
+   private static Element findElement(Element element, String... tags) {
+      if (element != null) {
+         for (String tag : tags) {
+            element = element.getFirstChildByTagName(tag);
+            
+//            Log.p("child " + element);
+            
+            if (element == null)
+               break;            
+         }
+      }
+      
+      return element;
+   }
 
 }
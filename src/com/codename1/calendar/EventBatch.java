@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import com.codename1.calendar.impl.CompactCodec;
+import java.util.Date;
+
+/**
+ * Columnar result of a range query, see DeviceCalendar.getEvents(String, Date, Date, int, EventBatch).
+ *
+ * Events are stored in parallel primitive arrays instead of one EventInfo per event. Time stamps are kept as longs,
+ * the all day flags as a packed bit set and the reminders of all events in one flat array. Text fields go through
+ * a string pool that is shared by the whole batch, so repeated titles or locations are held once.
+ * EventInfo objects are only created when getEvent is called.
+ *
+ * A batch can be passed back to getEvents to be refilled, it then keeps its arrays and only grows them when needed.
+ * Not thread safe.
+ */
+public class EventBatch {
+
+   /**
+    * Returned by the time stamp getters when the platform didn't report the value
+    */
+   public static final long NO_TIME = Long.MIN_VALUE;
+
+   private static final int INITIAL_CAPACITY = 16;
+
+   private final CompactCodec.StringPool pool = new CompactCodec.StringPool();
+
+   private int      size;
+   private String[] ids           = new String[INITIAL_CAPACITY];
+   private String[] titles        = new String[INITIAL_CAPACITY];
+   private String[] descriptions  = new String[INITIAL_CAPACITY];
+   private String[] locations     = new String[INITIAL_CAPACITY];
+   private String[] rules         = new String[INITIAL_CAPACITY];
+   private String[] calendarIDs   = new String[INITIAL_CAPACITY];
+   private long[]   startTimes    = new long[INITIAL_CAPACITY];
+   private long[]   endTimes      = new long[INITIAL_CAPACITY];
+   private long[]   createdTimes  = new long[INITIAL_CAPACITY];
+   private long[]   modifiedTimes = new long[INITIAL_CAPACITY];
+   private long[]   allDay        = new long[INITIAL_CAPACITY / 64 + 1];
+
+   // reminders of event i are reminders[reminderStart[i], reminderStart[i + 1])
+   private int[]    reminderStart = new int[INITIAL_CAPACITY + 1];
+   private int[]    reminders     = new int[INITIAL_CAPACITY];
+
+   public EventBatch() {
+   }
+
+   /**
+    * @return Number of events in the batch
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Removes all events keeping the allocated arrays for the next query
+    */
+   public void clear() {
+      for (int i = 0; i < size; i++) {
+         ids[i]          = null;
+         titles[i]       = null;
+         descriptions[i] = null;
+         locations[i]    = null;
+         rules[i]        = null;
+         calendarIDs[i]  = null;
+      }
+      for (int i = 0; i < allDay.length; i++) {
+         allDay[i] = 0;
+      }
+      size = 0;
+      pool.clear();
+   }
+
+   public String getID(int index) {
+      check(index);
+      return ids[index];
+   }
+
+   public String getTitle(int index) {
+      check(index);
+      return orEmpty(titles[index]);
+   }
+
+   public String getDescription(int index) {
+      check(index);
+      return orEmpty(descriptions[index]);
+   }
+
+   public String getLocation(int index) {
+      check(index);
+      return orEmpty(locations[index]);
+   }
+
+   /**
+    * @return RRULE value of the series the event belongs to, null for single events
+    */
+   public String getRecurrenceRule(int index) {
+      check(index);
+      return rules[index];
+   }
+
+   /**
+    * @return ID of the calendar holding the event, null if the platform didn't report it
+    */
+   public String getCalendarID(int index) {
+      check(index);
+      return calendarIDs[index];
+   }
+
+   /**
+    * @return start of the event in milliseconds, NO_TIME if unknown
+    */
+   public long getStartTime(int index) {
+      check(index);
+      return startTimes[index];
+   }
+
+   /**
+    * @return end of the event in milliseconds, NO_TIME if unknown
+    */
+   public long getEndTime(int index) {
+      check(index);
+      return endTimes[index];
+   }
+
+   /**
+    * @return when the event was created in milliseconds, NO_TIME if the platform doesn't track it
+    */
+   public long getCreatedTime(int index) {
+      check(index);
+      return createdTimes[index];
+   }
+
+   /**
+    * @return when the event was last changed in milliseconds, NO_TIME if the platform doesn't track it
+    */
+   public long getLastModifiedTime(int index) {
+      check(index);
+      return modifiedTimes[index];
+   }
+
+   public boolean isAllDayEvent(int index) {
+      check(index);
+      return (allDay[index >> 6] & (1L << (index & 63))) != 0;
+   }
+
+   /**
+    * @return number of reminders of the event
+    */
+   public int getReminderCount(int index) {
+      check(index);
+      return reminderStart[index + 1] - reminderStart[index];
+   }
+
+   /**
+    * @param index    - Event index
+    * @param reminder - Reminder index, below getReminderCount(index)
+    * @return alarm offset in seconds
+    */
+   public int getReminder(int index, int reminder) {
+      if (reminder < 0 || reminder >= getReminderCount(index))
+         throw new IndexOutOfBoundsException("reminder " + reminder);
+
+      return reminders[reminderStart[index] + reminder];
+   }
+
+   /**
+    * @return a copy of the alarm offsets (in seconds) of the event
+    */
+   public int[] getReminders(int index) {
+      int[] result = new int[getReminderCount(index)];
+      System.arraycopy(reminders, reminderStart[index], result, 0, result.length);
+      return result;
+   }
+
+   /**
+    * Creates an EventInfo view of one event. A new object is returned on every call.
+    */
+   public EventInfo getEvent(int index) {
+      check(index);
+      return new EventInfo(ids[index], titles[index], descriptions[index], locations[index],
+                           toDate(startTimes[index]), toDate(endTimes[index]), isAllDayEvent(index), getReminders(index),
+                           rules[index], toDate(createdTimes[index]), toDate(modifiedTimes[index]), calendarIDs[index]);
+   }
+
+   /**
+    * Appends the records of a compact query response
+    *
+    * @param reader - Positioned at the first field of the first record
+    * @param width  - Number of fields per record in the response
+    */
+   void decode(CompactCodec.Reader reader, int width) {
+      while (reader.hasNext()) {
+         int i = size;
+         ensureCapacity(i + 1);
+
+         ids[i]          = reader.nextString();
+         titles[i]       = reader.nextString(pool);
+         descriptions[i] = reader.nextString(pool);
+         locations[i]    = reader.nextString(pool);
+         startTimes[i]   = reader.nextLong(NO_TIME);
+         endTimes[i]     = reader.nextLong(NO_TIME);
+         setAllDay(i, reader.nextBoolean());
+
+         int offset = reminderStart[i];
+         ensureReminderCapacity(offset + reader.peekIntListSize());
+         reminderStart[i + 1] = offset + reader.nextIntList(reminders, offset);
+
+         createdTimes[i]  = width > 8 ? reader.nextLong(NO_TIME) : NO_TIME;
+         modifiedTimes[i] = width > 9 ? reader.nextLong(NO_TIME) : NO_TIME;
+         rules[i]         = width > 10 ? reader.nextString(pool) : null;
+         calendarIDs[i]   = width > 11 ? reader.nextString(pool) : null;
+         reader.skip(width - CompactCodec.EVENT_FIELD_COUNT);
+         size++;
+      }
+   }
+
+   /**
+    * Appends an event, used when the platform only answers in XML
+    */
+   void add(EventInfo event) {
+      int i = size;
+      ensureCapacity(i + 1);
+
+      ids[i]           = event.getID();
+      titles[i]        = intern(event.getTitle());
+      descriptions[i]  = intern(event.getDescription());
+      locations[i]     = intern(event.getLocation());
+      rules[i]         = intern(event.getRecurrenceRule());
+      calendarIDs[i]   = intern(event.getCalendarID());
+      startTimes[i]    = toTime(event.getStartTime());
+      endTimes[i]      = toTime(event.getEndTime());
+      createdTimes[i]  = toTime(event.getCreatedTime());
+      modifiedTimes[i] = toTime(event.getLastModifiedTime());
+      setAllDay(i, event.isAllDayEvent());
+
+      int[] rems   = event.getReminders();
+      int   offset = reminderStart[i];
+      ensureReminderCapacity(offset + rems.length);
+      System.arraycopy(rems, 0, reminders, offset, rems.length);
+      reminderStart[i + 1] = offset + rems.length;
+      size++;
+   }
+
+   private String intern(String s) {
+      return s != null ? pool.get(s, 0, s.length()) : null;
+   }
+
+   private void setAllDay(int index, boolean value) {
+      if (value)
+         allDay[index >> 6] |= 1L << (index & 63);
+   }
+
+   private void check(int index) {
+      if (index < 0 || index >= size)
+         throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+   }
+
+   private void ensureCapacity(int capacity) {
+      if (capacity <= ids.length)
+         return;
+
+      int length = Math.max(capacity, ids.length * 2);
+
+      ids           = grow(ids, length);
+      titles        = grow(titles, length);
+      descriptions  = grow(descriptions, length);
+      locations     = grow(locations, length);
+      rules         = grow(rules, length);
+      calendarIDs   = grow(calendarIDs, length);
+      startTimes    = grow(startTimes, length);
+      endTimes      = grow(endTimes, length);
+      createdTimes  = grow(createdTimes, length);
+      modifiedTimes = grow(modifiedTimes, length);
+      allDay        = grow(allDay, length / 64 + 1);
+
+      int[] starts = new int[length + 1];
+      System.arraycopy(reminderStart, 0, starts, 0, size + 1);
+      reminderStart = starts;
+   }
+
+   private void ensureReminderCapacity(int capacity) {
+      if (capacity <= reminders.length)
+         return;
+
+      int[] grown = new int[Math.max(capacity, reminders.length * 2)];
+      System.arraycopy(reminders, 0, grown, 0, reminderStart[size]);
+      reminders = grown;
+   }
+
+   private static String[] grow(String[] array, int length) {
+      String[] grown = new String[length];
+      System.arraycopy(array, 0, grown, 0, array.length);
+      return grown;
+   }
+
+   private static long[] grow(long[] array, int length) {
+      long[] grown = new long[length];
+      System.arraycopy(array, 0, grown, 0, array.length);
+      return grown;
+   }
+
+   private static String orEmpty(String s) {
+      return s != null ? s : "";
+   }
+
+   private static Date toDate(long time) {
+      return time != NO_TIME ? new Date(time) : null;
+   }
+
+   private static long toTime(Date date) {
+      return date != null ? date.getTime() : NO_TIME;
+   }
+}
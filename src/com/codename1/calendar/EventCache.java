@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.codename1.calendar.impl.CompactCodec;
+
+/**
+ * In memory cache of getEvents results used by DeviceCalendar.
+ *
+ * Every fetched range is kept as a segment holding the events of that range indexed by start time.
+ * A query is answered from memory when a segment of the same calendar covers the whole requested range,
+ * the segment's events are then filtered with the same rules the native query applies.
+ * Segments are evicted least recently used first once the total number of cached events exceeds the limit.
+ * Not thread safe, DeviceCalendar synchronizes access.
+ */
+class EventCache {
+   private final LinkedHashMap<String, Segment> segments = new LinkedHashMap<String, Segment>(16, 0.75f, true);
+
+   private final boolean overlapping;
+   private int           maxEvents;
+   private int           size;
+   private int           hits;
+   private int           misses;
+
+   /**
+    * @param maxEvents   - Upper bound for the total number of cached events
+    * @param overlapping - true if the platform returns events overlapping the queried range,
+    *                      false if it only returns events contained in it
+    */
+   EventCache(int maxEvents, boolean overlapping) {
+      this.maxEvents   = maxEvents;
+      this.overlapping = overlapping;
+   }
+
+   /**
+    * Looks up a range in the cache and updates the hit/miss counters
+    *
+    * @return the cached events of the range, null if no cached segment covers it
+    */
+   Collection<EventInfo> get(String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+      for (Segment segment : segments.values()) {
+         if (segment.covers(calendarID, startTimeStamp, endTimeStamp, flags)) {
+            // touch the segment so it becomes the most recently used one
+            segments.get(segment.key);
+            hits++;
+            return segment.query(startTimeStamp, endTimeStamp, isOverlapping(flags));
+         }
+      }
+
+      misses++;
+      return null;
+   }
+
+   /**
+    * Stores the result of a native range query
+    */
+   void put(String calendarID, long startTimeStamp, long endTimeStamp, int flags, Collection<EventInfo> events) {
+      if (events.size() > maxEvents)
+         return;
+
+      Segment segment = new Segment(calendarID, startTimeStamp, endTimeStamp, flags, isOverlapping(flags));
+
+      for (EventInfo event : events)
+         if (!segment.add(event))
+            return;
+
+      // segments within the new one are redundant now
+      for (Iterator<Segment> it = segments.values().iterator(); it.hasNext();) {
+         Segment other = it.next();
+
+         if (segment.covers(other.calendarID, other.startTimeStamp, other.endTimeStamp, other.flags)) {
+            size -= other.size;
+            it.remove();
+         }
+      }
+
+      segments.put(segment.key, segment);
+      size += segment.size;
+      trim();
+   }
+
+   /**
+    * Drops the given event from every cached segment of the calendar
+    */
+   void remove(String calendarID, String eventID) {
+      for (Segment segment : segments.values())
+         if (segment.calendarID.equals(calendarID))
+            size -= segment.remove(eventID);
+   }
+
+   /**
+    * Drops every cached segment of the calendar
+    */
+   void invalidate(String calendarID) {
+      for (Iterator<Segment> it = segments.values().iterator(); it.hasNext();) {
+         Segment segment = it.next();
+
+         if (segment.calendarID.equals(calendarID)) {
+            size -= segment.size;
+            it.remove();
+         }
+      }
+   }
+
+   /**
+    * @param maxEvents - Upper bound for the total number of returned events
+    * @return the cached ranges, most recently used first, as long as they fit into maxEvents
+    */
+   List<EventSnapshot.Range> ranges(int maxEvents) {
+      List<Segment> ordered = new ArrayList<Segment>(segments.values());
+      List<EventSnapshot.Range> result = new ArrayList<EventSnapshot.Range>();
+      int total = 0;
+
+      for (int i = ordered.size() - 1; i >= 0; i--) {
+         Segment segment = ordered.get(i);
+
+         if (total + segment.size > maxEvents)
+            break;
+
+         result.add(new EventSnapshot.Range(segment.calendarID, segment.startTimeStamp, segment.endTimeStamp, segment.flags, segment.events()));
+         total += segment.size;
+      }
+
+      return result;
+   }
+
+   void clear() {
+      segments.clear();
+      size = 0;
+   }
+
+   void setMaxEvents(int maxEvents) {
+      this.maxEvents = maxEvents;
+      trim();
+   }
+
+   int getHits() {
+      return hits;
+   }
+
+   int getMisses() {
+      return misses;
+   }
+
+   int size() {
+      return size;
+   }
+
+   /**
+    * @return true if a native query with the given flags returns the events overlapping the range
+    */
+   private boolean isOverlapping(int flags) {
+      return overlapping || (flags & CompactCodec.FLAG_OVERLAPPING) != 0;
+   }
+
+   private void trim() {
+      for (Iterator<Segment> it = segments.values().iterator(); size > maxEvents && it.hasNext();) {
+         size -= it.next().size;
+         it.remove();
+      }
+   }
+
+   /**
+    * Events of one fetched range, indexed by start time. The longest event duration is tracked
+    * so that an overlap lookup only has to look back that far from the start of the range.
+    */
+   private static class Segment {
+      final String calendarID;
+      final long   startTimeStamp;
+      final long   endTimeStamp;
+      final int    flags;
+      final boolean overlapping;
+      final String key;
+
+      final TreeMap<Long, List<EventInfo>> byStart = new TreeMap<Long, List<EventInfo>>();
+      long maxDuration;
+      int  size;
+
+      Segment(String calendarID, long startTimeStamp, long endTimeStamp, int flags, boolean overlapping) {
+         this.calendarID     = calendarID;
+         this.startTimeStamp = startTimeStamp;
+         this.endTimeStamp   = endTimeStamp;
+         this.flags          = flags;
+         this.overlapping    = overlapping;
+         this.key            = calendarID + ':' + startTimeStamp + ':' + endTimeStamp + ':' + flags;
+      }
+
+      /**
+       * @return false if the event can't be indexed
+       */
+      boolean add(EventInfo event) {
+         if (event.getStartTime() == null || event.getEndTime() == null)
+            return false;
+
+         long start = event.getStartTime().getTime();
+         Long key   = Long.valueOf(start);
+         List<EventInfo> list = byStart.get(key);
+
+         if (list == null) {
+            list = new ArrayList<EventInfo>(1);
+            byStart.put(key, list);
+         }
+
+         list.add(event);
+         maxDuration = Math.max(maxDuration, event.getEndTime().getTime() - start);
+         size++;
+         return true;
+      }
+
+      /**
+       * A segment fetched while skipping some data can only serve queries that skip it as well.
+       * A segment holding only the events within its range lacks the ones crossing its start, so it can't serve overlap queries.
+       */
+      boolean covers(String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+         return this.calendarID.equals(calendarID)
+             && this.startTimeStamp <= startTimeStamp
+             && this.endTimeStamp   >= endTimeStamp
+             && (this.flags & ~flags & ~CompactCodec.FLAG_OVERLAPPING) == 0
+             && (overlapping || (flags & CompactCodec.FLAG_OVERLAPPING) == 0);
+      }
+
+      Collection<EventInfo> query(long startTimeStamp, long endTimeStamp, boolean overlapping) {
+         Collection<EventInfo> col = new ArrayList<EventInfo>();
+         long from = overlapping ? startTimeStamp - maxDuration : startTimeStamp;
+
+         for (List<EventInfo> list : byStart.subMap(Long.valueOf(from), true, Long.valueOf(endTimeStamp), true).values()) {
+            for (EventInfo event : list) {
+               long start = event.getStartTime().getTime();
+               long end   = event.getEndTime().getTime();
+               boolean match = overlapping ? start < endTimeStamp && end > startTimeStamp
+                                           : start >= startTimeStamp && end <= endTimeStamp;
+               if (match)
+                  col.add(event);
+            }
+         }
+
+         return col;
+      }
+
+      /**
+       * @return all events of the segment in start order
+       */
+      List<EventInfo> events() {
+         List<EventInfo> events = new ArrayList<EventInfo>(size);
+
+         for (List<EventInfo> list : byStart.values())
+            events.addAll(list);
+
+         return events;
+      }
+
+      /**
+       * @return number of events removed
+       */
+      int remove(String eventID) {
+         int removed = 0;
+
+         for (Iterator<Map.Entry<Long, List<EventInfo>>> it = byStart.entrySet().iterator(); it.hasNext();) {
+            List<EventInfo> list = it.next().getValue();
+
+            for (int i = list.size() - 1; i >= 0; i--) {
+               if (eventID.equals(list.get(i).getID())) {
+                  list.remove(i);
+                  removed++;
+               }
+            }
+
+            if (list.isEmpty())
+               it.remove();
+         }
+
+         size -= removed;
+         return removed;
+      }
+   }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.List;
+
+/**
+ * Events created, changed or deleted since a point in time, returned by DeviceCalendar.getEventsModifiedSince
+ */
+public class EventChanges {
+   private final List<EventInfo> changed;
+   private final List<String>    deleted;
+   private final String          syncToken;
+
+   EventChanges(List<EventInfo> changed, List<String> deleted, String syncToken) {
+      this.changed   = changed;
+      this.deleted   = deleted;
+      this.syncToken = syncToken;
+   }
+
+   /**
+    * @return events created or changed since the requested point in time
+    */
+   public List<EventInfo> getChanged() {
+      return changed;
+   }
+
+   /**
+    * @return IDs of events deleted since the requested point in time, as far as the platform keeps track of deletions
+    */
+   public List<String> getDeleted() {
+      return deleted;
+   }
+
+   /**
+    * @return token to pass to DeviceCalendar.getEventsModifiedSince for the changes following this result
+    */
+   public String getSyncToken() {
+      return syncToken;
+   }
+}
@@ -13,12 +13,15 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.Vector;
 
+import com.codename1.calendar.impl.CompactCodec;
 import com.codename1.xml.Element;
 
 /**
 *
 */
 public class EventInfo {
+   static final int[] NO_REMINDERS = new int[0];
+
    private final String  id;    
    private final String  title;    
    private final String  description;    
@@ -27,6 +30,74 @@ public class EventInfo {
    private final Date    endTime;
    private final boolean allDayEvent;
    private final int[]   reminders;
+   private final String  recurrenceRule;
+   private final Date    createdTime;
+   private final Date    lastModifiedTime;
+   private final String  calendarID;
+
+   /**
+    * Creates an event from its individual fields, e.g. for DeviceCalendar.saveEvents
+    *
+    * @param id          - Event Identifier. Pass null for new Events
+    * @param title       - Title of the Calendar Event
+    * @param description - Any notes for the event
+    * @param location    - Location of the event
+    * @param startTime   - Event starting time stamp
+    * @param endTime     - Event ending time stamp
+    * @param allDayEvent - The event is an all day event
+    * @param reminders   - alarm offsets (in seconds). Pass null for no alarms
+    */
+   public EventInfo(String id, String title, String description, String location, Date startTime, Date endTime, boolean allDayEvent, int[] reminders) {
+      this(id, title, description, location, startTime, endTime, allDayEvent, reminders, null, null, null, null);
+   }
+
+   /**
+    * Creates a recurring event, e.g. for DeviceCalendar.saveEvents. The start and end time are those of the first occurrence.
+    *
+    * @param id             - Event Identifier. Pass null for new Events
+    * @param title          - Title of the Calendar Event
+    * @param description    - Any notes for the event
+    * @param location       - Location of the event
+    * @param startTime      - Starting time stamp of the first occurrence
+    * @param endTime        - Ending time stamp of the first occurrence
+    * @param allDayEvent    - The event is an all day event
+    * @param reminders      - alarm offsets (in seconds). Pass null for no alarms
+    * @param recurrenceRule - RFC 5545 RRULE value, e.g. FREQ=WEEKLY;BYDAY=MO. Pass null for a single event,
+    *                         when updating an existing event null keeps its recurrence and an empty rule turns a series into a single event
+    */
+   public EventInfo(String id, String title, String description, String location, Date startTime, Date endTime, boolean allDayEvent, int[] reminders, String recurrenceRule) {
+      this(id, title, description, location, startTime, endTime, allDayEvent, reminders, recurrenceRule, null, null, null);
+   }
+
+   /**
+    * Creates an event including the data maintained by the platform, e.g. for EventBatch.getEvent
+    */
+   EventInfo(String id, String title, String description, String location, Date startTime, Date endTime, boolean allDayEvent, int[] reminders, String recurrenceRule, Date createdTime, Date lastModifiedTime, String calendarID) {
+      this.id               = id;
+      this.title            = title       != null ? title       : "";
+      this.description      = description != null ? description : "";
+      this.location         = location    != null ? location    : "";
+      this.startTime        = startTime;
+      this.endTime          = endTime;
+      this.allDayEvent      = allDayEvent;
+      this.reminders        = reminders   != null ? reminders   : NO_REMINDERS;
+      this.recurrenceRule   = recurrenceRule;
+      this.createdTime      = createdTime;
+      this.lastModifiedTime = lastModifiedTime;
+      this.calendarID       = calendarID;
+   }
+
+   static String orEmpty(String s) {
+      return s != null ? s : "";
+   }
+
+   static Date readDate(CompactCodec.Reader reader) {
+      if (reader.isNextNull()) {
+         reader.skip(1);
+         return null;
+      }
+      return new Date(reader.nextLong());
+   }
 
    public EventInfo(Element element) {
 //      Log.p("EventInfo(" + element + ")");
@@ -78,6 +149,17 @@ public class EventInfo {
           allDayEvent    = "true".equals (allDayEventE.getChildAt(0).getText());
       }
 
+      Element ruleE = element.getFirstChildByTagName("recurrenceRule");
+      if(ruleE == null || ruleE.isEmpty()) {
+          recurrenceRule = null;
+      } else {
+          recurrenceRule = ruleE.getChildAt(0).getText();
+      }
+
+      createdTime      = readDate(element, "createdTimeStamp");
+      lastModifiedTime = readDate(element, "lastModifiedTimeStamp");
+      calendarID       = null;
+
       Element rems = element.getFirstChildByTagName("reminders");
 
       if (rems != null && rems.getNumChildren() > 0) {
@@ -90,10 +172,22 @@ public class EventInfo {
          }
       }
       else {
-         reminders = new int[0];
+         reminders = NO_REMINDERS;
       }
    }
 
+   private static Date readDate(Element element, String tag) {
+      Element e = element.getFirstChildByTagName(tag);
+      
+      if (e == null || e.isEmpty())
+         return null;
+      
+      long timeStamp = Long.parseLong(e.getChildAt(0).getText());
+      
+      // EventKit reports unknown dates as 0
+      return timeStamp > 0 ? new Date(timeStamp) : null;
+   }
+
    public String getID() {
       return id;
    }
@@ -126,17 +220,57 @@ public class EventInfo {
       return reminders;
    }
 
+   /**
+    * @return RFC 5545 RRULE value of the series this event belongs to, null for single events.
+    *         Range queries return one EventInfo per occurrence, all with the ID of the series
+    */
+   public String getRecurrenceRule() {
+      return recurrenceRule;
+   }
+
+   /**
+    * @return true if the event is an occurrence of a recurring series
+    */
+   public boolean isRecurring() {
+      return recurrenceRule != null && recurrenceRule.length() > 0;
+   }
+
+   /**
+    * @return when the event was created, null if the platform doesn't track it
+    */
+   public Date getCreatedTime() {
+      return createdTime;
+   }
+
+   /**
+    * @return when the event was last changed, null if the platform doesn't track it
+    */
+   public Date getLastModifiedTime() {
+      return lastModifiedTime;
+   }
+
+   /**
+    * @return ID of the calendar holding the event as returned from openCalendar, null if the platform didn't report it
+    */
+   public String getCalendarID() {
+      return calendarID;
+   }
+
    @Override
    public String toString() {
       return "EventInfo{" +
-              "id='"          + id          + '\'' +
-            ", title='"       + title       + '\'' +
-            ", description='" + description + '\'' +
-            ", location='"    + location    + '\'' +
-            ", startTime="    + startTime   +
-            ", endTime="      + endTime     +
-            ", allDayEvent="  + allDayEvent +
-            ", reminders="    + Arrays.toString(reminders) +
+              "id='"               + id               + '\'' +
+            ", title='"            + title            + '\'' +
+            ", description='"      + getDescription() + '\'' +
+            ", location='"         + getLocation()    + '\'' +
+            ", startTime="         + startTime        +
+            ", endTime="           + endTime          +
+            ", allDayEvent="       + allDayEvent      +
+            ", reminders="         + Arrays.toString(getReminders()) +
+            ", recurrenceRule='"   + recurrenceRule   + '\'' +
+            ", createdTime="       + createdTime      +
+            ", lastModifiedTime="  + lastModifiedTime +
+            ", calendarID='"       + calendarID       + '\'' +
             '}';
    }
 }
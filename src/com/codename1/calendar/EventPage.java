@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.List;
+
+/**
+ * A bounded page of events returned by DeviceCalendar.getEventsPage
+ */
+public class EventPage {
+   private final List<EventInfo> events;
+   private final String          nextPageToken;
+
+   EventPage(List<EventInfo> events, String nextPageToken) {
+      this.events        = events;
+      this.nextPageToken = nextPageToken;
+   }
+
+   /**
+    * @return the events of this page in start time order
+    */
+   public List<EventInfo> getEvents() {
+      return events;
+   }
+
+   /**
+    * @return token to pass to DeviceCalendar.getEventsPage for the following page, null if this is the last page
+    */
+   public String getNextPageToken() {
+      return nextPageToken;
+   }
+
+   /**
+    * @return true if there are more pages after this one
+    */
+   public boolean hasMore() {
+      return nextPageToken != null;
+   }
+}
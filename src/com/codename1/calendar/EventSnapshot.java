@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.codename1.io.Storage;
+import com.codename1.io.Util;
+
+/**
+ * Calendars and recently queried event ranges persisted in Storage between application runs, see DeviceCalendar.loadSnapshot.
+ *
+ * The file is a small header followed by the calendars and one block per range, each block holding the
+ * range, its query flags and its events field by field. It's written from a single buffer and read back
+ * with one sequential read, no XML or compact payload is parsed at startup.
+ */
+class EventSnapshot {
+   private static final int MAGIC   = 0x43414C53;
+   private static final int VERSION = 1;
+
+   /**
+    * A cached getEvents range
+    */
+   static class Range {
+      final String          calendarID;
+      final long            startTimeStamp;
+      final long            endTimeStamp;
+      final int             flags;
+      final List<EventInfo> events;
+
+      Range(String calendarID, long startTimeStamp, long endTimeStamp, int flags, List<EventInfo> events) {
+         this.calendarID     = calendarID;
+         this.startTimeStamp = startTimeStamp;
+         this.endTimeStamp   = endTimeStamp;
+         this.flags          = flags;
+         this.events         = events;
+      }
+   }
+
+   final List<CalendarInfo> calendars;
+   final List<Range>        ranges;
+
+   /**
+    * @param calendars - Calendar metadata, null if unknown
+    * @param ranges    - Cached ranges
+    */
+   EventSnapshot(List<CalendarInfo> calendars, List<Range> ranges) {
+      this.calendars = calendars;
+      this.ranges    = ranges;
+   }
+
+   /**
+    * @param storageName - Storage file name
+    * @return the stored snapshot, null if there is none or it can't be read
+    */
+   static EventSnapshot load(String storageName) {
+      Storage storage = Storage.getInstance();
+
+      if (!storage.exists(storageName))
+         return null;
+
+      InputStream in = null;
+
+      try {
+         in = storage.createInputStream(storageName);
+         return read(new DataInputStream(new ByteArrayInputStream(Util.readInputStream(in))));
+      }
+      catch (Exception e) {
+         // written by an older version, truncated or corrupted, start over
+         storage.deleteStorageFile(storageName);
+         return null;
+      }
+      finally {
+         Util.cleanup(in);
+      }
+   }
+
+   /**
+    * Replaces the stored snapshot
+    *
+    * @param storageName - Storage file name
+    */
+   void save(String storageName) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+      write(new DataOutputStream(bytes));
+
+      OutputStream out = null;
+
+      try {
+         out = Storage.getInstance().createOutputStream(storageName);
+         out.write(bytes.toByteArray());
+      }
+      finally {
+         Util.cleanup(out);
+      }
+   }
+
+   /**
+    * Deletes the stored snapshot if there is one
+    *
+    * @param storageName - Storage file name
+    */
+   static void delete(String storageName) {
+      Storage storage = Storage.getInstance();
+
+      if (storage.exists(storageName))
+         storage.deleteStorageFile(storageName);
+   }
+
+   private void write(DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      if (calendars == null) {
+         out.writeInt(-1);
+      }
+      else {
+         out.writeInt(calendars.size());
+
+         for (CalendarInfo info : calendars) {
+            writeString(out, info.getID());
+            writeString(out, info.getName());
+            out.writeInt(info.getColor());
+            out.writeInt(info.getAccessLevel());
+            out.writeBoolean(info.isOpenable());
+         }
+      }
+
+      out.writeInt(ranges.size());
+
+      for (Range range : ranges) {
+         writeString(out, range.calendarID);
+         out.writeLong(range.startTimeStamp);
+         out.writeLong(range.endTimeStamp);
+         out.writeInt(range.flags);
+         out.writeInt(range.events.size());
+
+         for (EventInfo event : range.events)
+            writeEvent(out, event);
+      }
+
+      out.flush();
+   }
+
+   private static EventSnapshot read(DataInputStream in) throws IOException {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+         throw new IOException("Unsupported snapshot format");
+
+      int count = in.readInt();
+      List<CalendarInfo> calendars = null;
+
+      if (count >= 0) {
+         calendars = new ArrayList<CalendarInfo>(count);
+
+         for (int i = 0; i < count; i++)
+            calendars.add(new CalendarInfo(readString(in), readString(in), in.readInt(), in.readInt(), in.readBoolean()));
+      }
+
+      int rangeCount = in.readInt();
+      List<Range> ranges = new ArrayList<Range>(rangeCount);
+
+      for (int i = 0; i < rangeCount; i++) {
+         String calendarID     = readString(in);
+         long   startTimeStamp = in.readLong();
+         long   endTimeStamp   = in.readLong();
+         int    flags          = in.readInt();
+         int    eventCount     = in.readInt();
+         List<EventInfo> events = new ArrayList<EventInfo>(eventCount);
+
+         for (int j = 0; j < eventCount; j++)
+            events.add(readEvent(in));
+
+         ranges.add(new Range(calendarID, startTimeStamp, endTimeStamp, flags, events));
+      }
+
+      return new EventSnapshot(calendars, ranges);
+   }
+
+   /**
+    * Writes every field of the event, shared with the WriteBehindQueue journal
+    */
+   static void writeEvent(DataOutputStream out, EventInfo event) throws IOException {
+      writeString(out, event.getID());
+      writeString(out, event.getTitle());
+      writeString(out, event.getDescription());
+      writeString(out, event.getLocation());
+      writeDate(out, event.getStartTime());
+      writeDate(out, event.getEndTime());
+      out.writeBoolean(event.isAllDayEvent());
+
+      int[] reminders = event.getReminders();
+      out.writeInt(reminders.length);
+
+      for (int i = 0; i < reminders.length; i++)
+         out.writeInt(reminders[i]);
+
+      writeString(out, event.getRecurrenceRule());
+      writeDate(out, event.getCreatedTime());
+      writeDate(out, event.getLastModifiedTime());
+      writeString(out, event.getCalendarID());
+   }
+
+   /**
+    * Reads an event written by writeEvent
+    */
+   static EventInfo readEvent(DataInputStream in) throws IOException {
+      String  id          = readString(in);
+      String  title       = readString(in);
+      String  description = readString(in);
+      String  location    = readString(in);
+      Date    startTime   = readDate(in);
+      Date    endTime     = readDate(in);
+      boolean allDayEvent = in.readBoolean();
+      int[]   reminders   = new int[in.readInt()];
+
+      for (int i = 0; i < reminders.length; i++)
+         reminders[i] = in.readInt();
+
+      String rule     = readString(in);
+      Date   created  = readDate(in);
+      Date   modified = readDate(in);
+
+      return new EventInfo(id, title, description, location, startTime, endTime, allDayEvent, reminders, rule, created, modified, readString(in));
+   }
+
+   private static void writeString(DataOutputStream out, String s) throws IOException {
+      if (s == null) {
+         out.writeInt(-1);
+         return;
+      }
+
+      byte[] bytes = s.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(DataInputStream in) throws IOException {
+      int length = in.readInt();
+
+      if (length < 0)
+         return null;
+
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, "UTF-8");
+   }
+
+   private static void writeDate(DataOutputStream out, Date date) throws IOException {
+      out.writeBoolean(date != null);
+
+      if (date != null)
+         out.writeLong(date.getTime());
+   }
+
+   private static Date readDate(DataInputStream in) throws IOException {
+      return in.readBoolean() ? new Date(in.readLong()) : null;
+   }
+}
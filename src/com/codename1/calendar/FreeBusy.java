@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Busy intervals of one or more calendars within a time range, see DeviceCalendar.getFreeBusy.
+ *
+ * Overlapping and adjacent events are merged so the intervals are disjoint, sorted and clipped to the range.
+ * They are kept as start/end pairs in a single long array.
+ */
+public class FreeBusy {
+   private final long   startTime;
+   private final long   endTime;
+   private final long[] intervals;
+
+   private FreeBusy(long startTime, long endTime, long[] intervals) {
+      this.startTime = startTime;
+      this.endTime   = endTime;
+      this.intervals = intervals;
+   }
+
+   /**
+    * Merges event times into busy intervals. Starts and ends are sorted independently and walked in one sweep
+    * counting the open events, an interval begins when the count leaves 0 and ends when it returns to 0.
+    * Sorting both arrays separately is enough since only the union matters, not which end belongs to which start.
+    *
+    * @param startTime - Start of the range
+    * @param endTime   - End of the range
+    * @param starts    - Event start times, sorted in place
+    * @param ends      - Event end times, sorted in place
+    * @param count     - Number of events in starts and ends
+    */
+   static FreeBusy merge(long startTime, long endTime, long[] starts, long[] ends, int count) {
+      // clip to the range and drop events outside of it
+      int n = 0;
+      for (int i = 0; i < count; i++) {
+         long start = Math.max(starts[i], startTime);
+         long end   = Math.min(ends[i], endTime);
+         if (end > start) {
+            starts[n] = start;
+            ends[n]   = end;
+            n++;
+         }
+      }
+
+      Arrays.sort(starts, 0, n);
+      Arrays.sort(ends, 0, n);
+
+      // the k-th smallest end is never below the k-th smallest start, so ends can't run out before starts
+      long[] merged = new long[n * 2];
+      int    size   = 0;
+      int    open   = 0;
+      int    e      = 0;
+      for (int s = 0; s < n;) {
+         // an event starting where another ends continues the interval
+         if (starts[s] <= ends[e]) {
+            if (open++ == 0) {
+               merged[size++] = starts[s];
+            }
+            s++;
+         }
+         else {
+            if (--open == 0) {
+               merged[size++] = ends[e];
+            }
+            e++;
+         }
+      }
+      if (n > 0) {
+         merged[size++] = ends[n - 1];
+      }
+
+      long[] intervals = new long[size];
+      System.arraycopy(merged, 0, intervals, 0, size);
+      return new FreeBusy(startTime, endTime, intervals);
+   }
+
+   /**
+    * @return start of the queried range
+    */
+   public Date getStartTime() {
+      return new Date(startTime);
+   }
+
+   /**
+    * @return end of the queried range
+    */
+   public Date getEndTime() {
+      return new Date(endTime);
+   }
+
+   /**
+    * @return number of busy intervals
+    */
+   public int size() {
+      return intervals.length / 2;
+   }
+
+   /**
+    * @param index - Interval index, 0 to size() - 1 in time order
+    * @return start of the busy interval in milliseconds
+    */
+   public long getBusyStart(int index) {
+      return intervals[index * 2];
+   }
+
+   /**
+    * @param index - Interval index, 0 to size() - 1 in time order
+    * @return end of the busy interval in milliseconds, exclusive
+    */
+   public long getBusyEnd(int index) {
+      return intervals[index * 2 + 1];
+   }
+
+   /**
+    * @return total busy time within the range in milliseconds
+    */
+   public long getBusyTime() {
+      long total = 0;
+      for (int i = 0; i < intervals.length; i += 2) {
+         total += intervals[i + 1] - intervals[i];
+      }
+      return total;
+   }
+
+   /**
+    * @param time - Time stamp in milliseconds
+    * @return true if the time falls into a busy interval
+    */
+   public boolean isBusy(long time) {
+      int index = indexAfter(time);
+      return index > 0 && intervals[index * 2 - 1] > time;
+   }
+
+   /**
+    * @param start - Start of the slot in milliseconds
+    * @param end   - End of the slot in milliseconds, exclusive
+    * @return true if no busy interval overlaps the slot. Times outside of the queried range count as free.
+    */
+   public boolean isFree(long start, long end) {
+      int index = indexAfter(start);
+      if (index > 0 && intervals[index * 2 - 1] > start) {
+         return false;
+      }
+      return index * 2 >= intervals.length || intervals[index * 2] >= end;
+   }
+
+   /**
+    * @return number of intervals starting at or before the given time
+    */
+   private int indexAfter(long time) {
+      int low  = 0;
+      int high = size();
+      while (low < high) {
+         int mid = (low + high) >>> 1;
+         if (intervals[mid * 2] <= time) {
+            low = mid + 1;
+         }
+         else {
+            high = mid;
+         }
+      }
+      return low;
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder("FreeBusy[");
+      for (int i = 0; i < intervals.length; i += 2) {
+         if (i > 0) {
+            sb.append(", ");
+         }
+         sb.append(intervals[i]).append('-').append(intervals[i + 1]);
+      }
+      return sb.append(']').toString();
+   }
+}
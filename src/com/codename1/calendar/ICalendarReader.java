@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Streaming reader of iCalendar (RFC 5545) data, e.g. an .ics feed passed to DeviceCalendar.importICalendar.
+ *
+ * The VEVENT components are returned one at a time as EventInfo objects with a null ID, so saving them creates new events.
+ * Only the current event is held in memory, the size of the feed doesn't matter. SUMMARY, DESCRIPTION, LOCATION,
+ * DTSTART, DTEND or DURATION, RRULE and the relative TRIGGERs of VALARMs before the event are read, other properties
+ * and components are skipped. Times with a TZID are converted with the platform time zone of that ID, IDs the
+ * platform doesn't know and floating times are read in the local time zone. Events without a valid DTSTART are skipped.
+ */
+public class ICalendarReader {
+   private final Reader        in;
+   private final char[]        buffer = new char[8192];
+   private int                 pos;
+   private int                 limit;
+   private final StringBuilder line   = new StringBuilder(256);
+   private String              lookahead;
+
+   // fields of the last parsed content line
+   private String name;
+   private String value;
+   private String valueType;
+   private String tzid;
+   private String related;
+
+   // one Calendar per TZID, "" for local time
+   private final Map<String, Calendar> calendars = new HashMap<String, Calendar>();
+
+   /**
+    * @param in - UTF-8 encoded iCalendar data
+    */
+   public ICalendarReader(InputStream in) throws IOException {
+      this.in = new InputStreamReader(in, "UTF-8");
+   }
+
+   /**
+    * Reads the next event
+    *
+    * @return the next VEVENT, null at the end of the data
+    */
+   public EventInfo next() throws IOException {
+      String contentLine;
+
+      while ((contentLine = readContentLine()) != null) {
+         if (parse(contentLine) && "BEGIN".equals(name) && "VEVENT".equalsIgnoreCase(value.trim())) {
+            EventInfo event = readEvent();
+
+            if (event != null)
+               return event;
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Closes the underlying stream
+    */
+   public void close() throws IOException {
+      in.close();
+   }
+
+   /**
+    * Reads the properties of a VEVENT up to its END line
+    *
+    * @return the event, null if it's invalid or the data ends within it
+    */
+   private EventInfo readEvent() throws IOException {
+      String       title       = null;
+      String       description = null;
+      String       location    = null;
+      String       rule        = null;
+      Date         start       = null;
+      Date         end         = null;
+      boolean      allDayEvent = false;
+      long         duration    = -1;
+      boolean      valid       = true;
+      List<long[]> triggers    = new ArrayList<long[]>(2);
+      int          depth       = 0;
+      boolean      alarm       = false;
+      String       contentLine;
+
+      while ((contentLine = readContentLine()) != null) {
+         if (!parse(contentLine))
+            continue;
+
+         if ("BEGIN".equals(name)) {
+            depth++;
+            alarm = depth == 1 && "VALARM".equalsIgnoreCase(value.trim());
+            continue;
+         }
+
+         if ("END".equals(name)) {
+            if (depth == 0)
+               break;
+
+            depth--;
+            alarm = false;
+            continue;
+         }
+
+         try {
+            if (depth > 0) {
+               // absolute triggers are rare and can't be expressed as reminder offsets
+               if (alarm && "TRIGGER".equals(name) && !"DATE-TIME".equals(valueType))
+                  triggers.add(new long[] { parseDuration(value), "END".equals(related) ? 1 : 0 });
+            }
+            else if ("SUMMARY".equals(name)) {
+               title = unescape(value);
+            }
+            else if ("DESCRIPTION".equals(name)) {
+               description = unescape(value);
+            }
+            else if ("LOCATION".equals(name)) {
+               location = unescape(value);
+            }
+            else if ("DTSTART".equals(name)) {
+               allDayEvent = "DATE".equals(valueType) || value.trim().length() == 8;
+               start       = parseDate(value);
+            }
+            else if ("DTEND".equals(name)) {
+               end = parseDate(value);
+            }
+            else if ("DURATION".equals(name)) {
+               duration = parseDuration(value) * 1000;
+            }
+            else if ("RRULE".equals(name)) {
+               rule = value.trim();
+            }
+         }
+         catch (RuntimeException e) {
+            // malformed time or duration, a bad alarm is dropped but bad event times invalidate the event
+            if (depth == 0)
+               valid = false;
+         }
+      }
+
+      if (contentLine == null || !valid || start == null)
+         return null;
+
+      if (end == null) {
+         if (duration >= 0) {
+            end = new Date(start.getTime() + duration);
+         }
+         else if (allDayEvent) {
+            Calendar cal = calendar(null);
+            cal.setTime(start);
+            cal.add(Calendar.DATE, 1);
+            end = cal.getTime();
+         }
+         else {
+            end = start;
+         }
+      }
+
+      int[] reminders = new int[triggers.size()];
+      int   count     = 0;
+
+      for (long[] trigger : triggers) {
+         long offset = trigger[0];
+
+         if (trigger[1] != 0)
+            offset += (end.getTime() - start.getTime()) / 1000;
+
+         // reminders are offsets before the start, alarms after it are dropped
+         if (offset <= 0)
+            reminders[count++] = (int) -offset;
+      }
+
+      if (count < reminders.length) {
+         int[] trimmed = new int[count];
+         System.arraycopy(reminders, 0, trimmed, 0, count);
+         reminders = trimmed;
+      }
+
+      return new EventInfo(null, title, description, location, start, end, allDayEvent, reminders, rule);
+   }
+
+   /**
+    * Splits a content line into name, the parameters used by the reader and value
+    *
+    * @return false if the line is malformed
+    */
+   private boolean parse(String contentLine) {
+      valueType = null;
+      tzid      = null;
+      related   = null;
+
+      int length = contentLine.length();
+      int i      = 0;
+
+      while (i < length && contentLine.charAt(i) != ';' && contentLine.charAt(i) != ':')
+         i++;
+
+      if (i == length)
+         return false;
+
+      name = contentLine.substring(0, i).trim().toUpperCase();
+
+      while (contentLine.charAt(i) == ';') {
+         int     start  = ++i;
+         boolean quoted = false;
+
+         while (i < length && (quoted || (contentLine.charAt(i) != ';' && contentLine.charAt(i) != ':'))) {
+            if (contentLine.charAt(i) == '"')
+               quoted = !quoted;
+            i++;
+         }
+
+         if (i == length)
+            return false;
+
+         parameter(contentLine.substring(start, i));
+      }
+
+      value = contentLine.substring(i + 1);
+      return true;
+   }
+
+   private void parameter(String parameter) {
+      int eq = parameter.indexOf('=');
+
+      if (eq < 0)
+         return;
+
+      String key = parameter.substring(0, eq).trim().toUpperCase();
+      String val = parameter.substring(eq + 1);
+
+      if (val.length() >= 2 && val.charAt(0) == '"' && val.charAt(val.length() - 1) == '"')
+         val = val.substring(1, val.length() - 1);
+
+      if ("VALUE".equals(key))
+         valueType = val.toUpperCase();
+      else if ("TZID".equals(key))
+         tzid = val;
+      else if ("RELATED".equals(key))
+         related = val.toUpperCase();
+   }
+
+   /**
+    * Parses a DATE (local midnight) or DATE-TIME value, UTC if it ends with Z, in the TZID of the line if it has one
+    */
+   private Date parseDate(String text) {
+      text = text.trim();
+
+      boolean utc = text.endsWith("Z");
+      Calendar cal = calendar(utc ? "GMT" : text.length() == 8 ? null : tzid);
+
+      cal.set(Calendar.DAY_OF_MONTH, 1);
+      cal.set(Calendar.YEAR,         Integer.parseInt(text.substring(0, 4)));
+      cal.set(Calendar.MONTH,        Integer.parseInt(text.substring(4, 6)) - 1);
+      cal.set(Calendar.DAY_OF_MONTH, Integer.parseInt(text.substring(6, 8)));
+
+      boolean time = text.length() >= 15 && text.charAt(8) == 'T';
+
+      cal.set(Calendar.HOUR_OF_DAY, time ? Integer.parseInt(text.substring(9, 11))  : 0);
+      cal.set(Calendar.MINUTE,      time ? Integer.parseInt(text.substring(11, 13)) : 0);
+      cal.set(Calendar.SECOND,      time ? Integer.parseInt(text.substring(13, 15)) : 0);
+      cal.set(Calendar.MILLISECOND, 0);
+
+      return cal.getTime();
+   }
+
+   /**
+    * @param zoneID - TZID, null for local time
+    */
+   private Calendar calendar(String zoneID) {
+      String   key = zoneID != null ? zoneID : "";
+      Calendar cal = calendars.get(key);
+
+      if (cal == null) {
+         TimeZone zone = TimeZone.getDefault();
+
+         if (zoneID != null) {
+            TimeZone named = TimeZone.getTimeZone(zoneID);
+
+            // unknown IDs, e.g. Windows zone names defined by a VTIMEZONE, resolve to GMT
+            if (named.getID().equals(zoneID))
+               zone = named;
+         }
+
+         cal = Calendar.getInstance(zone);
+         calendars.put(key, cal);
+      }
+
+      return cal;
+   }
+
+   /**
+    * Parses a DURATION value, e.g. -PT15M or P1DT12H
+    *
+    * @return the duration in seconds
+    */
+   static long parseDuration(String text) {
+      text = text.trim();
+
+      int     length   = text.length();
+      int     i        = 0;
+      boolean negative = false;
+
+      if (length > 0 && (text.charAt(0) == '+' || text.charAt(0) == '-')) {
+         negative = text.charAt(0) == '-';
+         i++;
+      }
+
+      if (i >= length || text.charAt(i++) != 'P')
+         throw new IllegalArgumentException("Invalid duration " + text);
+
+      long    seconds = 0;
+      long    n       = 0;
+      boolean digits  = false;
+
+      for (; i < length; i++) {
+         char c = text.charAt(i);
+
+         if (c >= '0' && c <= '9') {
+            n      = n * 10 + (c - '0');
+            digits = true;
+            continue;
+         }
+
+         if (c == 'T')
+            continue;
+
+         long unit;
+
+         switch (c) {
+            case 'W': unit = 7 * 24 * 3600; break;
+            case 'D': unit = 24 * 3600;     break;
+            case 'H': unit = 3600;          break;
+            case 'M': unit = 60;            break;
+            case 'S': unit = 1;             break;
+            default:  unit = 0;
+         }
+
+         if (unit == 0 || !digits)
+            throw new IllegalArgumentException("Invalid duration " + text);
+
+         seconds += n * unit;
+         n        = 0;
+         digits   = false;
+      }
+
+      if (digits)
+         throw new IllegalArgumentException("Invalid duration " + text);
+
+      return negative ? -seconds : seconds;
+   }
+
+   /**
+    * Resolves the backslash escapes of a TEXT value
+    */
+   static String unescape(String text) {
+      if (text.indexOf('\\') < 0)
+         return text;
+
+      StringBuilder sb = new StringBuilder(text.length());
+
+      for (int i = 0; i < text.length(); i++) {
+         char c = text.charAt(i);
+
+         if (c == '\\' && i + 1 < text.length()) {
+            c = text.charAt(++i);
+
+            if (c == 'n' || c == 'N')
+               c = '\n';
+         }
+
+         sb.append(c);
+      }
+
+      return sb.toString();
+   }
+
+   /**
+    * Reads a logical line, joining the folded continuation lines starting with a space or tab
+    *
+    * @return the line, null at the end of the data
+    */
+   private String readContentLine() throws IOException {
+      String first;
+
+      do {
+         first     = lookahead != null ? lookahead : readLine();
+         lookahead = null;
+      } while (first != null && first.length() == 0);
+
+      if (first == null)
+         return null;
+
+      StringBuilder folded = null;
+      String        next;
+
+      while ((next = readLine()) != null && next.length() > 0 && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+         if (folded == null)
+            folded = new StringBuilder(first);
+
+         folded.append(next.substring(1));
+      }
+
+      lookahead = next;
+      return folded != null ? folded.toString() : first;
+   }
+
+   /**
+    * @return the next physical line without its CRLF or LF, null at the end of the data
+    */
+   private String readLine() throws IOException {
+      line.setLength(0);
+
+      while (true) {
+         if (pos == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            pos   = 0;
+
+            if (limit <= 0) {
+               limit = 0;
+               return line.length() > 0 ? line.toString() : null;
+            }
+         }
+
+         char c = buffer[pos++];
+
+         if (c == '\n') {
+            int length = line.length();
+
+            if (length > 0 && line.charAt(length - 1) == '\r')
+               line.setLength(length - 1);
+
+            return line.toString();
+         }
+
+         // byte order mark written by some exporters
+         if (c != '\uFEFF')
+            line.append(c);
+      }
+   }
+}
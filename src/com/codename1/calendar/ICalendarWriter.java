@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Streaming writer of iCalendar (RFC 5545) data, e.g. for DeviceCalendar.exportICalendar.
+ *
+ * The VCALENDAR header is written on creation and every event is written as a VEVENT as soon as it's passed in,
+ * nothing but the current line is buffered. Timed events are written in UTC, all day events as local dates.
+ * Reminders are written as display VALARMs. Lines are folded at 75 octets.
+ */
+public class ICalendarWriter {
+   private static final int MAX_LINE_OCTETS = 75;
+
+   private final Writer        out;
+   private final Calendar      utc   = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+   private final Calendar      local = Calendar.getInstance();
+   private final StringBuilder line  = new StringBuilder(128);
+   private final String        stamp;
+   private int                 generated;
+
+   /**
+    * Writes the VCALENDAR header
+    *
+    * @param out - Destination, written as UTF-8
+    */
+   public ICalendarWriter(OutputStream out) throws IOException {
+      this.out = new OutputStreamWriter(out, "UTF-8");
+
+      line.setLength(0);
+      appendDateTime(System.currentTimeMillis());
+      stamp = line.toString();
+
+      writeLine("BEGIN:VCALENDAR");
+      writeLine("VERSION:2.0");
+      writeLine("PRODID:-//Codename One//DeviceCalendar//EN");
+   }
+
+   /**
+    * Writes an event. The event ID becomes its UID, an event without ID gets a generated one.
+    *
+    * @param event - Event with start and end time
+    */
+   public void write(EventInfo event) throws IOException {
+      if (event.getStartTime() == null || event.getEndTime() == null)
+         throw new IllegalArgumentException("start and end time required");
+
+      long start = event.getStartTime().getTime();
+      long end   = event.getEndTime().getTime();
+
+      writeLine("BEGIN:VEVENT");
+      writeLine("UID:" + (event.getID() != null ? event.getID() : stamp + "-" + ++generated) + "@DeviceCalendar");
+      writeLine("DTSTAMP:" + stamp);
+
+      if (event.isAllDayEvent()) {
+         line.setLength(0);
+         line.append("DTSTART;VALUE=DATE:");
+         appendDate(start);
+         writeLine(line.toString());
+
+         // DTEND is the exclusive end date, the day after the one containing the last millisecond
+         line.setLength(0);
+         line.append("DTEND;VALUE=DATE:");
+         local.setTime(new Date(Math.max(end, start + 1) - 1));
+         local.add(Calendar.DATE, 1);
+         appendDate(local.getTime().getTime());
+         writeLine(line.toString());
+      }
+      else {
+         writeDateTime("DTSTART", start);
+         writeDateTime("DTEND",   end);
+      }
+
+      writeText("SUMMARY",     event.getTitle());
+      writeText("DESCRIPTION", event.getDescription());
+      writeText("LOCATION",    event.getLocation());
+
+      if (event.isRecurring())
+         writeLine("RRULE:" + event.getRecurrenceRule());
+
+      if (event.getCreatedTime() != null)
+         writeDateTime("CREATED", event.getCreatedTime().getTime());
+
+      if (event.getLastModifiedTime() != null)
+         writeDateTime("LAST-MODIFIED", event.getLastModifiedTime().getTime());
+
+      int[] reminders = event.getReminders();
+
+      for (int i = 0; i < reminders.length; i++) {
+         writeLine("BEGIN:VALARM");
+         writeLine("ACTION:DISPLAY");
+         writeLine("DESCRIPTION:Reminder");
+         // reminders are offsets before the start
+         writeLine(reminders[i] >= 0 ? "TRIGGER:-PT" + reminders[i] + "S" : "TRIGGER:PT" + -reminders[i] + "S");
+         writeLine("END:VALARM");
+      }
+
+      writeLine("END:VEVENT");
+   }
+
+   /**
+    * Writes the VCALENDAR footer and flushes the stream, the stream is left open
+    */
+   public void finish() throws IOException {
+      writeLine("END:VCALENDAR");
+      out.flush();
+   }
+
+   private void writeDateTime(String name, long time) throws IOException {
+      line.setLength(0);
+      line.append(name).append(':');
+      appendDateTime(time);
+      writeLine(line.toString());
+   }
+
+   private void writeText(String name, String text) throws IOException {
+      if (text == null || text.length() == 0)
+         return;
+
+      line.setLength(0);
+      line.append(name).append(':');
+
+      for (int i = 0; i < text.length(); i++) {
+         char c = text.charAt(i);
+
+         switch (c) {
+            case '\\': line.append("\\\\"); break;
+            case ';':  line.append("\\;");  break;
+            case ',':  line.append("\\,");  break;
+            case '\n': line.append("\\n");  break;
+            case '\r': break;
+            default:   line.append(c);
+         }
+      }
+
+      writeLine(line.toString());
+   }
+
+   /**
+    * Appends the time as a UTC DATE-TIME, e.g. 20240131T083000Z
+    */
+   private void appendDateTime(long time) {
+      utc.setTime(new Date(time));
+
+      pad(utc.get(Calendar.YEAR), 4);
+      pad(utc.get(Calendar.MONTH) + 1, 2);
+      pad(utc.get(Calendar.DAY_OF_MONTH), 2);
+      line.append('T');
+      pad(utc.get(Calendar.HOUR_OF_DAY), 2);
+      pad(utc.get(Calendar.MINUTE), 2);
+      pad(utc.get(Calendar.SECOND), 2);
+      line.append('Z');
+   }
+
+   /**
+    * Appends the local date containing the time as a DATE, e.g. 20240131
+    */
+   private void appendDate(long time) {
+      local.setTime(new Date(time));
+
+      pad(local.get(Calendar.YEAR), 4);
+      pad(local.get(Calendar.MONTH) + 1, 2);
+      pad(local.get(Calendar.DAY_OF_MONTH), 2);
+   }
+
+   private void pad(int value, int digits) {
+      String s = String.valueOf(value);
+
+      for (int i = s.length(); i < digits; i++)
+         line.append('0');
+
+      line.append(s);
+   }
+
+   /**
+    * Writes a content line, folding it so no physical line exceeds MAX_LINE_OCTETS UTF-8 octets
+    */
+   private void writeLine(String text) throws IOException {
+      int octets = 0;
+
+      for (int i = 0; i < text.length(); i++) {
+         char c    = text.charAt(i);
+         // a surrogate pair takes 4 octets, counted at its first half so the pair is never split
+         int  size = c < 0x80 ? 1 : c < 0x800 ? 2 : c >= 0xD800 && c <= 0xDBFF ? 4 : c >= 0xDC00 && c <= 0xDFFF ? 0 : 3;
+
+         if (octets + size > MAX_LINE_OCTETS) {
+            out.write("\r\n ");
+            octets = 1;
+         }
+
+         out.write(c);
+         octets += size;
+      }
+
+      out.write("\r\n");
+   }
+}
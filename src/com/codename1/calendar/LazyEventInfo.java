@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.Date;
+
+import com.codename1.calendar.impl.CompactCodec;
+
+/**
+ * EventInfo decoded on demand. ID, title, times and flags are decoded up front since every view needs them,
+ * description, location and reminders are decoded from the retained response the first time they are read.
+ *
+ * A compact record keeps a copy of the span of the response holding its lazy fields plus their offsets within it,
+ * the fields are only decoded when read. The response itself can be collected once it's decoded, e.g. while a
+ * few events of a large query are kept for display.
+ */
+class LazyEventInfo extends EventInfo {
+   private final String  data;
+   private final int     descriptionOffset;
+   private final int     locationOffset;
+   private final int     remindersOffset;
+
+   private volatile String description;
+   private volatile String location;
+   private volatile int[]  reminders;
+
+   private LazyEventInfo(String id, String title, Date startTime, Date endTime, boolean allDayEvent, String recurrenceRule,
+                         Date createdTime, Date lastModifiedTime, String calendarID,
+                         String data, int descriptionOffset, int locationOffset, int remindersOffset) {
+      super(id, title, null, null, startTime, endTime, allDayEvent, null, recurrenceRule, createdTime, lastModifiedTime, calendarID);
+      this.data              = data;
+      this.descriptionOffset = descriptionOffset;
+      this.locationOffset    = locationOffset;
+      this.remindersOffset   = remindersOffset;
+   }
+
+   /**
+    * Decodes an event record from a compact query response, the lazy fields are only skipped over
+    *
+    * @param reader - Positioned at the first field of the record
+    * @param width  - Number of fields per record in the response
+    */
+   static EventInfo read(CompactCodec.Reader reader, int width) {
+      String id    = reader.nextString();
+      String title = reader.nextString();
+
+      int descriptionOffset = reader.position();
+      reader.skip(1);
+      int locationOffset = reader.position();
+      reader.skip(1);
+
+      Date    startTime   = readDate(reader);
+      Date    endTime     = readDate(reader);
+      boolean allDayEvent = reader.nextBoolean();
+
+      int remindersOffset = reader.position();
+      reader.skip(1);
+      int lazyEnd = reader.position();
+
+      Date   createdTime      = width > 8 ? readDate(reader) : null;
+      Date   lastModifiedTime = width > 9 ? readDate(reader) : null;
+      String recurrenceRule   = width > 10 ? reader.nextString() : null;
+      String calendarID       = width > 11 ? reader.nextString() : null;
+      reader.skip(width - CompactCodec.EVENT_FIELD_COUNT);
+
+      return new LazyEventInfo(id, title, startTime, endTime, allDayEvent, recurrenceRule, createdTime, lastModifiedTime, calendarID,
+                               reader.getData().substring(descriptionOffset, lazyEnd),
+                               0, locationOffset - descriptionOffset, remindersOffset - descriptionOffset);
+   }
+
+   private CompactCodec.Reader readerAt(int offset) {
+      return new CompactCodec.Reader(data, offset, data.length());
+   }
+
+   public String getDescription() {
+      String value = description;
+
+      if (value == null) {
+         value = orEmpty(readerAt(descriptionOffset).nextString());
+         description = value;
+      }
+
+      return value;
+   }
+
+   public String getLocation() {
+      String value = location;
+
+      if (value == null) {
+         value = orEmpty(readerAt(locationOffset).nextString());
+         location = value;
+      }
+
+      return value;
+   }
+
+   public int[] getReminders() {
+      int[] value = reminders;
+
+      if (value == null) {
+         value = readerAt(remindersOffset).nextIntList();
+
+         if (value.length == 0)
+            value = NO_REMINDERS;
+
+         reminders = value;
+      }
+
+      return value;
+   }
+}
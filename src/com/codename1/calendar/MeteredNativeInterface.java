@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import com.codename1.calendar.impl.CalendarNativeInterface;
+
+/**
+ * Wraps the native interface while metrics are enabled, recording the time, response size and outcome of every call.
+ * DeviceCalendar talks to the native interface directly while metrics are disabled so they cost nothing then.
+ */
+class MeteredNativeInterface implements CalendarNativeInterface {
+   private final CalendarNativeInterface impl;
+   private final CalendarMetrics         metrics;
+
+   MeteredNativeInterface(CalendarNativeInterface impl, CalendarMetrics metrics) {
+      this.impl    = impl;
+      this.metrics = metrics;
+   }
+
+   CalendarNativeInterface getDelegate() {
+      return impl;
+   }
+
+   private void record(String operation, long start, int size, boolean error) {
+      metrics.operation(operation).recordCall(System.currentTimeMillis() - start, size, error);
+   }
+
+   /**
+    * Records a CompactCodec response, a null response means the port doesn't support the call
+    */
+   private String compact(String operation, long start, String response) {
+      // a failed response starts with a false success flag
+      record(operation, start, response != null ? response.length() : 0, response != null && response.startsWith("1:0"));
+      return response;
+   }
+
+   /**
+    * Records a response that is null on failure
+    */
+   private String text(String operation, long start, String response) {
+      record(operation, start, response != null ? response.length() : 0, response == null);
+      return response;
+   }
+
+   private void fail(String operation, long start) {
+      record(operation, start, 0, true);
+   }
+
+   public boolean hasPermissions() {
+      long start = System.currentTimeMillis();
+      boolean result;
+      try {
+         result = impl.hasPermissions();
+      }
+      catch (RuntimeException e) {
+         fail("hasPermissions", start);
+         throw e;
+      }
+      record("hasPermissions", start, 0, false);
+      return result;
+   }
+
+   public int getCalendarCount() {
+      long start = System.currentTimeMillis();
+      int result;
+      try {
+         result = impl.getCalendarCount();
+      }
+      catch (RuntimeException e) {
+         fail("getCalendarCount", start);
+         throw e;
+      }
+      record("getCalendarCount", start, 0, false);
+      return result;
+   }
+
+   public String getCalendarName(int offset) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getCalendarName(offset);
+      }
+      catch (RuntimeException e) {
+         fail("getCalendarName", start);
+         throw e;
+      }
+      return text("getCalendarName", start, result);
+   }
+
+   public String getCalendars() {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getCalendars();
+      }
+      catch (RuntimeException e) {
+         fail("getCalendars", start);
+         throw e;
+      }
+      return compact("getCalendars", start, result);
+   }
+
+   public String openCalendar(String calendarName, boolean createIfNotExists) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.openCalendar(calendarName, createIfNotExists);
+      }
+      catch (RuntimeException e) {
+         fail("openCalendar", start);
+         throw e;
+      }
+      return text("openCalendar", start, result);
+   }
+
+   public String saveEvent(String calendarID, String eventID, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, boolean taskOnly, String notes, String location, String reminders) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.saveEvent(calendarID, eventID, title, startTimeStamp, endTimeStamp, allDayEvent, taskOnly, notes, location, reminders);
+      }
+      catch (RuntimeException e) {
+         fail("saveEvent", start);
+         throw e;
+      }
+      return text("saveEvent", start, result);
+   }
+
+   public String saveEvents(String calendarID, String events) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.saveEvents(calendarID, events);
+      }
+      catch (RuntimeException e) {
+         fail("saveEvents", start);
+         throw e;
+      }
+      return text("saveEvents", start, result);
+   }
+
+   public boolean removeEvent(String calendarID, String eventID) {
+      long start = System.currentTimeMillis();
+      boolean result;
+      try {
+         result = impl.removeEvent(calendarID, eventID);
+      }
+      catch (RuntimeException e) {
+         fail("removeEvent", start);
+         throw e;
+      }
+      record("removeEvent", start, 0, !result);
+      return result;
+   }
+
+   public String removeEvents(String calendarID, String eventIDs) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.removeEvents(calendarID, eventIDs);
+      }
+      catch (RuntimeException e) {
+         fail("removeEvents", start);
+         throw e;
+      }
+      return compact("removeEvents", start, result);
+   }
+
+   public String removeEventsInRange(String calendarID, long startTimeStamp, long endTimeStamp) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.removeEventsInRange(calendarID, startTimeStamp, endTimeStamp);
+      }
+      catch (RuntimeException e) {
+         fail("removeEventsInRange", start);
+         throw e;
+      }
+      return compact("removeEventsInRange", start, result);
+   }
+
+   public String getEventByID(String calendarID, String eventID) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventByID(calendarID, eventID);
+      }
+      catch (RuntimeException e) {
+         fail("getEventByID", start);
+         throw e;
+      }
+      return text("getEventByID", start, result);
+   }
+
+   public String getEvents(String calendarID, long startTimeStamp, long endTimeStamp) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEvents(calendarID, startTimeStamp, endTimeStamp);
+      }
+      catch (RuntimeException e) {
+         fail("getEvents", start);
+         throw e;
+      }
+      return text("getEvents", start, result);
+   }
+
+   public String getEventByIDCompact(String calendarID, String eventID, int flags) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventByIDCompact(calendarID, eventID, flags);
+      }
+      catch (RuntimeException e) {
+         fail("getEventByIDCompact", start);
+         throw e;
+      }
+      return compact("getEventByIDCompact", start, result);
+   }
+
+   public String getEventsCompact(String calendarID, long startTimeStamp, long endTimeStamp, int flags) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventsCompact(calendarID, startTimeStamp, endTimeStamp, flags);
+      }
+      catch (RuntimeException e) {
+         fail("getEventsCompact", start);
+         throw e;
+      }
+      return compact("getEventsCompact", start, result);
+   }
+
+   public boolean returnsOverlappingEvents() {
+      long start = System.currentTimeMillis();
+      boolean result;
+      try {
+         result = impl.returnsOverlappingEvents();
+      }
+      catch (RuntimeException e) {
+         fail("returnsOverlappingEvents", start);
+         throw e;
+      }
+      record("returnsOverlappingEvents", start, 0, false);
+      return result;
+   }
+
+   public String getEventsForCalendars(String calendarIDs, long startTimeStamp, long endTimeStamp, int flags) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventsForCalendars(calendarIDs, startTimeStamp, endTimeStamp, flags);
+      }
+      catch (RuntimeException e) {
+         fail("getEventsForCalendars", start);
+         throw e;
+      }
+      return compact("getEventsForCalendars", start, result);
+   }
+
+   public String getEventsPage(String calendarID, long startTimeStamp, long endTimeStamp, String pageToken, int pageSize, int flags) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventsPage(calendarID, startTimeStamp, endTimeStamp, pageToken, pageSize, flags);
+      }
+      catch (RuntimeException e) {
+         fail("getEventsPage", start);
+         throw e;
+      }
+      return compact("getEventsPage", start, result);
+   }
+
+   public String getEventsModifiedSince(String calendarID, long sinceTimeStamp, int flags) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventsModifiedSince(calendarID, sinceTimeStamp, flags);
+      }
+      catch (RuntimeException e) {
+         fail("getEventsModifiedSince", start);
+         throw e;
+      }
+      return compact("getEventsModifiedSince", start, result);
+   }
+
+   public String getBusyTimes(String calendarIDs, long startTimeStamp, long endTimeStamp) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getBusyTimes(calendarIDs, startTimeStamp, endTimeStamp);
+      }
+      catch (RuntimeException e) {
+         fail("getBusyTimes", start);
+         throw e;
+      }
+      return compact("getBusyTimes", start, result);
+   }
+
+   public String getEventCounts(String calendarID, String boundaries, int flags) {
+      long start = System.currentTimeMillis();
+      String result;
+      try {
+         result = impl.getEventCounts(calendarID, boundaries, flags);
+      }
+      catch (RuntimeException e) {
+         fail("getEventCounts", start);
+         throw e;
+      }
+      return compact("getEventCounts", start, result);
+   }
+
+   public void registerForEventNotifications() {
+      impl.registerForEventNotifications();
+   }
+
+   public void deregisterForEventNotifications() {
+      impl.deregisterForEventNotifications();
+   }
+
+   public boolean isSupported() {
+      return impl.isSupported();
+   }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+/**
+ * Counters of one native operation, see CalendarMetrics.
+ *
+ * Times are measured with System.currentTimeMillis and kept in histograms with power of two buckets:
+ * bucket 0 counts calls below 1ms, bucket i calls from 2^(i-1) up to 2^i ms and the last bucket everything above.
+ */
+public final class OperationMetrics {
+
+   /**
+    * Number of histogram buckets
+    */
+   public static final int BUCKETS = 16;
+
+   private final String name;
+   private int          calls;
+   private int          errors;
+   private long         nativeTime;
+   private long         maxNativeTime;
+   private int          parses;
+   private long         parseTime;
+   private long         maxParseTime;
+   private long         responseSize;
+   private int          maxResponseSize;
+   private final int[]  nativeHistogram = new int[BUCKETS];
+   private final int[]  parseHistogram  = new int[BUCKETS];
+
+   OperationMetrics(String name) {
+      this.name = name;
+   }
+
+   synchronized void recordCall(long time, int size, boolean error) {
+      calls++;
+      if (error)
+         errors++;
+      nativeTime   += time;
+      maxNativeTime = Math.max(maxNativeTime, time);
+      responseSize += size;
+      maxResponseSize = Math.max(maxResponseSize, size);
+      nativeHistogram[bucket(time)]++;
+   }
+
+   synchronized void recordParse(long time) {
+      parses++;
+      parseTime   += time;
+      maxParseTime = Math.max(maxParseTime, time);
+      parseHistogram[bucket(time)]++;
+   }
+
+   synchronized OperationMetrics copy() {
+      OperationMetrics copy = new OperationMetrics(name);
+      copy.calls           = calls;
+      copy.errors          = errors;
+      copy.nativeTime      = nativeTime;
+      copy.maxNativeTime   = maxNativeTime;
+      copy.parses          = parses;
+      copy.parseTime       = parseTime;
+      copy.maxParseTime    = maxParseTime;
+      copy.responseSize    = responseSize;
+      copy.maxResponseSize = maxResponseSize;
+      System.arraycopy(nativeHistogram, 0, copy.nativeHistogram, 0, BUCKETS);
+      System.arraycopy(parseHistogram,  0, copy.parseHistogram,  0, BUCKETS);
+      return copy;
+   }
+
+   private static int bucket(long time) {
+      int bucket = 0;
+      while (time > 0 && bucket < BUCKETS - 1) {
+         time >>= 1;
+         bucket++;
+      }
+      return bucket;
+   }
+
+   /**
+    * @param bucket - Histogram bucket
+    * @return exclusive upper bound of the bucket in milliseconds, Long.MAX_VALUE for the last one
+    */
+   public static long getBucketLimit(int bucket) {
+      return bucket < BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE;
+   }
+
+   /**
+    * @return name of the native operation, e.g. getEventsCompact
+    */
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * @return number of native calls
+    */
+   public int getCallCount() {
+      return calls;
+   }
+
+   /**
+    * @return number of calls that failed: the native call threw, reported a failure or returned no result where one was required
+    */
+   public int getErrorCount() {
+      return errors;
+   }
+
+   /**
+    * @return total time spent in the native call in milliseconds
+    */
+   public long getNativeTime() {
+      return nativeTime;
+   }
+
+   /**
+    * @return longest native call in milliseconds
+    */
+   public long getMaxNativeTime() {
+      return maxNativeTime;
+   }
+
+   /**
+    * @return number of calls per native time bucket, see getBucketLimit
+    */
+   public int[] getNativeTimeHistogram() {
+      int[] result = new int[BUCKETS];
+      System.arraycopy(nativeHistogram, 0, result, 0, BUCKETS);
+      return result;
+   }
+
+   /**
+    * @return number of responses that were decoded
+    */
+   public int getParseCount() {
+      return parses;
+   }
+
+   /**
+    * @return total time spent decoding responses in milliseconds
+    */
+   public long getParseTime() {
+      return parseTime;
+   }
+
+   /**
+    * @return longest decoding time in milliseconds
+    */
+   public long getMaxParseTime() {
+      return maxParseTime;
+   }
+
+   /**
+    * @return number of responses per parse time bucket, see getBucketLimit
+    */
+   public int[] getParseTimeHistogram() {
+      int[] result = new int[BUCKETS];
+      System.arraycopy(parseHistogram, 0, result, 0, BUCKETS);
+      return result;
+   }
+
+   /**
+    * @return total length of the text responses in characters
+    */
+   public long getResponseSize() {
+      return responseSize;
+   }
+
+   /**
+    * @return length of the largest text response in characters
+    */
+   public int getMaxResponseSize() {
+      return maxResponseSize;
+   }
+
+   public String toString() {
+      StringBuilder sb = new StringBuilder(name)
+         .append(": calls=").append(calls)
+         .append(", errors=").append(errors)
+         .append(", native=").append(nativeTime).append("ms (max ").append(maxNativeTime).append("ms)")
+         .append(", parse=").append(parseTime).append("ms (max ").append(maxParseTime).append("ms)")
+         .append(", response=").append(responseSize).append(" chars (max ").append(maxResponseSize).append(')')
+         .append(", native histogram=");
+      appendHistogram(sb, nativeHistogram);
+      sb.append(", parse histogram=");
+      appendHistogram(sb, parseHistogram);
+      return sb.toString();
+   }
+
+   private static void appendHistogram(StringBuilder sb, int[] histogram) {
+      int last = BUCKETS - 1;
+      while (last > 0 && histogram[last] == 0) {
+         last--;
+      }
+      sb.append('[');
+      for (int i = 0; i <= last; i++) {
+         if (i > 0) {
+            sb.append(' ');
+         }
+         sb.append(i < BUCKETS - 1 ? "<" + getBucketLimit(i) : ">=" + (1L << (BUCKETS - 2))).append(':').append(histogram[i]);
+      }
+      sb.append(']');
+   }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a range of events fetching one page at a time, only the current page is held in memory
+ */
+class PagedEventIterator implements Iterator<EventInfo> {
+   private final DeviceCalendar calendar;
+   private final String         calendarID;
+   private final Date           startTimeStamp;
+   private final Date           endTimeStamp;
+   private final int            pageSize;
+
+   private EventPage           page;
+   private Iterator<EventInfo> current;
+
+   PagedEventIterator(DeviceCalendar calendar, String calendarID, Date startTimeStamp, Date endTimeStamp, int pageSize) {
+      this.calendar       = calendar;
+      this.calendarID     = calendarID;
+      this.startTimeStamp = startTimeStamp;
+      this.endTimeStamp   = endTimeStamp;
+      this.pageSize       = pageSize;
+   }
+
+   public boolean hasNext() {
+      while (current == null || !current.hasNext()) {
+         if (page != null && !page.hasMore())
+            return false;
+
+         page = calendar.getEventsPage(calendarID, startTimeStamp, endTimeStamp, page != null ? page.getNextPageToken() : null, pageSize);
+
+         if (page == null)
+            throw new IllegalStateException("Failed to fetch events page");
+
+         current = page.getEvents().iterator();
+      }
+      return true;
+   }
+
+   public EventInfo next() {
+      if (!hasNext())
+         throw new NoSuchElementException();
+
+      return current.next();
+   }
+
+   public void remove() {
+      throw new UnsupportedOperationException("remove is not supported");
+   }
+}
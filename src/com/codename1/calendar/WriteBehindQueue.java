@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.codename1.io.Storage;
+import com.codename1.io.Util;
+
+/**
+ * Event updates waiting to be written to the device, see DeviceCalendar.setWriteBehindEnabled.
+ *
+ * Only the latest version of every event is kept, a newer save of the same event replaces the queued one.
+ * The queue is journaled to Storage shortly after it changes so updates that weren't written yet survive
+ * the application being killed and are written on the next run. The journal is written on a background
+ * thread, changes arriving within JOURNAL_DELAY share one journal write.
+ */
+class WriteBehindQueue {
+   private static final int MAGIC   = 0x43414C57;
+   private static final int VERSION = 1;
+
+   //Delay between the first change and journaling the queue
+   private static final long JOURNAL_DELAY = 250;
+
+   private final String                           storageName;
+   private final LinkedHashMap<String, EventInfo> pending = new LinkedHashMap<String, EventInfo>();
+   private final Timer                            timer   = new Timer();
+   private TimerTask                              pendingJournal;
+
+   //Held while the journal is written so a snapshot never replaces a newer one
+   private final Object journalLock = new Object();
+
+   /**
+    * Creates the queue holding the updates journaled by an earlier run
+    *
+    * @param storageName - Storage file name of the journal
+    */
+   WriteBehindQueue(String storageName) {
+      this.storageName = storageName;
+
+      Storage storage = Storage.getInstance();
+
+      if (!storage.exists(storageName))
+         return;
+
+      InputStream in = null;
+
+      try {
+         in = storage.createInputStream(storageName);
+         read(new DataInputStream(new ByteArrayInputStream(Util.readInputStream(in))));
+      }
+      catch (Exception e) {
+         // written by an older version, truncated or corrupted, the queued updates are lost
+         pending.clear();
+         storage.deleteStorageFile(storageName);
+      }
+      finally {
+         Util.cleanup(in);
+      }
+   }
+
+   /**
+    * Queues an update, replacing a queued update of the same event
+    *
+    * @param event - Event with its ID and calendar ID set
+    */
+   synchronized void put(EventInfo event) {
+      // re-inserted so the queue stays in the order of the latest updates
+      pending.remove(event.getID());
+      pending.put(event.getID(), event);
+      scheduleJournal();
+   }
+
+   /**
+    * @return the queued update of the event, null if there is none
+    */
+   synchronized EventInfo get(String eventID) {
+      return pending.get(eventID);
+   }
+
+   /**
+    * Drops the queued update of the event, e.g. because it's removed
+    */
+   synchronized void remove(String eventID) {
+      if (pending.remove(eventID) != null)
+         scheduleJournal();
+   }
+
+   /**
+    * @param calendarID - As returned from openCalendar, null for all calendars
+    * @return the queued updates of the calendar in the order they were last saved
+    */
+   synchronized List<EventInfo> events(String calendarID) {
+      List<EventInfo> events = new ArrayList<EventInfo>(pending.size());
+
+      for (EventInfo event : pending.values())
+         if (calendarID == null || calendarID.equals(event.getCalendarID()))
+            events.add(event);
+
+      return events;
+   }
+
+   synchronized boolean isEmpty() {
+      return pending.isEmpty();
+   }
+
+   /**
+    * Removes written updates from the queue. An event saved again while it was written stays queued with its newer update.
+    *
+    * @param events - Updates as returned from events
+    */
+   synchronized void written(Collection<EventInfo> events) {
+      boolean changed = false;
+
+      for (EventInfo event : events) {
+         if (pending.get(event.getID()) == event) {
+            pending.remove(event.getID());
+            changed = true;
+         }
+      }
+
+      if (changed)
+         scheduleJournal();
+   }
+
+   /**
+    * Stops the journal thread after journaling the current queue, e.g. once write-behind mode is disabled
+    * and the queue was written
+    */
+   void close() {
+      synchronized (this) {
+         if (pendingJournal != null) {
+            pendingJournal.cancel();
+            pendingJournal = null;
+         }
+
+         timer.cancel();
+      }
+
+      journal();
+   }
+
+   private void scheduleJournal() {
+      if (pendingJournal != null)
+         return;
+
+      pendingJournal = new TimerTask() {
+         public void run() {
+            synchronized (WriteBehindQueue.this) {
+               if (this != pendingJournal)
+                  return;
+
+               pendingJournal = null;
+            }
+
+            journal();
+         }
+      };
+
+      try {
+         timer.schedule(pendingJournal, JOURNAL_DELAY);
+      }
+      catch (IllegalStateException e) {
+         // closed, close journaled the final queue
+         pendingJournal = null;
+      }
+   }
+
+   /**
+    * Replaces the journal with the current queue, deletes it once the queue is empty.
+    * Only the snapshot is taken while holding the queue, Storage is written without blocking put.
+    */
+   private void journal() {
+      synchronized (journalLock) {
+         byte[] snapshot = null;
+
+         synchronized (this) {
+            if (!pending.isEmpty()) {
+               ByteArrayOutputStream bytes = new ByteArrayOutputStream(pending.size() * 256);
+
+               try {
+                  write(new DataOutputStream(bytes));
+               }
+               catch (IOException e) {
+                  // not thrown by a ByteArrayOutputStream
+               }
+
+               snapshot = bytes.toByteArray();
+            }
+         }
+
+         Storage storage = Storage.getInstance();
+
+         if (snapshot == null) {
+            if (storage.exists(storageName))
+               storage.deleteStorageFile(storageName);
+
+            return;
+         }
+
+         OutputStream out = null;
+
+         try {
+            out = storage.createOutputStream(storageName);
+            out.write(snapshot);
+         }
+         catch (IOException e) {
+            // the updates are still queued in memory, only a crash before they are written would lose them
+         }
+         finally {
+            Util.cleanup(out);
+         }
+      }
+   }
+
+   private void write(DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(pending.size());
+
+      for (EventInfo event : pending.values())
+         EventSnapshot.writeEvent(out, event);
+
+      out.flush();
+   }
+
+   private void read(DataInputStream in) throws IOException {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+         throw new IOException("Unsupported journal format");
+
+      int count = in.readInt();
+
+      for (int i = 0; i < count; i++) {
+         EventInfo event = EventSnapshot.readEvent(in);
+         pending.put(event.getID(), event);
+      }
+   }
+}
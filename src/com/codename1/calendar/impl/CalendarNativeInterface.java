@@ -52,6 +52,13 @@ public interface CalendarNativeInterface extends NativeInterface {
     */
    String getCalendarName(int offset);
 
+   /**
+    * Lists all calendars with their metadata in one call
+    *
+    * @return CompactCodec encoded calendar records, see CompactCodec.CALENDAR_FIELD_COUNT. Null if not supported by the port.
+    */
+   String getCalendars();
+
    /**
     * Opens the named calendar creating it if necessary.
     *
@@ -78,6 +85,19 @@ public interface CalendarNativeInterface extends NativeInterface {
     */
    String saveEvent(String calendarID, String eventID, String title, long startTimeStamp, long endTimeStamp, boolean allDayEvent, boolean taskOnly, String notes, String location, String reminders);
 
+   /**
+    * Add/Edit several events in named calendar as a single all-or-nothing operation
+    *
+    * @param calendarID - As returned from openCalendar
+    * @param events     - Events encoded with CompactCodec: the field count followed by
+    *                     CompactCodec.SAVE_FIELD_COUNT fields per event in saveEvent parameter order
+    *                     (eventID, title, startTimeStamp, endTimeStamp, allDayEvent, taskOnly, notes, location, reminders)
+    *                     followed by the recurrenceRule, an RFC 5545 RRULE value. A null rule keeps the recurrence of an
+    *                     existing event, an empty rule makes it a single event
+    * @return CompactCodec encoded event identifiers in the order of the input. Null in the case of failure in which case nothing was saved
+    */
+   String saveEvents(String calendarID, String events);
+
    /**
     * Removes event with previously returned eventID
     *
@@ -87,6 +107,26 @@ public interface CalendarNativeInterface extends NativeInterface {
     */
    boolean removeEvent(String calendarID, String eventID);
 
+   /**
+    * Removes several events of the calendar in as few platform operations as possible
+    *
+    * @param calendarID - As returned from openCalendar
+    * @param eventIDs   - CompactCodec encoded list of event IDs as returned from saveEvent, one field per event
+    * @return CompactCodec encoded success flag followed by the number of removed events. Null if not supported by the port.
+    */
+   String removeEvents(String calendarID, String eventIDs);
+
+   /**
+    * Removes the events of the calendar starting within [startTimeStamp, endTimeStamp), a recurring event
+    * with all its occurrences if its first occurrence starts within the range
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param startTimeStamp - Range starting time stamp (unix time)
+    * @param endTimeStamp   - Range ending time stamp (unix time)
+    * @return CompactCodec encoded success flag followed by the number of removed events. Null if not supported by the port.
+    */
+   String removeEventsInRange(String calendarID, long startTimeStamp, long endTimeStamp);
+
    /**
     * Query calendar and return details as XML string
     *
@@ -107,7 +147,89 @@ public interface CalendarNativeInterface extends NativeInterface {
    String getEvents(String calendarID, long startTimeStamp, long endTimeStamp);
 
    /**
-    * The following are for registering/deregistering for receiving callbacks when calendar events are modified
+    * Query calendar and return details in the compact format, see CompactCodec.EVENT_FIELD_COUNT
+    *
+    * @param calendarID	- As returned from openCalendar
+    * @param eventID    - As returned from saveEvent
+    * @param flags      - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded response with zero or one event records. Null if not supported by the port, getEventByID should be used then.
+    */
+   String getEventByIDCompact(String calendarID, String eventID, int flags);
+
+   /**
+    * Returns all events in the calendar between startTimeStamp and endTimeStamp in the compact format, see CompactCodec.EVENT_FIELD_COUNT
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param startTimeStamp - Event starting time stamp (unix time)
+    * @param endTimeStamp   - Event ending time stamp (unix time)
+    * @param flags          - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded response. Null if not supported by the port, getEvents should be used then.
+    */
+   String getEventsCompact(String calendarID, long startTimeStamp, long endTimeStamp, int flags);
+
+   /**
+    * @return true if getEvents and getEventsCompact return the events overlapping the range even without
+    *         CompactCodec.FLAG_OVERLAPPING, false if they only return the events contained in it
+    */
+   boolean returnsOverlappingEvents();
+
+   /**
+    * Returns all events of several calendars between startTimeStamp and endTimeStamp in a single query, ordered by start time
+    *
+    * @param calendarIDs    - CompactCodec encoded list of calendar IDs as returned from openCalendar, one field per calendar
+    * @param startTimeStamp - Event starting time stamp (unix time)
+    * @param endTimeStamp   - Event ending time stamp (unix time)
+    * @param flags          - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded response. Null if not supported by the port.
+    */
+   String getEventsForCalendars(String calendarIDs, long startTimeStamp, long endTimeStamp, int flags);
+
+   /**
+    * Returns a bounded page of the events in the calendar between startTimeStamp and endTimeStamp ordered by start time
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param startTimeStamp - Event starting time stamp (unix time)
+    * @param endTimeStamp   - Event ending time stamp (unix time)
+    * @param pageToken      - Opaque token from the previous page, null for the first page
+    * @param pageSize       - Maximum number of events to return
+    * @param flags          - CompactCodec.FLAG_* query options
+    * @return CompactCodec encoded paged response. Null if not supported by the port.
+    */
+   String getEventsPage(String calendarID, long startTimeStamp, long endTimeStamp, String pageToken, int pageSize, int flags);
+
+   /**
+    * Returns the events of the calendar created, changed or deleted since the given time
+    *
+    * @param calendarID     - As returned from openCalendar
+    * @param sinceTimeStamp - Changes at or after this time stamp are returned, 0 or less for all events
+    * @param flags          - CompactCodec.FLAG_* query options, FLAG_ACKNOWLEDGE if sinceTimeStamp is a sync token of the port
+    * @return CompactCodec encoded change response, the sync token is the time stamp to pass to the next call. Null if not supported by the port.
+    */
+   String getEventsModifiedSince(String calendarID, long sinceTimeStamp, int flags);
+
+   /**
+    * Returns the times of all events of several calendars overlapping the given range in a single query
+    *
+    * @param calendarIDs    - CompactCodec encoded list of calendar IDs as returned from openCalendar, one field per calendar
+    * @param startTimeStamp - Range starting time stamp (unix time)
+    * @param endTimeStamp   - Range ending time stamp (unix time)
+    * @return CompactCodec encoded busy times, see CompactCodec.BUSY_FIELD_COUNT. Null if not supported by the port.
+    */
+   String getBusyTimes(String calendarIDs, long startTimeStamp, long endTimeStamp);
+
+   /**
+    * Counts the events of the calendar per time bucket without encoding them, see EventHistogram
+    *
+    * @param calendarID - As returned from openCalendar
+    * @param boundaries - CompactCodec encoded ascending bucket boundaries (unix time), one field per boundary, at least two
+    * @param flags      - CompactCodec.FLAG_* query options, only FLAG_OVERLAPPING applies
+    * @return CompactCodec encoded success flag, number of buckets and one count per bucket. Null if not supported by the port.
+    */
+   String getEventCounts(String calendarID, String boundaries, int flags);
+
+   /**
+    * The following are for registering/deregistering for receiving callbacks when calendar events are modified.
+    * While registered the port calls DeviceCalendar.nativeCalendarChanged on every change, it doesn't need to coalesce them.
     */
    void registerForEventNotifications();
 
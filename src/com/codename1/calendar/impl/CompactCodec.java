@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar.impl;
+
+/**
+ * Length prefixed text encoding used for bulk payloads exchanged with the native ports.
+ *
+ * Every field is written as its length in characters, a ':' and then the field text,
+ * e.g. <code>5:hello2:42</code>. A null field is written as <code>-1:</code>.
+ * Booleans are written as "1" / "0" and numbers in decimal. Since lengths are explicit
+ * no escaping is needed and a reader can skip fields without looking at their content.
+ *
+ * Record oriented payloads start with a field holding the number of fields per record
+ * so that either side can append new fields without breaking older readers.
+ */
+public final class CompactCodec {
+
+   /**
+    * Number of fields per record written by DeviceCalendar.saveEvents:
+    * eventID, title, startTimeStamp, endTimeStamp, allDayEvent, taskOnly, notes, location, reminders (CSV),
+    * recurrenceRule (RRULE value, null for single events. On updates null keeps the recurrence of the event and an empty value turns a series into a single event)
+    */
+   public static final int SAVE_FIELD_COUNT = 10;
+
+   /**
+    * Number of fields per event record in query responses:
+    * id, title, description, location, startTimeStamp, endTimeStamp, allDayEvent, reminders (CSV of offsets in seconds),
+    * createdTimeStamp, lastModifiedTimeStamp (null where unknown), recurrenceRule (RRULE value of the series, null for single events),
+    * calendarID.
+    * Range queries return one record per occurrence of a recurring event.
+    * A query response starts with a success flag. On failure it is followed by an error message,
+    * otherwise by the record width and then one record per event.
+    * Paged responses carry the next page token (null on the last page) between the success flag and the record width.
+    * Change responses carry the next sync token, the number of deleted events and their IDs between the success flag and the record width.
+    */
+   public static final int EVENT_FIELD_COUNT = 12;
+
+   /**
+    * Number of fields per calendar record in the getCalendars response:
+    * id, name, color (0xRRGGBB), accessLevel (CalendarInfo.ACCESS_*), openable (openCalendar matches it by name).
+    * The response starts with a success flag followed by the record width.
+    */
+   public static final int CALENDAR_FIELD_COUNT = 5;
+
+   /**
+    * Number of fields per record in the getBusyTimes response: startTimeStamp, endTimeStamp, allDayEvent.
+    * The response starts with a success flag followed by the record width, records are in no particular order.
+    */
+   public static final int BUSY_FIELD_COUNT = 3;
+
+   /**
+    * Query flag: don't look up reminders, the reminders field of every record is left null
+    */
+   public static final int FLAG_SKIP_REMINDERS = 1;
+
+   /**
+    * Query flag: range queries return every event overlapping [start, end) instead of only the events within it
+    */
+   public static final int FLAG_OVERLAPPING = 2;
+
+   /**
+    * Query flag: the title field of every record is left null
+    */
+   public static final int FLAG_SKIP_TITLE = 4;
+
+   /**
+    * Query flag: the description field of every record is left null
+    */
+   public static final int FLAG_SKIP_DESCRIPTION = 8;
+
+   /**
+    * Query flag: the location field of every record is left null
+    */
+   public static final int FLAG_SKIP_LOCATION = 16;
+
+   /**
+    * Query flag: the createdTimeStamp and lastModifiedTimeStamp fields of every record are left null
+    */
+   public static final int FLAG_SKIP_TIMESTAMPS = 32;
+
+   /**
+    * Change query flag: the time stamp is a sync token returned by an earlier change query of the port,
+    * the changes returned with it are acknowledged. Without it a change query has no side effects.
+    */
+   public static final int FLAG_ACKNOWLEDGE = 64;
+
+   private CompactCodec() {
+   }
+
+   /**
+    * Appends a string field, null is allowed
+    *
+    * @param sb    - Destination buffer
+    * @param value - Field value
+    */
+   public static void writeField(StringBuilder sb, String value) {
+      if (value == null) {
+         sb.append("-1:");
+      }
+      else {
+         sb.append(value.length()).append(':').append(value);
+      }
+   }
+
+   /**
+    * Appends a numeric field
+    *
+    * @param sb    - Destination buffer
+    * @param value - Field value
+    */
+   public static void writeField(StringBuilder sb, long value) {
+      sb.append(digits(value)).append(':').append(value);
+   }
+
+   /**
+    * Appends a boolean field
+    *
+    * @param sb    - Destination buffer
+    * @param value - Field value
+    */
+   public static void writeField(StringBuilder sb, boolean value) {
+      sb.append(value ? "1:1" : "1:0");
+   }
+
+   private static int digits(long value) {
+      if (value == Long.MIN_VALUE) {
+         return 20;
+      }
+      int count = 1;
+      if (value < 0) {
+         count++;
+         value = -value;
+      }
+      while (value >= 10) {
+         value /= 10;
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Sequential reader over an encoded payload. Numbers are parsed in place so reading
+    * numeric fields doesn't allocate.
+    */
+   public static final class Reader {
+      private final String data;
+      private final int    limit;
+      private int          pos;
+
+      /**
+       * @param data - Encoded payload
+       */
+      public Reader(String data) {
+         this(data, 0, data.length());
+      }
+
+      /**
+       * @param data   - Encoded payload
+       * @param offset - Position of the first field
+       * @param limit  - Position just after the last field
+       */
+      public Reader(String data, int offset, int limit) {
+         this.data  = data;
+         this.pos   = offset;
+         this.limit = limit;
+      }
+
+      /**
+       * @return true if there are more fields to read
+       */
+      public boolean hasNext() {
+         return pos < limit;
+      }
+
+      /**
+       * @return Offset of the next field in the payload
+       */
+      public int position() {
+         return pos;
+      }
+
+      /**
+       * @return The payload this reader walks over
+       */
+      public String getData() {
+         return data;
+      }
+
+      /**
+       * @return Length of the next field without consuming it, -1 for a null field
+       */
+      public int peekLength() {
+         int p   = pos;
+         int len = 0;
+         boolean negative = false;
+
+         if (p < limit && data.charAt(p) == '-') {
+            negative = true;
+            p++;
+         }
+         while (p < limit) {
+            char c = data.charAt(p);
+            if (c == ':') {
+               return negative ? -1 : len;
+            }
+            if (c < '0' || c > '9') {
+               break;
+            }
+            len = len * 10 + (c - '0');
+            p++;
+         }
+         throw new IllegalStateException("Malformed field at offset " + pos);
+      }
+
+      /**
+       * @return true if the next field is null
+       */
+      public boolean isNextNull() {
+         return peekLength() < 0;
+      }
+
+      /**
+       * Moves past the length prefix of the next field.
+       *
+       * @return Length of the field, -1 for null
+       */
+      private int begin() {
+         int len = peekLength();
+         pos = data.indexOf(':', pos) + 1;
+         return len;
+      }
+
+      /**
+       * @return The next field as a String, may be null
+       */
+      public String nextString() {
+         int len = begin();
+         if (len < 0) {
+            return null;
+         }
+         String s = data.substring(pos, pos + len);
+         pos += len;
+         return s;
+      }
+
+      /**
+       * @param defaultValue - Returned for null or empty fields
+       * @return The next field as a number
+       */
+      public long nextLong(long defaultValue) {
+         int len = begin();
+         if (len <= 0) {
+            return defaultValue;
+         }
+         int  end    = pos + len;
+         long result = 0;
+         boolean negative = data.charAt(pos) == '-';
+         for (int i = negative ? pos + 1 : pos; i < end; i++) {
+            result = result * 10 + (data.charAt(i) - '0');
+         }
+         pos = end;
+         return negative ? -result : result;
+      }
+
+      /**
+       * @return The next field as a number, 0 for null
+       */
+      public long nextLong() {
+         return nextLong(0);
+      }
+
+      /**
+       * @return The next field as an int, 0 for null
+       */
+      public int nextInt() {
+         return (int) nextLong(0);
+      }
+
+      /**
+       * @return The next field as a boolean, false for null
+       */
+      public boolean nextBoolean() {
+         int len = begin();
+         if (len <= 0) {
+            return false;
+         }
+         char c = data.charAt(pos);
+         pos += len;
+         return c == '1' || c == 't';
+      }
+
+      /**
+       * @param pool - Pool the string is looked up in and added to
+       * @return The next field as a String shared with equal fields read through the same pool, may be null
+       */
+      public String nextString(StringPool pool) {
+         int len = begin();
+         if (len < 0) {
+            return null;
+         }
+         String s = pool.get(data, pos, len);
+         pos += len;
+         return s;
+      }
+
+      /**
+       * Parses a field holding comma separated numbers without allocating intermediate strings
+       *
+       * @return The numbers in the field, an empty array for null or empty fields
+       */
+      public int[] nextIntList() {
+         int[] result = new int[peekIntListSize()];
+         nextIntList(result, 0);
+         return result;
+      }
+
+      /**
+       * @return Number of values in the next field holding comma separated numbers, 0 for null or empty fields
+       */
+      public int peekIntListSize() {
+         int len = peekLength();
+         if (len <= 0) {
+            return 0;
+         }
+         int start = data.indexOf(':', pos) + 1;
+         int end   = start + len;
+         int count = 1;
+         for (int i = start; i < end; i++) {
+            if (data.charAt(i) == ',') {
+               count++;
+            }
+         }
+         return count;
+      }
+
+      /**
+       * Parses a field holding comma separated numbers into an existing array
+       *
+       * @param dest   - Destination, must have room for peekIntListSize values from offset on
+       * @param offset - Position of the first value in dest
+       * @return Number of values parsed
+       */
+      public int nextIntList(int[] dest, int offset) {
+         int len = begin();
+         if (len <= 0) {
+            return 0;
+         }
+         int end      = pos + len;
+         int index    = offset;
+         int value    = 0;
+         boolean negative = false;
+         for (int i = pos; i <= end; i++) {
+            char c = i < end ? data.charAt(i) : ',';
+            if (c == ',') {
+               dest[index++] = negative ? -value : value;
+               value    = 0;
+               negative = false;
+            }
+            else if (c == '-') {
+               negative = true;
+            }
+            else if (c >= '0' && c <= '9') {
+               value = value * 10 + (c - '0');
+            }
+         }
+         pos = end;
+         return index - offset;
+      }
+
+      /**
+       * Skips the given number of fields
+       *
+       * @param count - Number of fields to skip, values below 1 are ignored
+       */
+      public void skip(int count) {
+         for (int i = 0; i < count; i++) {
+            int len = begin();
+            if (len > 0) {
+               pos += len;
+            }
+         }
+      }
+   }
+
+   /**
+    * Deduplicates strings read from payloads. Fields are looked up by content before a String is
+    * created, so a repeated value costs neither a new String nor a substring copy.
+    */
+   public static final class StringPool {
+      private String[] table = new String[64];
+      private int      size;
+
+      /**
+       * @param data   - Text holding the value
+       * @param offset - Position of the value in data
+       * @param length - Length of the value
+       * @return The pooled string equal to data[offset, offset + length)
+       */
+      public String get(String data, int offset, int length) {
+         int hash = 0;
+         for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data.charAt(i);
+         }
+         int mask  = table.length - 1;
+         int index = mix(hash) & mask;
+         String s;
+         while ((s = table[index]) != null) {
+            if (s.length() == length && s.regionMatches(false, 0, data, offset, length)) {
+               return s;
+            }
+            index = (index + 1) & mask;
+         }
+         s = data.substring(offset, offset + length);
+         table[index] = s;
+         if (++size * 2 > table.length) {
+            rehash();
+         }
+         return s;
+      }
+
+      /**
+       * @return Number of distinct strings in the pool
+       */
+      public int size() {
+         return size;
+      }
+
+      /**
+       * Empties the pool keeping its capacity
+       */
+      public void clear() {
+         for (int i = 0; i < table.length; i++) {
+            table[i] = null;
+         }
+         size = 0;
+      }
+
+      private static int mix(int hash) {
+         return hash ^ (hash >>> 16);
+      }
+
+      private void rehash() {
+         String[] old = table;
+         table = new String[old.length * 2];
+         int mask = table.length - 1;
+         for (int i = 0; i < old.length; i++) {
+            if (old[i] != null) {
+               int index = mix(old[i].hashCode()) & mask;
+               while (table[index] != null) {
+                  index = (index + 1) & mask;
+               }
+               table[index] = old[i];
+            }
+         }
+      }
+   }
+}
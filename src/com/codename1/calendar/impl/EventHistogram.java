@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2012, Codename One and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Codename One designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Codename One through http://www.codenameone.com/ if you
+ * need additional information or have any questions.
+ */
+
+package com.codename1.calendar.impl;
+
+/**
+ * Counts events into consecutive time buckets, shared by the ports answering CalendarNativeInterface.getEventCounts
+ * and by DeviceCalendar when a port doesn't.
+ *
+ * Buckets are given by ascending boundaries, bucket i is [boundaries[i], boundaries[i + 1]).
+ * An event is counted in every bucket it overlaps or, without FLAG_OVERLAPPING, in the bucket containing it,
+ * the same condition range queries apply to each bucket.
+ */
+public final class EventHistogram {
+
+   private EventHistogram() {
+   }
+
+   /**
+    * Counts one event
+    *
+    * @param boundaries  - Ascending bucket boundaries, at least two
+    * @param start       - Event start time stamp
+    * @param end         - Event end time stamp
+    * @param overlapping - true to count the event in every bucket it overlaps
+    * @param counts      - Per bucket counts, boundaries.length - 1 entries
+    */
+   public static void add(long[] boundaries, long start, long end, boolean overlapping, int[] counts) {
+      int buckets = boundaries.length - 1;
+
+      // first bucket ending after the start
+      int low  = 0;
+      int high = buckets;
+      while (low < high) {
+         int mid = (low + high) >>> 1;
+         if (boundaries[mid + 1] <= start) {
+            low = mid + 1;
+         }
+         else {
+            high = mid;
+         }
+      }
+
+      if (overlapping) {
+         for (int i = low; i < buckets && boundaries[i] < end; i++) {
+            counts[i]++;
+         }
+      }
+      else if (low < buckets && start >= boundaries[low] && end <= boundaries[low + 1]) {
+         counts[low]++;
+      }
+   }
+
+   /**
+    * @param boundaries - CompactCodec encoded bucket boundaries as passed to getEventCounts
+    * @return the decoded boundaries
+    */
+   public static long[] readBoundaries(String boundaries) {
+      CompactCodec.Reader reader = new CompactCodec.Reader(boundaries);
+      long[] result = new long[16];
+      int    count  = 0;
+
+      while (reader.hasNext()) {
+         if (count == result.length) {
+            long[] grown = new long[result.length * 2];
+            System.arraycopy(result, 0, grown, 0, count);
+            result = grown;
+         }
+         result[count++] = reader.nextLong();
+      }
+
+      long[] trimmed = new long[count];
+      System.arraycopy(result, 0, trimmed, 0, count);
+      return trimmed;
+   }
+
+   /**
+    * Encodes a getEventCounts response
+    *
+    * @param counts - Per bucket counts
+    * @return success flag followed by the number of buckets and one field per bucket
+    */
+   public static String encode(int[] counts) {
+      StringBuilder sb = new StringBuilder(8 + counts.length * 4);
+      CompactCodec.writeField(sb, true);
+      CompactCodec.writeField(sb, counts.length);
+      for (int i = 0; i < counts.length; i++) {
+         CompactCodec.writeField(sb, counts[i]);
+      }
+      return sb.toString();
+   }
+}